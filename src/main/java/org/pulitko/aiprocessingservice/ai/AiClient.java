@@ -1,5 +1,16 @@
 package org.pulitko.aiprocessingservice.ai;
 
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import reactor.core.publisher.Mono;
+
 public interface AiClient {
     String analyze(String systemInstruction, String userContent, String schemaJson, String ref);
+
+    Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson, String ref);
+
+    // model == null - модель клиента по умолчанию
+    default Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson,
+                                            String ref, String model) {
+        return analyzeAsync(systemInstruction, userContent, schemaJson, ref);
+    }
 }
@@ -0,0 +1,25 @@
+package org.pulitko.aiprocessingservice.ai.batch;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Set;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BatchJob(
+        String id,
+        String status,
+        @JsonProperty("input_file_id") String inputFileId,
+        @JsonProperty("output_file_id") String outputFileId,
+        @JsonProperty("error_file_id") String errorFileId
+) {
+    private static final Set<String> TERMINAL_FAILURES = Set.of("failed", "expired", "cancelled");
+
+    public boolean isCompleted() {
+        return "completed".equals(status);
+    }
+
+    public boolean isFailed() {
+        return TERMINAL_FAILURES.contains(status);
+    }
+}
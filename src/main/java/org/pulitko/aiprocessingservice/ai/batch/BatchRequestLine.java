@@ -0,0 +1,17 @@
+package org.pulitko.aiprocessingservice.ai.batch;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.pulitko.aiprocessingservice.ai.dto.AiRequest;
+
+public record BatchRequestLine(
+        @JsonProperty("custom_id") String customId,
+        String method,
+        String url,
+        AiRequest body
+) {
+    public static final String CHAT_COMPLETIONS = "/v1/chat/completions";
+
+    public static BatchRequestLine chatCompletion(String customId, AiRequest body) {
+        return new BatchRequestLine(customId, "POST", CHAT_COMPLETIONS, body);
+    }
+}
@@ -0,0 +1,28 @@
+package org.pulitko.aiprocessingservice.ai.batch;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.pulitko.aiprocessingservice.ai.dto.AiResponse;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BatchResultLine(
+        @JsonProperty("custom_id") String customId,
+        Response response,
+        Error error
+) {
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Response(
+            @JsonProperty("status_code") int statusCode,
+            AiResponse body
+    ) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Error(
+            String code,
+            String message
+    ) {}
+
+    public boolean isSuccessful() {
+        return error == null && response != null && response.statusCode() == 200 && response.body() != null;
+    }
+}
@@ -0,0 +1,137 @@
+package org.pulitko.aiprocessingservice.ai.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.config.AiBatchConfig;
+import org.pulitko.aiprocessingservice.config.AiHttpConnector;
+import org.pulitko.aiprocessingservice.exception.AiRetryableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Files + Batches API провайдера: загрузка JSONL, создание батча, статус и выгрузка результатов
+@Slf4j
+@Component
+public class OpenAiBatchClient {
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final AiBatchConfig config;
+
+    @Autowired
+    public OpenAiBatchClient(
+            WebClient.Builder builder,
+            AiHttpConnector aiHttpConnector,
+            AiBatchConfig config,
+            @Value("${ai.api.key}") String apiKey,
+            ObjectMapper objectMapper) {
+        this(aiHttpConnector.applyTo(builder, config.getBaseUrl()), config, apiKey, objectMapper);
+    }
+
+    public OpenAiBatchClient(WebClient.Builder builder, AiBatchConfig config, String apiKey, ObjectMapper objectMapper) {
+        this.webClient = builder
+                .baseUrl(config.getBaseUrl())
+                .defaultHeader("Authorization", "Bearer " + apiKey)
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(256 * 1024 * 1024))
+                .build();
+        this.objectMapper = objectMapper;
+        this.config = config;
+    }
+
+    public String uploadRequests(List<BatchRequestLine> lines) {
+        StringBuilder jsonl = new StringBuilder();
+        for (BatchRequestLine line : lines) {
+            try {
+                jsonl.append(objectMapper.writeValueAsString(line)).append('\n');
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot serialize batch line " + line.customId(), e);
+            }
+        }
+        MultipartBodyBuilder multipart = new MultipartBodyBuilder();
+        multipart.part("purpose", "batch");
+        multipart.part("file", new ByteArrayResource(jsonl.toString().getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return "requests.jsonl";
+            }
+        }).contentType(MediaType.APPLICATION_OCTET_STREAM);
+
+        JsonNode file = webClient.post()
+                .uri("/files")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(multipart.build()))
+                .retrieve()
+                .onStatus(status -> status.isError(), resp -> resp.bodyToMono(String.class)
+                        .map(body -> new AiRetryableException("Batch file upload failed: " + body, null)))
+                .bodyToMono(JsonNode.class)
+                .block(TIMEOUT);
+        if (file == null || !file.hasNonNull("id")) {
+            throw new AiRetryableException("Batch file upload returned no id", null);
+        }
+        return file.get("id").asText();
+    }
+
+    public BatchJob createBatch(String inputFileId) {
+        return webClient.post()
+                .uri("/batches")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of(
+                        "input_file_id", inputFileId,
+                        "endpoint", BatchRequestLine.CHAT_COMPLETIONS,
+                        "completion_window", config.getCompletionWindow()))
+                .retrieve()
+                .onStatus(status -> status.isError(), resp -> resp.bodyToMono(String.class)
+                        .map(body -> new AiRetryableException("Batch creation failed: " + body, null)))
+                .bodyToMono(BatchJob.class)
+                .block(TIMEOUT);
+    }
+
+    public BatchJob getBatch(String batchId) {
+        return webClient.get()
+                .uri("/batches/{id}", batchId)
+                .retrieve()
+                .onStatus(status -> status.isError(), resp -> resp.bodyToMono(String.class)
+                        .map(body -> new AiRetryableException("Batch status request failed: " + body, null)))
+                .bodyToMono(BatchJob.class)
+                .block(TIMEOUT);
+    }
+
+    public List<BatchResultLine> downloadResults(String fileId) {
+        String content = webClient.get()
+                .uri("/files/{id}/content", fileId)
+                .retrieve()
+                .onStatus(status -> status.isError(), resp -> resp.bodyToMono(String.class)
+                        .map(body -> new AiRetryableException("Batch output download failed: " + body, null)))
+                .bodyToMono(String.class)
+                .block(TIMEOUT);
+        List<BatchResultLine> lines = new ArrayList<>();
+        if (content == null) {
+            return lines;
+        }
+        for (String line : content.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                lines.add(objectMapper.readValue(line, BatchResultLine.class));
+            } catch (JsonProcessingException e) {
+                log.warn("Skipping unreadable batch result line in file {}", fileId, e);
+            }
+        }
+        return lines;
+    }
+}
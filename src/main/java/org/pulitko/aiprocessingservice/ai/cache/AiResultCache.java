@@ -0,0 +1,145 @@
+package org.pulitko.aiprocessingservice.ai.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.dto.AiResponse;
+import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.repository.AiResultCacheRepository;
+import org.pulitko.aiprocessingservice.service.PromptChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+@Slf4j
+@Component
+public class AiResultCache {
+    private final AiResultCacheRepository repository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final String defaultModel;
+    private final Cache<AiResultCacheKey, AiCompletion> memory;
+
+    public AiResultCache(
+            AiResultCacheRepository repository,
+            MeterRegistry meterRegistry,
+            @Value("${ai.cache.enabled:true}") boolean enabled,
+            @Value("${ai.cache.max-size:10000}") long maxSize,
+            @Value("${ai.cache.ttl:7d}") Duration ttl,
+            @Value("${ai.api.model-name:}") String defaultModel) {
+        this.repository = repository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.defaultModel = defaultModel;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "ai.result.cache");
+    }
+
+    // Модель входит в хеш промпта: ответ другой модели на тот же промпт - другой результат
+    public AiResultCacheKey keyFor(String ref, Prompt prompt, String model, String payload) {
+        return new AiResultCacheKey(
+                ref,
+                sha256((model == null ? defaultModel : model) + '\u0000' + prompt.template() + '\u0000'
+                        + prompt.schemaJson()),
+                sha256(payload));
+    }
+
+    public Mono<AiCompletion> get(AiResultCacheKey key) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        AiCompletion cached = memory.getIfPresent(key);
+        if (cached != null) {
+            recordHit(key.ref(), "memory", cached);
+            return Mono.just(cached);
+        }
+        return Mono.fromCallable(() -> repository.findValid(
+                        key.ref(), key.promptHash(), key.payloadHash(), Instant.now()).orElse(null))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(entity -> new AiCompletion(entity.result(),
+                        new AiResponse.Usage(0, 0, entity.totalTokens())))
+                .doOnNext(completion -> {
+                    memory.put(key, completion);
+                    recordHit(key.ref(), "db", completion);
+                })
+                .onErrorResume(e -> {
+                    log.warn("AI result cache lookup failed for ref {}", key.ref(), e);
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    meterRegistry.counter("ai.cache.requests", "ref", key.ref(), "result", "miss", "tier", "none").increment();
+                    return Mono.empty();
+                }));
+    }
+
+    public void put(AiResultCacheKey key, AiCompletion completion) {
+        if (!enabled) {
+            return;
+        }
+        memory.put(key, completion);
+        Instant now = Instant.now();
+        Mono.fromRunnable(() -> repository.upsert(key.ref(), key.promptHash(), key.payloadHash(),
+                        completion.content(), completion.totalTokens(), now, now.plus(ttl)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("Could not persist AI result for ref {}", key.ref(), e));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromptChanged(PromptChangedEvent event) {
+        invalidate(event.ref());
+    }
+
+    public void invalidate(String ref) {
+        memory.asMap().keySet().removeIf(key -> key.ref().equals(ref));
+        Mono.fromRunnable(() -> repository.deleteByRef(ref))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("Could not invalidate cached AI results for ref {}", ref, e));
+        log.info("AI result cache invalidated for ref {}", ref);
+    }
+
+    @Scheduled(fixedDelayString = "${ai.cache.purge-interval:PT1H}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int removed = repository.deleteExpired(Instant.now());
+            log.info("Purged {} expired AI results", removed);
+        } catch (Exception e) {
+            log.warn("Could not purge expired AI results", e);
+        }
+    }
+
+    private void recordHit(String ref, String tier, AiCompletion completion) {
+        meterRegistry.counter("ai.cache.requests", "ref", ref, "result", "hit", "tier", tier).increment();
+        meterRegistry.counter("ai.cache.tokens.saved", "ref", ref).increment(completion.totalTokens());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
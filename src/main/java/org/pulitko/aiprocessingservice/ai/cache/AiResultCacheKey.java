@@ -0,0 +1,8 @@
+package org.pulitko.aiprocessingservice.ai.cache;
+
+public record AiResultCacheKey(
+        String ref,
+        String promptHash,
+        String payloadHash
+) {
+}
@@ -0,0 +1,52 @@
+package org.pulitko.aiprocessingservice.ai.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class InFlightRequestCoalescer {
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Map<AiResultCacheKey, Mono<?>> inFlight = new ConcurrentHashMap<>();
+
+    public InFlightRequestCoalescer(
+            MeterRegistry meterRegistry,
+            @Value("${ai.coalescing.enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    // Подписчики с одинаковым ключом получают один и тот же результат или одну и ту же ошибку
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(AiResultCacheKey key, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            boolean[] leader = {false};
+            Mono<T> shared = (Mono<T>) inFlight.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                return Mono.defer(call)
+                        .doFinally(signal -> inFlight.remove(k))
+                        .cache();
+            });
+            if (!leader[0]) {
+                log.debug("Joining in-flight AI request for ref {}", key.ref());
+                meterRegistry.counter("ai.requests.coalesced", "ref", key.ref()).increment();
+            }
+            return shared;
+        });
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
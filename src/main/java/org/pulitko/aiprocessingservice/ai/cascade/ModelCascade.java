@@ -0,0 +1,87 @@
+package org.pulitko.aiprocessingservice.ai.cascade;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.config.AiCascadeConfig;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+// Ответ последней модели каскада принимается как есть
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelCascade {
+    private final AiCascadeConfig config;
+    private final MeterRegistry meterRegistry;
+
+    public boolean appliesTo(String ref) {
+        return config.cascadeFor(ref) != null;
+    }
+
+    // Модели, которые может вызвать execute; null - модель по умолчанию
+    public String modelsFor(String ref, String model) {
+        AiCascadeConfig.Cascade cascade = model == null ? config.cascadeFor(ref) : null;
+        return cascade == null ? model : String.join(",", cascade.getModels());
+    }
+
+    // model != null - модель выбрана планировщиком контекста, каскад не применяется
+    public <T> Mono<T> execute(String ref, String model, Function<String, Mono<T>> call,
+                               ToDoubleFunction<T> confidence, ToLongFunction<T> tokens) {
+        AiCascadeConfig.Cascade cascade = model == null ? config.cascadeFor(ref) : null;
+        if (cascade == null) {
+            return Mono.defer(() -> call.apply(model));
+        }
+        return stage(ref, cascade, 0, call, confidence, tokens);
+    }
+
+    private <T> Mono<T> stage(String ref, AiCascadeConfig.Cascade cascade, int index, Function<String, Mono<T>> call,
+                              ToDoubleFunction<T> confidence, ToLongFunction<T> tokens) {
+        List<String> models = cascade.getModels();
+        String model = models.get(index);
+        boolean last = index == models.size() - 1;
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return call.apply(model)
+                    .flatMap(result -> {
+                        meterRegistry.counter("ai.cascade.tokens", "ref", ref, "model", model)
+                                .increment(tokens.applyAsLong(result));
+                        double resultConfidence = confidence.applyAsDouble(result);
+                        if (last || resultConfidence >= cascade.getMinConfidence()) {
+                            record(ref, model, "accepted", startedAt);
+                            return Mono.just(result);
+                        }
+                        record(ref, model, "escalated", startedAt);
+                        escalate(ref, model, "low_confidence",
+                                "confidence " + resultConfidence + " < " + cascade.getMinConfidence());
+                        return stage(ref, cascade, index + 1, call, confidence, tokens);
+                    })
+                    .onErrorResume(AiResultValidationException.class, e -> {
+                        if (last) {
+                            record(ref, model, "rejected", startedAt);
+                            return Mono.error(e);
+                        }
+                        record(ref, model, "escalated", startedAt);
+                        escalate(ref, model, "invalid", e.getMessage());
+                        return stage(ref, cascade, index + 1, call, confidence, tokens);
+                    });
+        });
+    }
+
+    private void escalate(String ref, String model, String reason, String details) {
+        meterRegistry.counter("ai.cascade.escalations", "ref", ref, "model", model, "reason", reason).increment();
+        log.debug("Escalating ref {} from model {} ({}): {}", ref, model, reason, details);
+    }
+
+    private void record(String ref, String model, String outcome, long startedAt) {
+        meterRegistry.timer("ai.cascade.stage", "ref", ref, "model", model, "outcome", outcome)
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,63 @@
+package org.pulitko.aiprocessingservice.ai.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.pulitko.aiprocessingservice.ai.dto.AiMessage;
+import org.pulitko.aiprocessingservice.ai.dto.AiRequest;
+import org.pulitko.aiprocessingservice.exception.AiConfigurationException;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Общий для синхронного вызова и Batch API формат chat/completions запроса со structured output
+@Component
+public class AiRequestFactory {
+    private final String model;
+    private final double temperature;
+    private final JsonSchemaCache schemaCache;
+
+    public AiRequestFactory(
+            @Value("${ai.api.model-name}") String model,
+            @Value("${ai.api.temperature:0.1}") double temperature,
+            JsonSchemaCache schemaCache) {
+        this.model = model;
+        this.temperature = temperature;
+        this.schemaCache = schemaCache;
+    }
+
+    public AiRequest build(String systemInstruction, String userContent, String schemaJson, String ref) {
+        return build(systemInstruction, userContent, schemaJson, ref, model);
+    }
+
+    public AiRequest build(String systemInstruction, String userContent, String schemaJson, String ref, String model) {
+        JsonNode schemaNode = parseSchemaNode(schemaJson, ref);
+        String safeName = ref.replaceAll("[^a-zA-Z0-9_-]", "_");
+        if (safeName.length() > 64) safeName = safeName.substring(0, 64);
+        AiRequest.ResponseFormat responseFormat = new AiRequest.ResponseFormat(
+                "json_schema",
+                new AiRequest.JsonSchemaConfig(safeName, true, schemaNode)
+        );
+
+        return new AiRequest(
+                model,
+                List.of(
+                        new AiMessage("system", systemInstruction),
+                        new AiMessage("user", userContent)
+                ),
+                temperature,
+                responseFormat);
+    }
+
+    public String defaultModel() {
+        return model;
+    }
+
+    private JsonNode parseSchemaNode(String schemaJson, String ref) {
+        try {
+            return schemaCache.schemaNode(schemaJson);
+        } catch (IllegalArgumentException e) {
+            throw new AiConfigurationException(ref, "Invalid JSON Schema configuration", e);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.pulitko.aiprocessingservice.ai.client;
 
 import org.pulitko.aiprocessingservice.ai.AiClient;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 @Component
 @Profile("test")
@@ -10,6 +12,13 @@ public class MockAiClient implements AiClient {
 
     @Override
     public String analyze(String systemInstruction, String userContent, String schemaJson, String ref) {
-        return null;
+        return analyzeAsync(systemInstruction, userContent, schemaJson, ref)
+                .map(AiCompletion::content)
+                .block();
+    }
+
+    @Override
+    public Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson, String ref) {
+        return Mono.empty();
     }
 }
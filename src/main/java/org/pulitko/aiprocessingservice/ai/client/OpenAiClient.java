@@ -1,58 +1,112 @@
 package org.pulitko.aiprocessingservice.ai.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.pulitko.aiprocessingservice.ai.AiClient;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
 import org.pulitko.aiprocessingservice.ai.dto.AiMessage;
 import org.pulitko.aiprocessingservice.ai.dto.AiRequest;
 import org.pulitko.aiprocessingservice.ai.dto.AiResponse;
+import org.pulitko.aiprocessingservice.ai.dto.AiStreamChunk;
+import org.pulitko.aiprocessingservice.ai.ratelimit.OpenAiRateLimiter;
+import org.pulitko.aiprocessingservice.config.AiHttpConnector;
+import org.pulitko.aiprocessingservice.config.AiHttpProperties;
 import org.pulitko.aiprocessingservice.exception.AiConfigurationException;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
 import org.pulitko.aiprocessingservice.exception.AiRetryableException;
+import org.pulitko.aiprocessingservice.usecases.validation.StreamingJsonValidator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 import reactor.util.retry.Retry;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @Component
 @Primary
+@ConditionalOnProperty(name = "ai.routing.enabled", havingValue = "false", matchIfMissing = true)
 public class OpenAiClient implements AiClient {
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_CHUNKS =
+            new ParameterizedTypeReference<>() {};
+    private static final String STREAM_DONE = "[DONE]";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
     private final String apiKey;
     private final WebClient webClient;
-    private final String model;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AiRequestFactory requestFactory;
 
     private final MeterRegistry meterRegistry;
+    private final OpenAiRateLimiter rateLimiter;
+    private final boolean streamingEnabled;
+    private final AiHttpProperties.Compression compression;
+    private final Map<String, RequestMeters> requestMeters = new ConcurrentHashMap<>();
 
-    @Value("${ai.api.temperature:0.1}")
-    private double temperature;
-
+    @Autowired
     public OpenAiClient(
             WebClient.Builder builder,
+            AiHttpConnector aiHttpConnector,
             @Value("${ai.api.base-url}") String baseUrl,
             @Value("${ai.api.key}") String apiKey,
-            @Value("${ai.api.model-name}") String model,
-            MeterRegistry meterRegistry) {
-
-        this.webClient = builder
-                .baseUrl(baseUrl)
-                .defaultHeader("Authorization", "Bearer " + apiKey)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
-        this.model = model;
+            MeterRegistry meterRegistry,
+            OpenAiRateLimiter rateLimiter,
+            AiRequestFactory requestFactory,
+            @Value("${ai.streaming.enabled:false}") boolean streamingEnabled,
+            AiHttpProperties httpProperties) {
+        this(aiHttpConnector.applyTo(builder, baseUrl), baseUrl, apiKey, meterRegistry, rateLimiter, requestFactory,
+                streamingEnabled, httpProperties);
+    }
+
+    // builder с уже выбранным транспортом
+    public OpenAiClient(
+            WebClient.Builder builder,
+            String baseUrl,
+            String apiKey,
+            MeterRegistry meterRegistry,
+            OpenAiRateLimiter rateLimiter,
+            AiRequestFactory requestFactory,
+            boolean streamingEnabled,
+            AiHttpProperties httpProperties) {
+
+        builder.baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        // локальные OpenAI-совместимые модели обычно без ключа
+        if (apiKey != null && !apiKey.isBlank()) {
+            builder.defaultHeader("Authorization", "Bearer " + apiKey);
+        }
+        this.webClient = builder.build();
         this.apiKey = apiKey;
         this.meterRegistry = meterRegistry;
+        this.rateLimiter = rateLimiter;
+        this.requestFactory = requestFactory;
+        this.streamingEnabled = streamingEnabled;
+        this.compression = httpProperties.getCompression();
     }
 
     @PostConstruct
@@ -68,75 +122,214 @@ public class OpenAiClient implements AiClient {
 
     @Override
     public String analyze(String systemInstruction, String userContent, String schemaJson, String ref) {
-        String isSuccess = "success";
-        Timer.Sample sample = Timer.start(meterRegistry);
-        try {
-            JsonNode schemaNode = parseSchemaNode(schemaJson, ref);
-            String safeName = ref.replaceAll("[^a-zA-Z0-9_-]", "_");
-            if (safeName.length() > 64) safeName = safeName.substring(0, 64);
-            AiRequest.ResponseFormat responseFormat = new AiRequest.ResponseFormat(
-                    "json_schema",
-                    new AiRequest.JsonSchemaConfig(safeName, true, schemaNode)
-            );
-
-            AiRequest request = new AiRequest(
-                    model,
-                    List.of(
-                            new AiMessage("system", systemInstruction),
-                            new AiMessage("user", userContent)
-                    ),
-                    temperature,
-                    responseFormat);
-
-            AiResponse response = webClient.post()
-                    .bodyValue(request)
+        return analyzeAsync(systemInstruction, userContent, schemaJson, ref)
+                .map(AiCompletion::content)
+                .block();
+    }
+
+    @Override
+    public Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson, String ref) {
+        return analyzeAsync(systemInstruction, userContent, schemaJson, ref, null);
+    }
+
+    @Override
+    public Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson,
+                                           String ref, String model) {
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return Mono.fromSupplier(() -> model == null
+                            ? requestFactory.build(systemInstruction, userContent, schemaJson, ref)
+                            : requestFactory.build(systemInstruction, userContent, schemaJson, ref, model))
+                    .flatMap(request -> rateLimiter.acquire(ref)
+                            .flatMap(reserved -> streamingEnabled
+                                    ? stream(request.streaming(), ref, reserved)
+                                    : send(request, ref, reserved))
+                            .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
+                                    // отказ лимитера - не сбой провайдера: повтор лишь снова резервирует квоту
+                                    .filter(throwable -> throwable instanceof AiRetryableException
+                                            && !(throwable instanceof AiRateLimitExceededException))
+                                    .onRetryExhaustedThrow((spec, signal) -> signal.failure())
+                            ))
+                    .switchIfEmpty(Mono.error(() ->
+                            new RuntimeException("OpenAI returned empty response for ref: " + ref)))
+                    .map(response -> toCompletion(response, ref))
+                    .doOnError(e -> {
+                        if (!(e instanceof AiConfigurationException)) {
+                            log.error("Technical error during AI communication for ref: {}", ref, e);
+                        }
+                    })
+                    .doFinally(signal -> requestMeters(ref).record(signal, System.nanoTime() - startedAt));
+        });
+    }
+
+    private Mono<AiResponse> send(AiRequest request, String ref, int reservedTokens) {
+        AtomicBoolean reconciled = new AtomicBoolean();
+        return withBody(webClient.post(), request, ref)
+                .retrieve()
+                .onStatus(status -> status.value() == 429 || status.is5xxServerError(), resp -> {
+                    reconciled.set(true);
+                    rateLimiter.onResponse(ref, reservedTokens, resp.headers().asHttpHeaders(), null);
+                    return resp.bodyToMono(String.class).map(body ->
+                            new AiRetryableException("AI API temporary unavailable: " + body, null));
+                })
+                .onStatus(status -> status.isError(), resp ->
+                        resp.bodyToMono(String.class).map(body ->
+                                new RuntimeException("Fatal AI Error: " + body))
+                )
+                .toEntity(AiResponse.class)
+                .mapNotNull(entity -> {
+                    AiResponse body = entity.getBody();
+                    Integer usedTokens = body == null || body.usage() == null ? null : body.usage().totalTokens();
+                    reconciled.set(true);
+                    rateLimiter.onResponse(ref, reservedTokens, entity.getHeaders(), usedTokens);
+                    return body;
+                })
+                // отменённый (проигравший хедж) или оборванный вызов ответа не получил: резерв возвращается целиком
+                .doFinally(signal -> {
+                    if (reconciled.compareAndSet(false, true)) {
+                        rateLimiter.onResponse(ref, reservedTokens, null, 0);
+                    }
+                });
+    }
+
+    // SSE: каждый чанк сразу проверяется по схеме, при нарушении подписка отменяется и соединение закрывается
+    private Mono<AiResponse> stream(AiRequest request, String ref, int reservedTokens) {
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            StreamingJsonValidator validator = new StreamingJsonValidator(request.schema(), ref);
+            StringBuilder content = new StringBuilder();
+            AtomicReference<AiResponse.Usage> usage = new AtomicReference<>();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            AtomicReference<HttpHeaders> headers = new AtomicReference<>();
+            return withBody(webClient.post().accept(MediaType.TEXT_EVENT_STREAM), request, ref)
                     .retrieve()
-                    .onStatus(status -> status.value() == 429 || status.is5xxServerError(), resp ->
-                            resp.bodyToMono(String.class).map(body ->
-                                    new AiRetryableException("AI API temporary unavailable: " + body, null))
-                    )
+                    .onStatus(status -> status.value() == 429 || status.is5xxServerError(), resp -> {
+                        rateLimiter.onResponse(ref, reservedTokens, resp.headers().asHttpHeaders(), null);
+                        return resp.bodyToMono(String.class).map(body ->
+                                new AiRetryableException("AI API temporary unavailable: " + body, null));
+                    })
                     .onStatus(status -> status.isError(), resp ->
                             resp.bodyToMono(String.class).map(body ->
-                                    new RuntimeException("Fatal AI Error: " + body))
-                    )
-                    .bodyToMono(AiResponse.class)
-                    .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
-                            .filter(throwable -> throwable instanceof AiRetryableException)
-                            .onRetryExhaustedThrow((spec, signal) -> signal.failure())
-                    )
-                    .block();
-            sample.stop(meterRegistry.timer("ai.request.duration", "ref", ref));
-
-            if (response != null && response.usage() != null) {
-                meterRegistry.counter("ai.tokens.used",
-                        "ref", ref, "type", "prompt").increment(response.usage().promptTokens());
-                meterRegistry.counter("ai.tokens.used",
-                        "ref", ref, "type", "completion").increment(response.usage().completionTokens());
-                meterRegistry.counter("ai.requests.total", "ref", ref, "status", "success").increment();
-            }
-            if (response == null || response.choices().isEmpty()) {
-                throw new RuntimeException("OpenAI returned empty response for ref: " + ref);
-            }
+                                    new RuntimeException("Fatal AI Error: " + body)))
+                    .toEntityFlux(SSE_CHUNKS)
+                    .flatMapMany(entity -> {
+                        headers.set(entity.getHeaders());
+                        return entity.getBody();
+                    })
+                    .mapNotNull(ServerSentEvent::data)
+                    .takeWhile(data -> !STREAM_DONE.equals(data))
+                    .doOnNext(data -> {
+                        AiStreamChunk chunk = readChunk(data, ref);
+                        if (chunk.usage() != null) {
+                            usage.set(chunk.usage());
+                        }
+                        String delta = chunk.content();
+                        if (delta == null || delta.isEmpty()) {
+                            return;
+                        }
+                        if (firstToken.compareAndSet(true, false)) {
+                            requestMeters(ref).ttft.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                        }
+                        content.append(delta);
+                        validator.feed(delta);
+                    })
+                    .doOnError(AiResultValidationException.class, e -> {
+                        meterRegistry.counter("ai.stream.aborted", "ref", ref).increment();
+                        log.warn("Streaming aborted for ref {} after {} chars: {}", ref, content.length(), e.getMessage());
+                    })
+                    .then(Mono.fromCallable(() -> {
+                        validator.finish();
+                        return new AiResponse(
+                                List.of(new AiResponse.Choice(new AiMessage("assistant", content.toString()))),
+                                usage.get());
+                    }))
+                    // takeWhile([DONE]) и отмена валидатором обрывают тело без complete, поэтому сверка здесь;
+                    // ответы 429/5xx сверены в onStatus, заголовки до них не доходят
+                    .doFinally(signal -> {
+                        if (headers.get() != null) {
+                            rateLimiter.onResponse(ref, reservedTokens, headers.get(),
+                                    usage.get() == null ? null : usage.get().totalTokens());
+                        }
+                    });
+        });
+    }
 
-            return response.choices().get(0).message().content();
-        } catch (AiConfigurationException e) {
-            isSuccess = "error";
-            throw e;
-        } catch (Exception e) {
-            isSuccess = "error";
-            log.error("Technical error during AI communication for ref: {}", ref, e);
-            throw e;
-        } finally {
-            sample.stop(meterRegistry.timer("ai.request.duration", "ref", ref, "status", isSuccess));
-            meterRegistry.counter("ai.requests.total", "ref", ref, "status", isSuccess).increment();
+    // тело сериализуется заранее: размер нужен, чтобы решить, стоит ли gzip
+    private WebClient.RequestHeadersSpec<?> withBody(WebClient.RequestBodySpec spec, AiRequest request, String ref) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new AiConfigurationException(ref, "cannot serialize AI request", e);
+        }
+        if (!compression.isRequests() || json.length < compression.getMinRequestSize().toBytes()) {
+            return spec.bodyValue(json);
         }
+        byte[] gzipped = gzip(json);
+        meterRegistry.counter("ai.request.compression.saved.bytes", "ref", ref).increment(json.length - gzipped.length);
+        return spec.header(HttpHeaders.CONTENT_ENCODING, "gzip").bodyValue(gzipped);
     }
 
-    private JsonNode parseSchemaNode(String schemaJson, String ref) {
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private AiStreamChunk readChunk(String data, String ref) {
         try {
-            return objectMapper.readTree(schemaJson);
+            return objectMapper.readValue(data, AiStreamChunk.class);
         } catch (JsonProcessingException e) {
-            throw new AiConfigurationException(ref, "Invalid JSON Schema configuration", e);
+            throw new AiResultValidationException(ref, "Malformed stream chunk from AI", e);
+        }
+    }
+
+    private AiCompletion toCompletion(AiResponse response, String ref) {
+        if (response.usage() != null) {
+            meterRegistry.counter("ai.tokens.used",
+                    "ref", ref, "type", "prompt").increment(response.usage().promptTokens());
+            meterRegistry.counter("ai.tokens.used",
+                    "ref", ref, "type", "completion").increment(response.usage().completionTokens());
+        }
+        if (response.choices() == null || response.choices().isEmpty()) {
+            throw new RuntimeException("OpenAI returned empty response for ref: " + ref);
+        }
+        return new AiCompletion(response.choices().get(0).message().content(), response.usage());
+    }
+
+    // ref сюда доходят только с найденным промптом, так что набор ограничен таблицей промптов
+    private RequestMeters requestMeters(String ref) {
+        return requestMeters.computeIfAbsent(ref, r -> new RequestMeters(meterRegistry, r));
+    }
+
+    // Метры вызова по исходу, созданные один раз на ref
+    private static class RequestMeters {
+        private final Map<SignalType, Timer> durations = new EnumMap<>(SignalType.class);
+        private final Map<SignalType, Counter> totals = new EnumMap<>(SignalType.class);
+        private final Timer ttft;
+
+        RequestMeters(MeterRegistry meterRegistry, String ref) {
+            Map<SignalType, String> statuses = Map.of(
+                    SignalType.ON_COMPLETE, "success",
+                    SignalType.ON_ERROR, "error",
+                    SignalType.CANCEL, "cancelled");
+            statuses.forEach((signal, status) -> {
+                durations.put(signal, meterRegistry.timer("ai.request.duration", "ref", ref, "status", status));
+                totals.put(signal, meterRegistry.counter("ai.requests.total", "ref", ref, "status", status));
+            });
+            this.ttft = meterRegistry.timer("ai.request.ttft", "ref", ref);
+        }
+
+        void record(SignalType signal, long nanos) {
+            Timer timer = durations.get(signal);
+            if (timer != null) {
+                timer.record(nanos, TimeUnit.NANOSECONDS);
+                totals.get(signal).increment();
+            }
         }
     }
 }
@@ -0,0 +1,10 @@
+package org.pulitko.aiprocessingservice.ai.dto;
+
+public record AiCompletion(
+        String content,
+        AiResponse.Usage usage
+) {
+    public int totalTokens() {
+        return usage == null ? 0 : usage.totalTokens();
+    }
+}
@@ -1,23 +1,44 @@
 package org.pulitko.aiprocessingservice.ai.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import java.util.List;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record AiRequest(
         String model,
         List<AiMessage> messages,
         double temperature,
-        @JsonProperty("response_format") ResponseFormat responseFormat) {
+        @JsonProperty("response_format") ResponseFormat responseFormat,
+        Boolean stream,
+        @JsonProperty("stream_options") StreamOptions streamOptions) {
+
+    public AiRequest(String model, List<AiMessage> messages, double temperature, ResponseFormat responseFormat) {
+        this(model, messages, temperature, responseFormat, null, null);
+    }
+
+    // SSE: последний чанк приносит usage
+    public AiRequest streaming() {
+        return new AiRequest(model, messages, temperature, responseFormat, true, new StreamOptions(true));
+    }
+
+    public JsonNode schema() {
+        return responseFormat == null || responseFormat.jsonSchema() == null ? null : responseFormat.jsonSchema().schema();
+    }
 
     public record ResponseFormat(
             String type,
             @JsonProperty("json_schema") JsonSchemaConfig jsonSchema
     ) {}
 
+    public record StreamOptions(
+            @JsonProperty("include_usage") boolean includeUsage
+    ) {}
+
     public record JsonSchemaConfig(
             String name,
             boolean strict,
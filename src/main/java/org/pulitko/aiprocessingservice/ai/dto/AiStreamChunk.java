@@ -0,0 +1,29 @@
+package org.pulitko.aiprocessingservice.ai.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// chat.completion.chunk из SSE-потока
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record AiStreamChunk(
+        List<Choice> choices,
+        AiResponse.Usage usage
+) {
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Choice(
+            Delta delta,
+            @JsonProperty("finish_reason") String finishReason
+    ) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Delta(String content) {}
+
+    public String content() {
+        if (choices == null || choices.isEmpty() || choices.get(0).delta() == null) {
+            return null;
+        }
+        return choices.get(0).delta().content();
+    }
+}
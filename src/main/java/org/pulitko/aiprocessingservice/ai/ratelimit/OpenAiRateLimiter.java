@@ -0,0 +1,206 @@
+package org.pulitko.aiprocessingservice.ai.ratelimit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Лимиты берутся из конфигурации, а если не заданы - из заголовков x-ratelimit-limit-* провайдера
+@Slf4j
+@Component
+public class OpenAiRateLimiter {
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double ESTIMATE_WEIGHT = 0.2;
+    private static final Pattern RESET_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final int defaultTokenEstimate;
+
+    private final Map<String, Double> tokenEstimates = new ConcurrentHashMap<>();
+    private final AtomicLong remainingRequests = new AtomicLong(-1);
+    private final AtomicLong remainingTokens = new AtomicLong(-1);
+
+    private long requestsPerMinute;
+    private long tokensPerMinute;
+    private long nextRequestSlot;
+    private long nextTokenSlot;
+    private long requestsBlockedUntil;
+    private long tokensBlockedUntil;
+
+    @Autowired
+    public OpenAiRateLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${ai.rate-limit.enabled:true}") boolean enabled,
+            @Value("${ai.rate-limit.requests-per-minute:0}") long requestsPerMinute,
+            @Value("${ai.rate-limit.tokens-per-minute:0}") long tokensPerMinute,
+            @Value("${ai.rate-limit.max-wait:30s}") Duration maxWait,
+            @Value("${ai.rate-limit.default-token-estimate:1000}") int defaultTokenEstimate) {
+        this(meterRegistry, System::nanoTime, enabled, requestsPerMinute, tokensPerMinute, maxWait, defaultTokenEstimate);
+    }
+
+    OpenAiRateLimiter(MeterRegistry meterRegistry, LongSupplier nanoClock, boolean enabled,
+                      long requestsPerMinute, long tokensPerMinute, Duration maxWait, int defaultTokenEstimate) {
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        this.enabled = enabled;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.defaultTokenEstimate = defaultTokenEstimate;
+        long now = nanoClock.getAsLong();
+        this.nextRequestSlot = now;
+        this.nextTokenSlot = now;
+        this.requestsBlockedUntil = now;
+        this.tokensBlockedUntil = now;
+
+        Gauge.builder("ai.ratelimit.remaining", remainingRequests, AtomicLong::get)
+                .tag("type", "requests")
+                .register(meterRegistry);
+        Gauge.builder("ai.ratelimit.remaining", remainingTokens, AtomicLong::get)
+                .tag("type", "tokens")
+                .register(meterRegistry);
+    }
+
+    // Отдаёт число зарезервированных токенов, его нужно вернуть в onResponse
+    public Mono<Integer> acquire(String ref) {
+        if (!enabled) {
+            return Mono.just(0);
+        }
+        return Mono.defer(() -> {
+            int estimate = estimateTokens(ref);
+            long waitNanos = reserve(estimate);
+            if (waitNanos < 0) {
+                meterRegistry.counter("ai.ratelimit.rejected", "ref", ref).increment();
+                return Mono.error(new AiRateLimitExceededException("AI rate limit: no capacity within "
+                        + Duration.ofNanos(maxWaitNanos) + " for ref " + ref));
+            }
+            meterRegistry.timer("ai.ratelimit.wait", "ref", ref).record(waitNanos, TimeUnit.NANOSECONDS);
+            if (waitNanos == 0) {
+                return Mono.just(estimate);
+            }
+            log.debug("Rate limiter delays ref {} by {} ms", ref, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            return Mono.delay(Duration.ofNanos(waitNanos)).thenReturn(estimate);
+        });
+    }
+
+    public void onResponse(String ref, int reservedTokens, HttpHeaders headers, Integer usedTokens) {
+        if (!enabled) {
+            return;
+        }
+        if (usedTokens != null && usedTokens > 0) {
+            tokenEstimates.merge(ref, usedTokens.doubleValue(),
+                    (old, actual) -> old + ESTIMATE_WEIGHT * (actual - old));
+        }
+        synchronized (this) {
+            if (usedTokens != null && tokensPerMinute > 0) {
+                nextTokenSlot += (usedTokens - reservedTokens) * (MINUTE_NANOS / tokensPerMinute);
+            }
+            if (headers != null) {
+                applyHeaders(headers, reservedTokens);
+            }
+        }
+    }
+
+    int estimateTokens(String ref) {
+        return (int) Math.round(tokenEstimates.getOrDefault(ref, (double) defaultTokenEstimate));
+    }
+
+    // -1 означает, что слот дальше maxWait и вызов надо отклонить
+    private synchronized long reserve(int tokens) {
+        long now = nanoClock.getAsLong();
+        long requestSlot = Math.max(Math.max(nextRequestSlot, requestsBlockedUntil), now);
+        long tokenSlot = Math.max(Math.max(nextTokenSlot, tokensBlockedUntil), now);
+        long admitAt = Math.max(requestSlot, tokenSlot);
+        long wait = admitAt - now;
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        if (requestsPerMinute > 0) {
+            nextRequestSlot = admitAt + MINUTE_NANOS / requestsPerMinute;
+        }
+        if (tokensPerMinute > 0) {
+            nextTokenSlot = admitAt + tokens * (MINUTE_NANOS / tokensPerMinute);
+        }
+        return wait;
+    }
+
+    private void applyHeaders(HttpHeaders headers, int reservedTokens) {
+        long now = nanoClock.getAsLong();
+        Long limitRequests = longHeader(headers, "x-ratelimit-limit-requests");
+        Long limitTokens = longHeader(headers, "x-ratelimit-limit-tokens");
+        if (limitRequests != null && limitRequests > 0 && requestsPerMinute == 0) {
+            log.info("Rate limiter learned request limit {} rpm from provider", limitRequests);
+            requestsPerMinute = limitRequests;
+        }
+        if (limitTokens != null && limitTokens > 0 && tokensPerMinute == 0) {
+            log.info("Rate limiter learned token limit {} tpm from provider", limitTokens);
+            tokensPerMinute = limitTokens;
+        }
+
+        Long requestsLeft = longHeader(headers, "x-ratelimit-remaining-requests");
+        if (requestsLeft != null) {
+            remainingRequests.set(requestsLeft);
+            if (requestsLeft <= 0) {
+                requestsBlockedUntil = Math.max(requestsBlockedUntil,
+                        now + parseReset(headers.getFirst("x-ratelimit-reset-requests")));
+            }
+        }
+        Long tokensLeft = longHeader(headers, "x-ratelimit-remaining-tokens");
+        if (tokensLeft != null) {
+            remainingTokens.set(tokensLeft);
+            // остатка не хватит на такой же вызов этого ref
+            if (tokensLeft <= 0 || tokensLeft < reservedTokens) {
+                tokensBlockedUntil = Math.max(tokensBlockedUntil,
+                        now + parseReset(headers.getFirst("x-ratelimit-reset-tokens")));
+            }
+        }
+    }
+
+    private static Long longHeader(HttpHeaders headers, String name) {
+        String value = headers.getFirst(name);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Формат OpenAI: "20ms", "1s", "6m0s", "1h2m3.5s"
+    static long parseReset(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        Matcher matcher = RESET_PART.matcher(value.trim());
+        double nanos = 0;
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            nanos += switch (matcher.group(2)) {
+                case "h" -> amount * TimeUnit.HOURS.toNanos(1);
+                case "m" -> amount * MINUTE_NANOS;
+                case "s" -> amount * TimeUnit.SECONDS.toNanos(1);
+                default -> amount * TimeUnit.MILLISECONDS.toNanos(1);
+            };
+        }
+        return (long) nanos;
+    }
+}
@@ -0,0 +1,146 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Ограничивает число одновременных AI-вызовов на один ref, чтобы один промпт не занял всех воркеров.
+// Сверх лимита вызов ждёт освободившийся слот (в порядке очереди) до max-wait, а не отклоняется сразу
+@Component
+public class AiBulkhead {
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxConcurrentCalls;
+    private final Duration maxWait;
+    private final Map<String, Permits> permits = new ConcurrentHashMap<>();
+
+    public AiBulkhead(
+            MeterRegistry meterRegistry,
+            @Value("${ai.bulkhead.enabled:true}") boolean enabled,
+            @Value("${ai.bulkhead.max-concurrent-calls-per-ref:32}") int maxConcurrentCalls,
+            @Value("${ai.bulkhead.max-wait:10s}") Duration maxWait) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWait = maxWait;
+    }
+
+    public <T> Mono<T> execute(String ref, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            Permits refPermits = permits.computeIfAbsent(ref, this::newPermits);
+            return refPermits.acquire()
+                    .timeout(maxWait)
+                    .onErrorMap(TimeoutException.class, e -> {
+                        meterRegistry.counter("ai.bulkhead.rejected", "ref", ref).increment();
+                        return new AiCallNotPermittedException("AI bulkhead is full (" + maxConcurrentCalls
+                                + " calls) for " + maxWait + ", ref: " + ref);
+                    })
+                    .then(Mono.defer(() -> {
+                        AtomicBoolean released = new AtomicBoolean();
+                        return Mono.defer(call).doFinally(signal -> {
+                            if (released.compareAndSet(false, true)) {
+                                refPermits.release();
+                            }
+                        });
+                    }));
+        });
+    }
+
+    private Permits newPermits(String ref) {
+        Permits refPermits = new Permits();
+        Gauge.builder("ai.bulkhead.active", refPermits, Permits::active)
+                .tag("ref", ref)
+                .register(meterRegistry);
+        Gauge.builder("ai.bulkhead.waiting", refPermits, Permits::waiting)
+                .tag("ref", ref)
+                .register(meterRegistry);
+        return refPermits;
+    }
+
+    // Освободившийся слот передаётся первому ждущему, не возвращаясь в пул
+    private final class Permits {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final Queue<Waiter> waiters = new ArrayDeque<>();
+        private int active;
+
+        Mono<Void> acquire() {
+            return Mono.create(sink -> {
+                Waiter waiter = new Waiter(sink);
+                sink.onCancel(() -> cancel(waiter));
+                boolean granted = false;
+                synchronized (this) {
+                    if (active < maxConcurrentCalls && waiters.isEmpty()) {
+                        granted = waiter.state.compareAndSet(WAITING, GRANTED);
+                        if (granted) {
+                            active++;
+                        }
+                    } else {
+                        waiters.add(waiter);
+                    }
+                }
+                if (granted) {
+                    sink.success();
+                }
+            });
+        }
+
+        void release() {
+            Waiter next;
+            synchronized (this) {
+                do {
+                    next = waiters.poll();
+                } while (next != null && !next.state.compareAndSet(WAITING, GRANTED));
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            next.sink.success();
+        }
+
+        // Слот, выданный уже отменённому ожиданию (таймаут), возвращается следующему
+        private void cancel(Waiter waiter) {
+            if (waiter.state.compareAndSet(WAITING, CANCELLED)) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            } else if (waiter.state.compareAndSet(GRANTED, CANCELLED)) {
+                release();
+            }
+        }
+
+        synchronized int active() {
+            return active;
+        }
+
+        synchronized int waiting() {
+            return waiters.size();
+        }
+
+        private record Waiter(MonoSink<Void> sink, AtomicInteger state) {
+            Waiter(MonoSink<Void> sink) {
+                this(sink, new AtomicInteger(WAITING));
+            }
+        }
+    }
+}
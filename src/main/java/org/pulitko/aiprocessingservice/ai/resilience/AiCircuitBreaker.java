@@ -0,0 +1,183 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiConfigurationException;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
+import org.pulitko.aiprocessingservice.exception.BaseBusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class AiCircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+
+    private final boolean[] window;
+    private int windowPosition;
+    private int recordedCalls;
+    private int failedCalls;
+
+    private State state = State.CLOSED;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+    private long openedGeneration;
+
+    public AiCircuitBreaker(
+            MeterRegistry meterRegistry,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${ai.circuit-breaker.enabled:true}") boolean enabled,
+            @Value("${ai.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${ai.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${ai.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+            @Value("${ai.circuit-breaker.open-duration:30s}") Duration openDuration,
+            @Value("${ai.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+
+        Gauge.builder("ai.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("0 - closed, 1 - open, 2 - half-open")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(String ref, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                meterRegistry.counter("ai.circuit.rejected", "ref", ref).increment();
+                return Mono.error(new AiCallNotPermittedException("AI circuit breaker is open, ref: " + ref));
+            }
+            return Mono.defer(call)
+                    .doOnSuccess(result -> onCallFinished(true))
+                    .doOnError(e -> onCallFinished(!isFailure(e)))
+                    .doOnCancel(this::onCallCancelled);
+        });
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (halfOpenStarted >= halfOpenCalls) {
+                    yield false;
+                }
+                halfOpenStarted++;
+                yield true;
+            }
+        };
+    }
+
+    private void onCallFinished(boolean success) {
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (!success) {
+                    open();
+                } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                    close();
+                }
+            } else if (state == State.CLOSED) {
+                record(success);
+                if (recordedCalls >= minimumCalls && failedCalls * 100.0 / recordedCalls >= failureRateThreshold) {
+                    open();
+                }
+            }
+            to = state;
+        }
+        publishIfChanged(from, to);
+    }
+
+    private synchronized void onCallCancelled() {
+        if (state == State.HALF_OPEN && halfOpenStarted > halfOpenSucceeded) {
+            halfOpenStarted--;
+        }
+    }
+
+    private void record(boolean success) {
+        if (recordedCalls == window.length) {
+            if (window[windowPosition]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        window[windowPosition] = !success;
+        if (!success) {
+            failedCalls++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        long generation = ++openedGeneration;
+        log.warn("AI circuit breaker opened for {}", openDuration);
+        Schedulers.parallel().schedule(() -> halfOpen(generation), openDuration.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recordedCalls = 0;
+        failedCalls = 0;
+        windowPosition = 0;
+        log.info("AI circuit breaker closed");
+    }
+
+    private void halfOpen(long generation) {
+        synchronized (this) {
+            if (state != State.OPEN || generation != openedGeneration) {
+                return;
+            }
+            state = State.HALF_OPEN;
+            halfOpenStarted = 0;
+            halfOpenSucceeded = 0;
+            log.info("AI circuit breaker half-open, letting {} trial calls through", halfOpenCalls);
+        }
+        publishIfChanged(State.OPEN, State.HALF_OPEN);
+    }
+
+    private void publishIfChanged(State from, State to) {
+        if (from != to) {
+            meterRegistry.counter("ai.circuit.transitions", "to", to.name().toLowerCase()).increment();
+            eventPublisher.publishEvent(new AiCircuitStateChangedEvent(from, to));
+        }
+    }
+
+    // Отказы собственных лимитеров (rate limit, bulkhead, ёмкость бэкендов) о здоровье провайдера не говорят
+    private static boolean isFailure(Throwable e) {
+        return !(e instanceof BaseBusinessException || e instanceof AiConfigurationException
+                || e instanceof AiRateLimitExceededException || e instanceof AiCallNotPermittedException);
+    }
+}
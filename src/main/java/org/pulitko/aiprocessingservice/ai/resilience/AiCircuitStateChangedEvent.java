@@ -0,0 +1,6 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+public record AiCircuitStateChangedEvent(
+        AiCircuitBreaker.State from,
+        AiCircuitBreaker.State to
+) {}
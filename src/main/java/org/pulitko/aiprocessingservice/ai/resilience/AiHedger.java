@@ -0,0 +1,200 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.ai.routing.RoutingContext;
+import org.pulitko.aiprocessingservice.config.AiHedgingConfig;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// Бюджет хеджей пополняется на max-hedge-rate с каждого вызова: медленный провайдер не удвоит трафик
+@Slf4j
+@Component
+public class AiHedger {
+    private static final double MAX_BUDGET = 10;
+
+    private final AiHedgingConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private double budget;
+
+    public AiHedger(AiHedgingConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean appliesTo(String ref) {
+        return config.isEnabled() && config.getRefs().contains(ref);
+    }
+
+    // extraTokens - оценка токенов, потраченных на дублирующий запрос, по результату победителя
+    public <T> Mono<T> execute(String ref, Supplier<Mono<T>> call, ToLongFunction<T> extraTokens) {
+        if (!appliesTo(ref)) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            earnBudget();
+            LatencyWindow window = windows.computeIfAbsent(ref, r -> new LatencyWindow(config.getWindowSize()));
+            Duration delay = hedgeDelay(window);
+            if (delay == null) {
+                long startedAt = System.nanoTime();
+                return Mono.defer(call).doOnSuccess(result -> window.record(System.nanoTime() - startedAt));
+            }
+            return hedged(ref, call, extraTokens, window, delay);
+        });
+    }
+
+    private <T> Mono<T> hedged(String ref, Supplier<Mono<T>> call, ToLongFunction<T> extraTokens,
+                               LatencyWindow window, Duration delay) {
+        return Mono.create(sink -> {
+            Set<String> usedBackends = ConcurrentHashMap.newKeySet();
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicBoolean hedgeSent = new AtomicBoolean();
+            // ошибка первой завершившейся попытки, пока вторая ещё идёт
+            AtomicReference<Throwable> firstError = new AtomicReference<>();
+            Disposable.Composite subscriptions = Disposables.composite();
+            sink.onCancel(subscriptions);
+
+            long startedAt = System.nanoTime();
+            subscriptions.add(Mono.defer(call)
+                    .contextWrite(context -> context.putAll(sink.contextView())
+                            .put(RoutingContext.USED_BACKENDS, usedBackends))
+                    .subscribe(
+                            result -> {
+                                if (done.compareAndSet(false, true)) {
+                                    window.record(System.nanoTime() - startedAt);
+                                    if (hedgeSent.get()) {
+                                        recordExtraTokens(ref, result, extraTokens);
+                                    }
+                                    subscriptions.dispose();
+                                    sink.success(result);
+                                }
+                            },
+                            error -> {
+                                if (!hedgeSent.get() || !firstError.compareAndSet(null, error)) {
+                                    if (done.compareAndSet(false, true)) {
+                                        subscriptions.dispose();
+                                        sink.error(error);
+                                    }
+                                }
+                            },
+                            () -> {
+                                if (done.compareAndSet(false, true)) {
+                                    subscriptions.dispose();
+                                    sink.success();
+                                }
+                            }));
+
+            subscriptions.add(Mono.delay(delay).subscribe(tick -> {
+                if (done.get()) {
+                    return;
+                }
+                if (!spendBudget()) {
+                    meterRegistry.counter("ai.hedge.skipped", "ref", ref, "reason", "budget").increment();
+                    return;
+                }
+                hedgeSent.set(true);
+                meterRegistry.counter("ai.hedge.sent", "ref", ref).increment();
+                log.debug("Hedging ref {} after {} ms", ref, delay.toMillis());
+                long hedgeStartedAt = System.nanoTime();
+                subscriptions.add(Mono.defer(call)
+                        .contextWrite(context -> {
+                            Context merged = context.putAll(sink.contextView());
+                            return config.isOtherBackend()
+                                    ? merged.put(RoutingContext.AVOID_BACKENDS, Set.copyOf(usedBackends))
+                                    : merged;
+                        })
+                        .subscribe(
+                                result -> {
+                                    if (done.compareAndSet(false, true)) {
+                                        window.record(System.nanoTime() - hedgeStartedAt);
+                                        meterRegistry.counter("ai.hedge.won", "ref", ref).increment();
+                                        recordExtraTokens(ref, result, extraTokens);
+                                        subscriptions.dispose();
+                                        sink.success(result);
+                                    }
+                                },
+                                error -> {
+                                    if (!firstError.compareAndSet(null, error) && done.compareAndSet(false, true)) {
+                                        subscriptions.dispose();
+                                        sink.error(firstError.get());
+                                    }
+                                },
+                                () -> {
+                                    if (done.compareAndSet(false, true)) {
+                                        subscriptions.dispose();
+                                        sink.success();
+                                    }
+                                }));
+            }));
+        });
+    }
+
+    // Проигравший запрос отменён, но промпт провайдер уже принял: считаем его по победителю
+    private <T> void recordExtraTokens(String ref, T result, ToLongFunction<T> extraTokens) {
+        if (result != null) {
+            meterRegistry.counter("ai.hedge.tokens.extra", "ref", ref).increment(extraTokens.applyAsLong(result));
+        }
+    }
+
+    // null - замеров пока мало, хеджировать не по чему
+    Duration hedgeDelay(LatencyWindow window) {
+        long percentileNanos = window.percentile(config.getPercentile(), config.getMinSamples());
+        if (percentileNanos < 0) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(percentileNanos, config.getMinDelay().toNanos()));
+    }
+
+    private synchronized void earnBudget() {
+        budget = Math.min(MAX_BUDGET, budget + config.getMaxHedgeRate());
+    }
+
+    private synchronized boolean spendBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    // Кольцевой буфер длительностей последних успешных вызовов
+    static class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized long percentile(double percentile, int minSamples) {
+            if (size < Math.max(1, minSamples)) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.max(0, Math.min(index, size - 1))];
+        }
+    }
+}
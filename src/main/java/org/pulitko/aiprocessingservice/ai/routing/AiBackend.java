@@ -0,0 +1,105 @@
+package org.pulitko.aiprocessingservice.ai.routing;
+
+import org.pulitko.aiprocessingservice.ai.AiClient;
+
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+// Один бэкенд маршрутизатора: клиент, лимит одновременных вызовов и скользящие EWMA задержки и ошибок
+public class AiBackend {
+    private final String name;
+    private final AiClient client;
+    private final String model;
+    private final Set<String> refs;
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+    private final double alpha;
+
+    private double latencyEwmaMs;
+    private double errorEwma;
+    private long samples;
+    private long lastSampleNanos;
+
+    public AiBackend(String name, AiClient client, String model, Set<String> refs, int maxConcurrentCalls, double alpha) {
+        this.name = name;
+        this.client = client;
+        this.model = model;
+        this.refs = refs == null ? Set.of() : Set.copyOf(refs);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.alpha = alpha;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public AiClient client() {
+        return client;
+    }
+
+    // модель, с которой вызывать клиент; null - модель клиента по умолчанию
+    public String modelFor(String requestedModel) {
+        return model != null ? model : requestedModel;
+    }
+
+    public boolean accepts(String ref, String requestedModel) {
+        if (!refs.isEmpty() && !refs.contains(ref)) {
+            return false;
+        }
+        return requestedModel == null || model == null || model.equals(requestedModel);
+    }
+
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int inFlight() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public synchronized void record(long latencyNanos, boolean success) {
+        lastSampleNanos = System.nanoTime();
+        double latencyMs = latencyNanos / 1_000_000.0;
+        double error = success ? 0.0 : 1.0;
+        if (samples++ == 0) {
+            latencyEwmaMs = latencyMs;
+            errorEwma = error;
+            return;
+        }
+        latencyEwmaMs += alpha * (latencyMs - latencyEwmaMs);
+        errorEwma += alpha * (error - errorEwma);
+    }
+
+    // Затухает только история: зависшие вызовы замеров не дают, поэтому множитель inFlight не затухает
+    public synchronized double score(double errorPenaltyMs, double priorLatencyMs, long decayNanos, long now) {
+        if (samples == 0) {
+            return priorLatencyMs * inFlight();
+        }
+        double weight = Math.exp(-(double) (now - lastSampleNanos) / decayNanos);
+        double latencyMs = priorLatencyMs + (latencyEwmaMs - priorLatencyMs) * weight;
+        return latencyMs * (inFlight() + 1) + errorEwma * weight * errorPenaltyMs;
+    }
+
+    public synchronized boolean hasSamples() {
+        return samples > 0;
+    }
+
+    public synchronized double latencyEwmaMs() {
+        return latencyEwmaMs;
+    }
+
+    public synchronized double errorRate() {
+        return errorEwma;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[latency=" + Math.round(latencyEwmaMs) + "ms, errors="
+                + Math.round(errorEwma * 100) + "%, inFlight=" + inFlight() + "]";
+    }
+}
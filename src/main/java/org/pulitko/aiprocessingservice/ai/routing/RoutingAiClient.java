@@ -0,0 +1,211 @@
+package org.pulitko.aiprocessingservice.ai.routing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.ai.AiClient;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.client.OpenAiClient;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.ratelimit.OpenAiRateLimiter;
+import org.pulitko.aiprocessingservice.config.AiHttpConnector;
+import org.pulitko.aiprocessingservice.config.AiHttpProperties;
+import org.pulitko.aiprocessingservice.config.AiRoutingConfig;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiConfigurationException;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Заменяет OpenAiClient при ai.routing.enabled=true; при технической ошибке вызов уходит на следующий бэкенд
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "ai.routing.enabled", havingValue = "true")
+public class RoutingAiClient implements AiClient {
+    private final List<AiBackend> backends;
+    private final MeterRegistry meterRegistry;
+    private final double errorPenaltyMs;
+    private final long decayNanos;
+    private final int maxAttempts;
+
+    @Autowired
+    public RoutingAiClient(AiRoutingConfig config,
+                           WebClient.Builder builder,
+                           AiHttpConnector aiHttpConnector,
+                           MeterRegistry meterRegistry,
+                           OpenAiRateLimiter rateLimiter,
+                           AiRequestFactory requestFactory,
+                           @Value("${ai.streaming.enabled:false}") boolean streamingEnabled,
+                           AiHttpProperties httpProperties) {
+        this(config, meterRegistry, config.getBackends().stream()
+                .map(backend -> new AiBackend(backend.getName(),
+                        new OpenAiClient(aiHttpConnector.applyTo(builder.clone(), backend.getBaseUrl()), backend.getBaseUrl(), backend.getApiKey(), meterRegistry,
+                                backend.isRateLimited() ? rateLimiter : unlimited(meterRegistry),
+                                requestFactory, streamingEnabled, httpProperties),
+                        backend.getModel(), backend.getRefs(), backend.getMaxConcurrentCalls(), config.getEwmaAlpha()))
+                .toList());
+    }
+
+    public RoutingAiClient(AiRoutingConfig config, MeterRegistry meterRegistry, List<AiBackend> backends) {
+        if (backends.isEmpty()) {
+            throw new IllegalStateException("ai.routing.enabled=true requires at least one ai.routing.backends entry");
+        }
+        this.backends = List.copyOf(backends);
+        this.meterRegistry = meterRegistry;
+        this.errorPenaltyMs = config.getErrorPenalty().toMillis();
+        this.decayNanos = config.getDecayTime().toNanos();
+        this.maxAttempts = Math.max(1, config.getMaxAttempts());
+        for (AiBackend backend : this.backends) {
+            Gauge.builder("ai.routing.latency.ewma", backend, AiBackend::latencyEwmaMs)
+                    .tag("backend", backend.name())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("ai.routing.error.rate", backend, AiBackend::errorRate)
+                    .tag("backend", backend.name())
+                    .register(meterRegistry);
+            Gauge.builder("ai.routing.inflight", backend, AiBackend::inFlight)
+                    .tag("backend", backend.name())
+                    .register(meterRegistry);
+        }
+        log.info("AI routing across backends {}", this.backends.stream().map(AiBackend::name).toList());
+    }
+
+    @Override
+    public String analyze(String systemInstruction, String userContent, String schemaJson, String ref) {
+        return analyzeAsync(systemInstruction, userContent, schemaJson, ref)
+                .map(AiCompletion::content)
+                .block();
+    }
+
+    @Override
+    public Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson, String ref) {
+        return analyzeAsync(systemInstruction, userContent, schemaJson, ref, null);
+    }
+
+    @Override
+    public Mono<AiCompletion> analyzeAsync(String systemInstruction, String userContent, String schemaJson,
+                                           String ref, String model) {
+        return Mono.deferContextual(context -> {
+            Set<String> avoid = RoutingContext.backends(context, RoutingContext.AVOID_BACKENDS);
+            Set<String> excluded = avoid.isEmpty() || !hasAlternative(ref, model, avoid) ? Set.of() : Set.copyOf(avoid);
+            return attempt(systemInstruction, userContent, schemaJson, ref, model, excluded, 1,
+                    context.<Set<String>>getOrDefault(RoutingContext.USED_BACKENDS, null));
+        });
+    }
+
+    private Mono<AiCompletion> attempt(String systemInstruction, String userContent, String schemaJson,
+                                       String ref, String model, Set<String> tried, int attempt, Set<String> used) {
+        return Mono.defer(() -> {
+            AiBackend backend = acquire(ref, model, tried);
+            if (used != null) {
+                used.add(backend.name());
+            }
+            long startedAt = System.nanoTime();
+            AtomicBoolean released = new AtomicBoolean();
+            return backend.client()
+                    .analyzeAsync(systemInstruction, userContent, schemaJson, ref, backend.modelFor(model))
+                    .doOnSuccess(completion -> complete(backend, released, startedAt, "success", true))
+                    .onErrorResume(e -> {
+                        if (!isBackendFailure(e)) {
+                            complete(backend, released, startedAt, "rejected", true);
+                            return Mono.error(e);
+                        }
+                        complete(backend, released, startedAt, "error", false);
+                        if (attempt >= maxAttempts || !hasAlternative(ref, model, with(tried, backend.name()))) {
+                            return Mono.error(e);
+                        }
+                        log.warn("AI backend {} failed for ref {}, trying another: {}", backend.name(), ref, e.toString());
+                        return attempt(systemInstruction, userContent, schemaJson, ref, model,
+                                with(tried, backend.name()), attempt + 1, used);
+                    })
+                    .doOnCancel(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            backend.release();
+                        }
+                    });
+        });
+    }
+
+    // Захваченный слот освобождается ровно один раз: в complete или при отмене
+    AiBackend acquire(String ref, String model, Set<String> excluded) {
+        List<AiBackend> candidates = candidates(ref, model, excluded);
+        if (candidates.isEmpty()) {
+            throw new AiConfigurationException(ref, "no AI backend is allowed for ref " + ref
+                    + (model == null ? "" : " and model " + model));
+        }
+        for (AiBackend backend : candidates) {
+            if (backend.tryAcquire()) {
+                return backend;
+            }
+        }
+        meterRegistry.counter("ai.routing.rejected", "ref", ref).increment();
+        throw new AiCallNotPermittedException("All AI backends for ref " + ref + " are at capacity: " + candidates);
+    }
+
+    List<AiBackend> candidates(String ref, String model, Set<String> excluded) {
+        long now = System.nanoTime();
+        List<AiBackend> eligible = new ArrayList<>();
+        for (AiBackend backend : backends) {
+            if (!excluded.contains(backend.name()) && backend.accepts(ref, model)) {
+                eligible.add(backend);
+            }
+        }
+        // нейтральная оценка задержки - среднее по бэкендам с замерами
+        double priorLatencyMs = eligible.stream()
+                .filter(AiBackend::hasSamples)
+                .mapToDouble(AiBackend::latencyEwmaMs)
+                .average()
+                .orElse(0);
+        Map<AiBackend, Double> scores = new HashMap<>();
+        eligible.forEach(b -> scores.put(b, b.score(errorPenaltyMs, priorLatencyMs, decayNanos, now)));
+        eligible.sort(Comparator.comparingDouble(scores::get));
+        return eligible;
+    }
+
+    private boolean hasAlternative(String ref, String model, Set<String> excluded) {
+        return !candidates(ref, model, excluded).isEmpty();
+    }
+
+    private void complete(AiBackend backend, AtomicBoolean released, long startedAt, String status, boolean healthy) {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        backend.release();
+        backend.record(elapsed, healthy);
+        meterRegistry.timer("ai.routing.requests", "backend", backend.name(), "status", status)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    // Невалидный ответ модели или ошибка конфигурации не повод уходить на другой бэкенд
+    private static boolean isBackendFailure(Throwable e) {
+        return !(e instanceof AiResultValidationException) && !(e instanceof AiConfigurationException);
+    }
+
+    private static Set<String> with(Set<String> names, String name) {
+        Set<String> copy = new HashSet<>(names);
+        copy.add(name);
+        return copy;
+    }
+
+    private static OpenAiRateLimiter unlimited(MeterRegistry meterRegistry) {
+        return new OpenAiRateLimiter(meterRegistry, false, 0, 0, Duration.ZERO, 0);
+    }
+}
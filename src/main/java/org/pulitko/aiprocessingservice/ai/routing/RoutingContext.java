@@ -0,0 +1,20 @@
+package org.pulitko.aiprocessingservice.ai.routing;
+
+import reactor.util.context.ContextView;
+
+import java.util.Set;
+
+// Ключи Reactor Context, через которые вызывающий код влияет на выбор бэкенда
+public final class RoutingContext {
+    // Set<String>, в который RoutingAiClient добавляет имя выбранного бэкенда
+    public static final String USED_BACKENDS = "ai.routing.used-backends";
+    // Set<String> бэкендов, которых по возможности избегать
+    public static final String AVOID_BACKENDS = "ai.routing.avoid-backends";
+
+    private RoutingContext() {
+    }
+
+    static Set<String> backends(ContextView context, String key) {
+        return context.getOrDefault(key, Set.of());
+    }
+}
@@ -0,0 +1,15 @@
+package org.pulitko.aiprocessingservice.ai.tokenizer;
+
+public record ContextPlan(
+        Decision decision,
+        // null - модель по умолчанию
+        String model,
+        String payload,
+        int promptTokens
+) {
+    public enum Decision {
+        SEND,
+        TRUNCATE,
+        LARGER_MODEL
+    }
+}
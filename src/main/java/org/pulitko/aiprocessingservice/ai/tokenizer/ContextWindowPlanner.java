@@ -0,0 +1,93 @@
+package org.pulitko.aiprocessingservice.ai.tokenizer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.config.AiContextConfig;
+import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.exception.PayloadTooLargeException;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Порядок: как есть, обрезка (не больше max-truncation-ratio), larger-model, иначе отказ без вызова провайдера
+@Slf4j
+@Component
+public class ContextWindowPlanner {
+    private final AiContextConfig config;
+    private final TokenCounter tokenCounter;
+    private final AiRequestFactory requestFactory;
+    private final MeterRegistry meterRegistry;
+    // шаблон и схема меняются только с версией промпта
+    private final Cache<Prompt, Integer> fixedTokensByPrompt = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .build();
+    private final Map<String, DistributionSummary> estimatedTokens = new ConcurrentHashMap<>();
+
+    public ContextWindowPlanner(AiContextConfig config, TokenCounter tokenCounter,
+                                AiRequestFactory requestFactory, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.tokenCounter = tokenCounter;
+        this.requestFactory = requestFactory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public ContextPlan plan(Prompt prompt, String payload, String ref) {
+        if (!config.isEnabled()) {
+            return new ContextPlan(ContextPlan.Decision.SEND, null, payload, 0);
+        }
+        int fixedTokens = fixedTokensByPrompt.get(prompt,
+                p -> tokenCounter.countPrompt(p.template(), null, p.schemaJson()));
+        int limit = promptLimit(requestFactory.defaultModel());
+        int upperBound = fixedTokens + TokenCounter.upperBound(payload);
+        if (upperBound <= limit) {
+            // заведомо помещается - payload не токенизируем, в плане оценка сверху
+            return record(ref, new ContextPlan(ContextPlan.Decision.SEND, null, payload, upperBound));
+        }
+
+        int payloadTokens = tokenCounter.count(payload);
+        int promptTokens = fixedTokens + payloadTokens;
+        if (promptTokens <= limit) {
+            return record(ref, new ContextPlan(ContextPlan.Decision.SEND, null, payload, promptTokens));
+        }
+
+        int payloadBudget = limit - fixedTokens;
+        if (payloadBudget > 0 && payloadTokens - payloadBudget <= payloadTokens * config.getMaxTruncationRatio()) {
+            String truncated = tokenCounter.truncate(payload, payloadBudget);
+            log.info("Payload for ref {} truncated from {} to {} tokens", ref, payloadTokens, payloadBudget);
+            return record(ref, new ContextPlan(ContextPlan.Decision.TRUNCATE, null, truncated,
+                    fixedTokens + tokenCounter.count(truncated)));
+        }
+
+        String largerModel = config.getLargerModel();
+        if (largerModel != null && !largerModel.isBlank() && promptTokens <= promptLimit(largerModel)) {
+            log.info("Prompt for ref {} needs {} tokens, using {}", ref, promptTokens, largerModel);
+            return record(ref, new ContextPlan(ContextPlan.Decision.LARGER_MODEL, largerModel, payload, promptTokens));
+        }
+
+        meterRegistry.counter("ai.context.plan", "ref", ref, "decision", "rejected").increment();
+        estimatedTokens(ref).record(promptTokens);
+        throw new PayloadTooLargeException(ref, promptTokens, limit);
+    }
+
+    public int promptLimit(String model) {
+        return config.contextWindow(model) - config.getReservedCompletionTokens();
+    }
+
+    private ContextPlan record(String ref, ContextPlan plan) {
+        meterRegistry.counter("ai.context.plan", "ref", ref, "decision", plan.decision().name().toLowerCase())
+                .increment();
+        estimatedTokens(ref).record(plan.promptTokens());
+        return plan;
+    }
+
+    private DistributionSummary estimatedTokens(String ref) {
+        return estimatedTokens.computeIfAbsent(ref, r -> DistributionSummary.builder("ai.prompt.tokens.estimated")
+                .tag("ref", r)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,76 @@
+package org.pulitko.aiprocessingservice.ai.tokenizer;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.pulitko.aiprocessingservice.config.AiContextConfig;
+import org.springframework.stereotype.Component;
+
+// Офлайн-подсчёт токенов той же BPE-кодировкой, что у модели (jtokkit, словари внутри jar)
+@Component
+public class TokenCounter {
+    // chat/completions: служебные токены на каждое сообщение и на начало ответа
+    static final int TOKENS_PER_MESSAGE = 3;
+    static final int REPLY_PRIMING_TOKENS = 3;
+    static final String TRUNCATION_MARKER = "\n[...]\n";
+    private static final double HEAD_SHARE = 0.8;
+
+    private final Encoding encoding;
+
+    public TokenCounter(AiContextConfig config) {
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(config.getEncoding())
+                .orElseThrow(() -> new IllegalStateException("Unknown tokenizer encoding " + config.getEncoding()));
+    }
+
+    public int count(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokensOrdinary(text);
+    }
+
+    // BPE кодирует байты UTF-8, один токен покрывает минимум один байт: оценка сверху без токенизации
+    public static int upperBound(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // system + user сообщения и схема structured output, которую провайдер тоже подставляет в промпт
+    public int countPrompt(String systemInstruction, String payload, String schemaJson) {
+        return count(systemInstruction) + count(payload) + count(schemaJson)
+                + 2 * TOKENS_PER_MESSAGE + REPLY_PRIMING_TOKENS;
+    }
+
+    // Голова и хвост текста суммарно не больше maxTokens, с маркером посередине
+    public String truncate(String text, int maxTokens) {
+        IntArrayList tokens = encoding.encodeOrdinary(text);
+        if (tokens.size() <= maxTokens) {
+            return text;
+        }
+        int budget = Math.max(0, maxTokens - count(TRUNCATION_MARKER));
+        int head = (int) (budget * HEAD_SHARE);
+        int tail = budget - head;
+        IntArrayList headTokens = new IntArrayList(head);
+        for (int i = 0; i < head; i++) {
+            headTokens.add(tokens.get(i));
+        }
+        IntArrayList tailTokens = new IntArrayList(tail);
+        for (int i = tokens.size() - tail; i < tokens.size(); i++) {
+            tailTokens.add(tokens.get(i));
+        }
+        return encoding.decode(headTokens).stripTrailing() + TRUNCATION_MARKER + encoding.decode(tailTokens).stripLeading();
+    }
+}
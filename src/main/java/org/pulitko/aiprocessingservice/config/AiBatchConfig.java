@@ -0,0 +1,30 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.batch")
+@Data
+public class AiBatchConfig {
+    private boolean enabled = false;
+    // refs без требований к задержке, которые идут через Batch API
+    private Set<String> refs = new HashSet<>();
+    private String baseUrl = "https://api.openai.com/v1";
+    private String completionWindow = "24h";
+    private int maxRequestsPerBatch = 1000;
+    private int minRequestsPerBatch = 100;
+    // сколько самый старый запрос может ждать, пока набирается min-requests-per-batch
+    private Duration maxWait = Duration.ofMinutes(15);
+    private Duration lease = Duration.ofMinutes(10);
+    private int maxAttempts = 3;
+
+    public boolean accepts(String ref) {
+        return enabled && ref != null && refs.contains(ref);
+    }
+}
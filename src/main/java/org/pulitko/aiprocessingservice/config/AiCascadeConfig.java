@@ -0,0 +1,32 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.cascade")
+@Data
+public class AiCascadeConfig {
+    private boolean enabled = false;
+    // ref без записи идёт одним вызовом на ai.api.model-name
+    private Map<String, Cascade> refs = new HashMap<>();
+
+    public Cascade cascadeFor(String ref) {
+        Cascade cascade = enabled ? refs.get(ref) : null;
+        return cascade == null || cascade.getModels().size() < 2 ? null : cascade;
+    }
+
+    @Data
+    public static class Cascade {
+        // от дешёвой к сильной; следующая вызывается, только если ответ предыдущей не принят
+        private List<String> models = new ArrayList<>();
+        // ответ с confidence ниже порога уходит на следующую модель
+        private double minConfidence = 0.7;
+    }
+}
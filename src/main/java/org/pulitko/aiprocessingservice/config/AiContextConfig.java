@@ -0,0 +1,30 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.context")
+@Data
+public class AiContextConfig {
+    private boolean enabled = true;
+    // BPE-кодировка модели: o200k_base для gpt-4o / gpt-4.1, cl100k_base для gpt-4 / gpt-3.5
+    private String encoding = "o200k_base";
+    // контекстное окно по имени модели, для неизвестных - default-context-window
+    private Map<String, Integer> contextWindows = new HashMap<>();
+    private int defaultContextWindow = 128_000;
+    // место под ответ модели
+    private int reservedCompletionTokens = 2048;
+    // какую долю токенов payload можно отрезать, прежде чем переходить на larger-model
+    private double maxTruncationRatio = 0.25;
+    // модель с большим окном для запросов, которые не помещаются; пусто - не используется
+    private String largerModel;
+
+    public int contextWindow(String model) {
+        return contextWindows.getOrDefault(model, defaultContextWindow);
+    }
+}
@@ -0,0 +1,28 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Set;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.hedging")
+@Data
+public class AiHedgingConfig {
+    private boolean enabled = false;
+    // хеджирование включается только для перечисленных ref
+    private Set<String> refs = Set.of();
+    // второй запрос уходит, если первый дольше этого перцентиля последних вызовов ref
+    private double percentile = 0.95;
+    private int windowSize = 200;
+    // пока замеров меньше, хедж не отправляется
+    private int minSamples = 20;
+    // нижняя граница задержки хеджа
+    private Duration minDelay = Duration.ofMillis(200);
+    // доля вызовов, которую можно продублировать
+    private double maxHedgeRate = 0.1;
+    // при маршрутизации отправлять хедж на другой бэкенд, если он есть
+    private boolean otherBackend = true;
+}
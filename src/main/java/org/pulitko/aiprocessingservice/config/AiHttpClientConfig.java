@@ -0,0 +1,75 @@
+package org.pulitko.aiprocessingservice.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Метрики пула - reactor.netty.connection.provider.* с name=ai-api
+@Slf4j
+@Configuration
+public class AiHttpClientConfig {
+    static final String POOL_NAME = "ai-api";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider aiConnectionProvider(AiHttpProperties properties) {
+        AiHttpProperties.Pool pool = properties.getPool();
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public AiHttpConnector aiHttpConnector(ConnectionProvider aiConnectionProvider,
+                                           AiHttpProperties properties) {
+        HttpClient client = HttpClient.create(aiConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .responseTimeout(properties.getResponseTimeout())
+                .doOnConnected(connection -> connection.addHandlerLast(
+                        new WriteTimeoutHandler(properties.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                .keepAlive(true)
+                .compress(true)
+                .metrics(true, uriTemplate());
+
+        AiHttpProperties.KeepAlive keepAlive = properties.getKeepAlive();
+        if (keepAlive.isEnabled()) {
+            client = client.option(ChannelOption.SO_KEEPALIVE, true);
+            if (Epoll.isAvailable()) {
+                client = client
+                        .option(EpollChannelOption.TCP_KEEPIDLE, (int) keepAlive.getIdle().toSeconds())
+                        .option(EpollChannelOption.TCP_KEEPINTVL, (int) keepAlive.getInterval().toSeconds())
+                        .option(EpollChannelOption.TCP_KEEPCNT, keepAlive.getProbes());
+            }
+        }
+        // ALPN выберет h2, если провайдер его поддерживает, иначе останется HTTP/1.1
+        ReactorClientHttpConnector negotiated = properties.isHttp2()
+                ? new ReactorClientHttpConnector(client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure())
+                : null;
+        log.info("AI HTTP client: pool {} max {} connections, connect timeout {}, response timeout {}, h2 for https {}",
+                POOL_NAME, properties.getPool().getMaxConnections(),
+                properties.getConnectTimeout(), properties.getResponseTimeout(), properties.isHttp2());
+        return new AiHttpConnector(new ReactorClientHttpConnector(client), negotiated);
+    }
+
+    // /files/file-abc/content -> /files/{id}/content: id в тегах метрик раздувает кардинальность
+    private static Function<String, String> uriTemplate() {
+        return uri -> uri.replaceAll("/(file|batch)[-_][A-Za-z0-9_-]+", "/{id}");
+    }
+}
@@ -0,0 +1,14 @@
+package org.pulitko.aiprocessingservice.config;
+
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+// Не ClientHttpConnector-бин: такой Boot применил бы ко всем WebClient.Builder приложения
+public record AiHttpConnector(ClientHttpConnector http11, ClientHttpConnector negotiated) {
+
+    // Протокол выбирается по адресу бэкенда: h2 договаривается через ALPN, а он есть только у https
+    public WebClient.Builder applyTo(WebClient.Builder builder, String baseUrl) {
+        boolean secure = baseUrl != null && baseUrl.regionMatches(true, 0, "https:", 0, 6);
+        return builder.clientConnector(secure && negotiated != null ? negotiated : http11);
+    }
+}
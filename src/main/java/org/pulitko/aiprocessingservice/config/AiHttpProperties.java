@@ -0,0 +1,49 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.api.http")
+@Data
+public class AiHttpProperties {
+    private Pool pool = new Pool();
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    // ожидание ответа и пауза между чанками стрима
+    private Duration responseTimeout = Duration.ofSeconds(60);
+    private Duration writeTimeout = Duration.ofSeconds(30);
+    private KeepAlive keepAlive = new KeepAlive();
+    // h2 через ALPN, только для https
+    private boolean http2 = true;
+    private Compression compression = new Compression();
+
+    @Data
+    public static class Pool {
+        private int maxConnections = 100;
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+        // меньше idle-таймаута балансировщика провайдера, иначе ловим "connection reset" на переиспользовании
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class KeepAlive {
+        private boolean enabled = true;
+        private Duration idle = Duration.ofSeconds(30);
+        private Duration interval = Duration.ofSeconds(10);
+        private int probes = 3;
+    }
+
+    @Data
+    public static class Compression {
+        // gzip тела запроса: включать только если endpoint принимает Content-Encoding; ответы принимаются сжатыми всегда
+        private boolean requests = false;
+        private DataSize minRequestSize = DataSize.ofKilobytes(8);
+    }
+}
@@ -0,0 +1,40 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.routing")
+@Data
+public class AiRoutingConfig {
+    private boolean enabled = false;
+    // вес нового замера в EWMA задержки и доли ошибок
+    private double ewmaAlpha = 0.2;
+    // сколько миллисекунд задержки "стоит" доля ошибок 1.0
+    private Duration errorPenalty = Duration.ofSeconds(30);
+    // за это время без новых замеров оценка бэкенда затухает в e раз, и его снова пробуют
+    private Duration decayTime = Duration.ofSeconds(10);
+    // попытки на разных бэкендах при технической ошибке
+    private int maxAttempts = 2;
+    private List<Backend> backends = new ArrayList<>();
+
+    @Data
+    public static class Backend {
+        private String name;
+        private String baseUrl;
+        private String apiKey;
+        // пусто - модель из ai.api.model-name или явно запрошенная; задана - бэкенд обслуживает только её
+        private String model;
+        private int maxConcurrentCalls = 16;
+        // пусто - любые ref
+        private Set<String> refs = Set.of();
+        // общий OpenAiRateLimiter для бэкенда основного аккаунта OpenAI
+        private boolean rateLimited = false;
+    }
+}
@@ -8,12 +8,14 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.data.jdbc.repository.config.EnableJdbcAuditing;
 import org.springframework.jdbc.support.JdbcTransactionManager;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
 
 @EnableJdbcAuditing
 @EnableAsync
+@EnableScheduling
 @Configuration
 public class AppConfig {
     @Bean
@@ -4,11 +4,17 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
 import org.pulitko.aiprocessingservice.exception.BaseBusinessException;
+import org.pulitko.aiprocessingservice.kafka.IncomingRecords;
+import org.pulitko.aiprocessingservice.kafka.TimedDeserializer;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
 import org.pulitko.aiprocessingservice.service.DeserializationErrorService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
@@ -22,13 +28,11 @@ import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.*;
 import org.springframework.kafka.support.serializer.*;
 import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.util.backoff.BackOff;
 import org.springframework.util.backoff.FixedBackOff;
 
-import java.io.ByteArrayInputStream;
-import java.io.ObjectInputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.HexFormat;
 import java.util.Map;
+import java.util.Properties;
 
 @Slf4j
 @Configuration
@@ -45,6 +49,9 @@ public class KafkaConfig {
     @Value("${spring.kafka.topics.processing-dlq}")
     private String businessDlqTopic;
 
+    @Value("${spring.kafka.consumer.concurrency:1}")
+    private int consumerConcurrency;
+
     private final KafkaProperties kafkaProperties;
     private final SslBundles sslBundles;
 
@@ -61,7 +68,7 @@ public class KafkaConfig {
     }
 
     @Bean
-    public ConsumerFactory<String, IncomingMessage> consumerFactory() {
+    public ConsumerFactory<String, IncomingMessage> consumerFactory(PipelineMetrics pipelineMetrics) {
         Map<String, Object> config = kafkaProperties.buildConsumerProperties(null);
         String jaasConfig = buildJaasConfig();
         if (jaasConfig != null) {
@@ -72,11 +79,9 @@ public class KafkaConfig {
                 config.get("security.protocol"),
                 config.get("sasl.mechanism"),
                 jaasConfig != null ? "[SET]" : "[NOT SET]");
-        JsonDeserializer<IncomingMessage> jsonDeserializer = new JsonDeserializer<>(IncomingMessage.class);
-        jsonDeserializer.addTrustedPackages("org.pulitko.aiprocessingservice.dto", "org.pulitko.aiprocessingservice.model");
-        jsonDeserializer.setRemoveTypeHeaders(false);
         ErrorHandlingDeserializer<IncomingMessage> errorHandlingDeserializer =
-                new ErrorHandlingDeserializer<>(jsonDeserializer);
+                new ErrorHandlingDeserializer<>(new TimedDeserializer<>(
+                        IncomingRecords.deserializer(), pipelineMetrics, IncomingMessage::ref));
 
         return new DefaultKafkaConsumerFactory<>(
                 config,
@@ -85,55 +90,39 @@ public class KafkaConfig {
         );
     }
 
-    private ConsumerRecordRecoverer createRecoverer(DeserializationErrorService errorService) {
-        return (record, ex) -> {
-            String rawPayload = null;
-
-            if (ex instanceof org.springframework.kafka.listener.ListenerExecutionFailedException) {
-                Throwable cause = ex.getCause();
-                if (cause instanceof org.springframework.kafka.support.serializer.DeserializationException dex) {
-                    if (dex.getData() != null) {
-                        rawPayload = new String(dex.getData(), StandardCharsets.UTF_8);
-                    }
-                }
-            }
-
-            if (rawPayload == null) {
-                for (org.apache.kafka.common.header.Header header : record.headers()) {
-                    if (header.key().contains("DeserializationException")) {
-                        byte[] data = header.value();
-                        if (data == null) continue;
-
-                        if (data.length > 2 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED) {
-                            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
-                                Object obj = ois.readObject();
-                                if (obj instanceof org.springframework.kafka.support.serializer.DeserializationException dex) {
-                                    rawPayload = new String(dex.getData(), StandardCharsets.UTF_8);
-                                } else if (obj instanceof byte[] bytes) {
-                                    rawPayload = new String(bytes, StandardCharsets.UTF_8);
-                                }
-                            } catch (Exception e) {
-                                rawPayload = "Hex Dump: " + HexFormat.of().formatHex(data);
-                            }
-                        } else {
-                            rawPayload = new String(data, StandardCharsets.UTF_8);
-                        }
-                    }
-                }
-            }
+    @Bean
+    public ConsumerRecordRecoverer incomingRecordRecoverer() {
+        return createRecoverer(errorService);
+    }
 
-            if (rawPayload == null && record.value() != null) {
-                rawPayload = record.value().toString();
-            }
+    @Bean
+    public BackOff incomingBackOff() {
+        return new FixedBackOff(2000L, 3);
+    }
 
-            String finalData = (rawPayload != null) ? rawPayload : "Could not extract data";
+    private ConsumerRecordRecoverer createRecoverer(DeserializationErrorService errorService) {
+        return (record, ex) -> {
+            String finalData = IncomingRecords.rawPayload(record, ex);
 
             log.error("Recovery: Saving to DB: {}", finalData);
             errorService.saveError(finalData, ex.getMessage(), record.topic());
         };
     }
 
+    // Отказ breaker'а/bulkhead'а/лимитера не должен расходовать попытки и уводить запись в recoverer
+    private static final BackOff NOT_PERMITTED_BACKOFF = new FixedBackOff(1000L, FixedBackOff.UNLIMITED_ATTEMPTS);
+
+    private static BackOff backOffFor(ConsumerRecord<?, ?> record, Exception ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AiCallNotPermittedException || cause instanceof AiRateLimitExceededException) {
+                return NOT_PERMITTED_BACKOFF;
+            }
+        }
+        return null;
+    }
+
     private void addExceptionClassifications(DefaultAfterRollbackProcessor<?, ?> processor) {
+        processor.setBackOffFunction(KafkaConfig::backOffFor);
         processor.addNotRetryableExceptions(
                 org.springframework.kafka.support.serializer.DeserializationException.class,
                 org.springframework.messaging.converter.MessageConversionException.class,
@@ -151,6 +140,7 @@ public class KafkaConfig {
     }
 
     private void addExceptionClassifications(DefaultErrorHandler errorHandler) {
+        errorHandler.setBackOffFunction(KafkaConfig::backOffFor);
         errorHandler.addNotRetryableExceptions(
                 org.springframework.kafka.support.serializer.DeserializationException.class,
                 org.springframework.messaging.converter.MessageConversionException.class,
@@ -170,14 +160,72 @@ public class KafkaConfig {
     @Bean
     ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> kafkaListenerContainerFactory(
             ConsumerFactory<String, IncomingMessage> consumerFactory,
-            ProducerFactory<String, Object> producerFactory) {
+            ProducerFactory<String, Object> producerFactory,
+            ConsumerRecordRecoverer incomingRecordRecoverer,
+            BackOff incomingBackOff) {
         log.info("Creating KafkaListenerContainerFactory bean");
         ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
+        configureErrorHandling(factory, producerFactory, incomingRecordRecoverer, incomingBackOff);
+        factory.setAutoStartup(true);
+        return factory;
+    }
+
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> batchKafkaListenerContainerFactory(
+            ConsumerFactory<String, IncomingMessage> consumerFactory,
+            ProducerFactory<String, Object> producerFactory,
+            ConsumerRecordRecoverer incomingRecordRecoverer,
+            BackOff incomingBackOff,
+            KafkaProcessingConfig processingConfig) {
+        log.info("Creating batch KafkaListenerContainerFactory bean");
+        ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setKafkaConsumerProperties(
+                maxPollRecords(Math.max(1, processingConfig.getBatchMaxPollRecords())));
+        // Сбой записи листенер nack'ает по её индексу; обработчики ниже видят только сбой батча целиком
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        configureErrorHandling(factory, producerFactory, incomingRecordRecoverer, incomingBackOff);
+        factory.setAutoStartup(true);
+        return factory;
+    }
+
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> parallelKafkaListenerContainerFactory(
+            ConsumerFactory<String, IncomingMessage> consumerFactory,
+            ConsumerRecordRecoverer incomingRecordRecoverer,
+            BackOff incomingBackOff,
+            KafkaProcessingConfig processingConfig) {
+        log.info("Creating parallel KafkaListenerContainerFactory bean");
+        ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        if (processingConfig.isParallel()) {
+            int pollRecords = processingConfig.parallelPollRecords(consumerConcurrency);
+            factory.getContainerProperties().setKafkaConsumerProperties(maxPollRecords(pollRecords));
+            log.info("Parallel consumers poll up to {} records each, {} consumers", pollRecords, consumerConcurrency);
+        }
+        // Обработка переживает вызов листенера, поэтому без транзакции контейнера: публикаторы открывают свои
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        var errorHandler = new DefaultErrorHandler(incomingRecordRecoverer, incomingBackOff);
+        addExceptionClassifications(errorHandler);
+        factory.setCommonErrorHandler(errorHandler);
+        factory.setAutoStartup(true);
+        return factory;
+    }
 
-        var backOff = new FixedBackOff(2000L, 3);
-        var recoverer = createRecoverer(errorService);
+    // Перекрывает общий spring.kafka.consumer.max-poll-records только для консьюмеров этой фабрики
+    private static Properties maxPollRecords(int records) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(records));
+        return properties;
+    }
 
+    private void configureErrorHandling(ConcurrentKafkaListenerContainerFactory<String, IncomingMessage> factory,
+                                        ProducerFactory<String, Object> producerFactory,
+                                        ConsumerRecordRecoverer recoverer,
+                                        BackOff backOff) {
         if (producerFactory.transactionCapable()) {
             log.info("Transactions enabled — using KafkaTransactionManager + AfterRollbackProcessor");
             factory.getContainerProperties().setKafkaAwareTransactionManager(
@@ -191,9 +239,6 @@ public class KafkaConfig {
             addExceptionClassifications(errorHandler);
             factory.setCommonErrorHandler(errorHandler);
         }
-
-        factory.setAutoStartup(true);
-        return factory;
     }
 
     private Map<String, Object> baseProducerConfig() {
@@ -0,0 +1,113 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Configuration
+@ConfigurationProperties(prefix = "spring.kafka.processing")
+@Data
+public class KafkaProcessingConfig {
+    private Mode mode = Mode.SINGLE;
+    // batch: отправки проверяются все вместе перед коммитом оффсетов
+    private boolean pipelinedSends = true;
+    private Duration sendTimeout = Duration.ofSeconds(5);
+    // batch: записей в одном батче
+    private int batchMaxPollRecords = 20;
+    // parallel: записей в работе во всех полосах инстанса
+    private int maxInFlight = 64;
+    // parallel: max.poll.records параллельных консьюмеров, 0 - max-in-flight / concurrency
+    private int parallelMaxPollRecords = 0;
+    // parallel: побеждает первая подходящая полоса, остальные записи идут в "default"
+    private List<Lane> lanes = new ArrayList<>();
+    // parallel: max-in-flight подстраивается под лаг, задержку и ошибки AI
+    private Autoscaling autoscaling = new Autoscaling();
+    // все режимы: партиции встают на паузу, пока AI, буфер продюсера или пул БД заполнены
+    private Backpressure backpressure = new Backpressure();
+
+    public boolean isSingle() {
+        return mode == Mode.SINGLE;
+    }
+
+    public boolean isBatch() {
+        return mode == Mode.BATCH;
+    }
+
+    public boolean isParallel() {
+        return mode == Mode.PARALLEL;
+    }
+
+    // С asyncAcks в работе не больше max.poll.records x concurrency записей
+    public int parallelPollRecords(int concurrency) {
+        int consumers = Math.max(1, concurrency);
+        int needed = Math.ceilDiv(Math.max(1, maxInFlight), consumers);
+        if (parallelMaxPollRecords <= 0) {
+            int target = autoscaling.isEnabled() ? Math.max(maxInFlight, autoscaling.getMaxInFlight()) : maxInFlight;
+            return Math.ceilDiv(Math.max(1, target), consumers);
+        }
+        if (parallelMaxPollRecords < needed) {
+            throw new IllegalStateException("spring.kafka.processing.parallel-max-poll-records="
+                    + parallelMaxPollRecords + " caps in-flight records below max-in-flight=" + maxInFlight
+                    + " with " + concurrency + " consumers, at least " + needed + " is required");
+        }
+        return parallelMaxPollRecords;
+    }
+
+    @Data
+    public static class Lane {
+        private String name;
+        // пусто - любой type / ref
+        private Set<String> types = new HashSet<>();
+        private Set<String> refs = new HashSet<>();
+        // длина payload в символах, 0 - без границы
+        private int minPayloadChars = 0;
+        private int maxPayloadChars = 0;
+        private int concurrency = 8;
+        private int weight = 1;
+    }
+
+    @Data
+    public static class Autoscaling {
+        private boolean enabled = false;
+        private Duration interval = Duration.ofSeconds(15);
+        private int minInFlight = 8;
+        private int maxInFlight = 128;
+        // лаг консьюмеров плюс очереди полос
+        private long lagHigh = 500;
+        private long lagLow = 50;
+        private Duration latencyCeiling = Duration.ofSeconds(20);
+        private double maxErrorRate = 0.2;
+        // при меньшем числе вызовов за интервал задержке и ошибкам не доверяем
+        private int minSamples = 20;
+        private int stepUp = 8;
+        private int stepDown = 4;
+        private double backoffFactor = 0.75;
+        private Duration cooldown = Duration.ofSeconds(30);
+        private Duration scaleDownCooldown = Duration.ofMinutes(2);
+        private int history = 50;
+    }
+
+    @Data
+    public static class Backpressure {
+        private boolean enabled = true;
+        // загрузка (0..1) самого заполненного ресурса
+        private double pauseAt = 0.95;
+        private double resumeAt = 0.75;
+        private int aiMaxInFlight = 128;
+        private Duration checkInterval = Duration.ofMillis(200);
+        // должно быть заметно меньше max.poll.interval.ms
+        private Duration maxWait = Duration.ofSeconds(30);
+    }
+
+    public enum Mode {
+        SINGLE,
+        BATCH,
+        PARALLEL
+    }
+}
@@ -0,0 +1,35 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.preprocessing")
+@Data
+public class PayloadPreprocessingConfig {
+    private boolean enabled = true;
+    // грубая оценка для бюджета и метрик, пока нет токенизатора
+    private int charsPerToken = 4;
+    private Profile defaults = new Profile();
+    // переопределение по ref целиком заменяет defaults
+    private Map<String, Profile> refs = new HashMap<>();
+
+    public Profile profileFor(String ref) {
+        return refs.getOrDefault(ref, defaults);
+    }
+
+    @Data
+    public static class Profile {
+        // normalize | strip-markup | dedupe | truncate, выполняются по порядку.
+        // По умолчанию пусто: шаги меняют то, что видит модель, и ключи кэша, поэтому ref включают их явно
+        private List<String> steps = new ArrayList<>();
+        // бюджет для truncate, 0 - без ограничения
+        private int maxTokens = 0;
+    }
+}
@@ -0,0 +1,17 @@
+package org.pulitko.aiprocessingservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai.metrics")
+@Data
+public class PipelineMetricsConfig {
+    // метры этих ref регистрируются при старте, остальные - при первой записи
+    private Set<String> refs = Set.of();
+    // сверх лимита ref попадают в тег "other", чтобы не раздувать число рядов в Prometheus
+    private int maxRefs = 50;
+}
@@ -0,0 +1,7 @@
+package org.pulitko.aiprocessingservice.exception;
+
+public class AiCallNotPermittedException extends RuntimeException {
+    public AiCallNotPermittedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package org.pulitko.aiprocessingservice.exception;
+
+// Клиентский rate limiter не нашёл ёмкости за max-wait, запрос к провайдеру не отправлялся
+public class AiRateLimitExceededException extends AiRetryableException {
+    public AiRateLimitExceededException(String message) {
+        super(message, null);
+    }
+}
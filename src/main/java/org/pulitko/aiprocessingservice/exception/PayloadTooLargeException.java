@@ -0,0 +1,17 @@
+package org.pulitko.aiprocessingservice.exception;
+
+public class PayloadTooLargeException extends BaseBusinessException {
+    private final String ref;
+    private static final String key = "PAYLOAD_TOO_LARGE";
+    private static final int ERROR_CODE = 413;
+
+    public PayloadTooLargeException(String ref, int promptTokens, int limit) {
+        super("Prompt for ref " + ref + " needs ~" + promptTokens + " tokens, limit is " + limit, ERROR_CODE);
+        this.ref = ref;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+}
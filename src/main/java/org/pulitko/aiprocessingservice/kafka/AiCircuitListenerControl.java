@@ -0,0 +1,40 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.ai.resilience.AiCircuitBreaker;
+import org.pulitko.aiprocessingservice.ai.resilience.AiCircuitStateChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+// Пока AI circuit breaker открыт, входящие листенеры стоят на паузе вместо блокирующих ретраев
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AiCircuitListenerControl {
+    static final Set<String> INCOMING_LISTENERS = Set.of(KafkaIncomingHandler.SINGLE_LISTENER_ID,
+            KafkaIncomingHandler.BATCH_LISTENER_ID, KafkaIncomingHandler.PARALLEL_LISTENER_ID);
+
+    private final KafkaListenerEndpointRegistry registry;
+
+    @EventListener
+    public void onCircuitStateChanged(AiCircuitStateChangedEvent event) {
+        for (String id : INCOMING_LISTENERS) {
+            MessageListenerContainer container = registry.getListenerContainer(id);
+            if (container == null || !container.isRunning()) {
+                continue;
+            }
+            if (event.to() == AiCircuitBreaker.State.OPEN && !container.isPauseRequested()) {
+                log.warn("AI circuit open, pausing listener {}", id);
+                container.pause();
+            } else if (event.to() != AiCircuitBreaker.State.OPEN && container.isPauseRequested()) {
+                log.info("AI circuit {}, resuming listener {}", event.to(), id);
+                container.resume();
+            }
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package org.pulitko.aiprocessingservice.kafka;
 
 import lombok.RequiredArgsConstructor;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
 import org.pulitko.aiprocessingservice.config.KafkaTopicsConfig;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.header.internals.RecordHeader;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
-import org.springframework.context.annotation.Bean;
-import org.springframework.kafka.config.TopicBuilder;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -21,7 +28,25 @@ public class DlqPublisher {
 
     private final KafkaTemplate<String, Object> kafkaTemplate;
 
+    private final KafkaProcessingConfig processingConfig;
+
+    private final PipelineMetrics pipelineMetrics;
+
     public void publish(IncomingMessage message, String sourceId, String reason) {
+        try {
+            publishAsync(message, sourceId, reason)
+                    .get(processingConfig.getSendTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Sent event id:{}", sourceId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Thread interrupted while sending to DLQ", e);
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("Technical error sending to DLQ", e);
+            throw new KafkaException("Failed to publish message to DLQ", e);
+        }
+    }
+
+    public CompletableFuture<SendResult<String, Object>> publishAsync(IncomingMessage message, String sourceId, String reason) {
         ProducerRecord<String, Object> record = new ProducerRecord<>(
                 topicsConfig.getProcessingDlq(), message
         );
@@ -29,9 +54,9 @@ public class DlqPublisher {
         record.headers().add(new RecordHeader("x-sourceId", sourceId.getBytes()));
         record.headers().add(new RecordHeader("x-reason", reason.getBytes()));
 
-        kafkaTemplate.send(record);
-        log.info("Sent event id:{}", sourceId);
+        return pipelineMetrics.timeAsync(Stage.DLQ_PUBLISH, message == null ? null : message.ref(),
+                () -> kafkaTemplate.isTransactional() && !kafkaTemplate.inTransaction()
+                        ? kafkaTemplate.executeInTransaction(t -> t.send(record))
+                        : kafkaTemplate.send(record));
     }
-
-
-}
\ No newline at end of file
+}
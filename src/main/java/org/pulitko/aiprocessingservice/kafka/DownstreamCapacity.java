@@ -0,0 +1,125 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Потоки, ждущие буфер продюсера или соединение из пула, считаются полной загрузкой
+@Component
+public class DownstreamCapacity {
+    static final String AI_IN_FLIGHT = "ai_in_flight";
+    static final String PRODUCER_BUFFER = "producer_buffer";
+    static final String DB_POOL = "db_pool";
+    private static final List<String> RESOURCES = List.of(AI_IN_FLIGHT, PRODUCER_BUFFER, DB_POOL);
+
+    private final PipelineMetrics pipelineMetrics;
+    private final KafkaProcessingConfig.Backpressure config;
+    private final ObjectProvider<DataSource> dataSource;
+    // соединение под LISTEN ai_prompt_changed занято постоянно
+    private final int reservedConnections;
+    private final Map<String, Producer<String, Object>> producers = new ConcurrentHashMap<>();
+
+    public DownstreamCapacity(PipelineMetrics pipelineMetrics, KafkaProcessingConfig processingConfig,
+                              ProducerFactory<String, Object> producerFactory,
+                              ObjectProvider<DataSource> dataSource, MeterRegistry meterRegistry,
+                              @Value("${ai.prompts.notify.enabled:true}") boolean promptNotify) {
+        this.pipelineMetrics = pipelineMetrics;
+        this.config = processingConfig.getBackpressure();
+        this.dataSource = dataSource;
+        this.reservedConnections = promptNotify ? 1 : 0;
+        // продюсеры создаются фабрикой лениво (и по одному на транзакцию), поэтому собираем их слушателем
+        producerFactory.addListener(new ProducerFactory.Listener<>() {
+            @Override
+            public void producerAdded(String id, Producer<String, Object> producer) {
+                producers.put(id, producer);
+            }
+
+            @Override
+            public void producerRemoved(String id, Producer<String, Object> producer) {
+                producers.remove(id, producer);
+            }
+        });
+        for (String resource : RESOURCES) {
+            Gauge.builder("ai.backpressure.utilization", this, c -> c.utilization(resource))
+                    .tag("resource", resource)
+                    .register(meterRegistry);
+        }
+    }
+
+    // null - запас есть везде
+    public String saturated(double threshold) {
+        for (String resource : RESOURCES) {
+            if (utilization(resource) >= threshold) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    public double utilization(String resource) {
+        return switch (resource) {
+            case AI_IN_FLIGHT -> (double) pipelineMetrics.inFlight(Stage.AI_CALL) / Math.max(1, config.getAiMaxInFlight());
+            case PRODUCER_BUFFER -> producerBuffer();
+            case DB_POOL -> dbPool();
+            default -> 0;
+        };
+    }
+
+    private double producerBuffer() {
+        double max = 0;
+        for (Producer<String, Object> producer : producers.values()) {
+            double available = 0;
+            double total = 0;
+            for (Map.Entry<MetricName, ? extends Metric> metric : producer.metrics().entrySet()) {
+                if (!(metric.getValue().metricValue() instanceof Double value)) {
+                    continue;
+                }
+                switch (metric.getKey().name()) {
+                    case "waiting-threads" -> {
+                        if (value > 0) {
+                            return 1;
+                        }
+                    }
+                    case "buffer-available-bytes" -> available = value;
+                    case "buffer-total-bytes" -> total = value;
+                    default -> { }
+                }
+            }
+            if (total > 0) {
+                max = Math.max(max, 1 - available / total);
+            }
+        }
+        return max;
+    }
+
+    private double dbPool() {
+        if (!(dataSource.getIfAvailable() instanceof HikariDataSource hikari)) {
+            return 0;
+        }
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        if (pool == null) {
+            return 0;
+        }
+        if (pool.getThreadsAwaitingConnection() > 0) {
+            return 1;
+        }
+        int active = Math.max(0, pool.getActiveConnections() - reservedConnections);
+        return (double) active / Math.max(1, hikari.getMaximumPoolSize() - reservedConnections);
+    }
+}
@@ -0,0 +1,70 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+// Разбор входящих записей: десериализатор консьюмера и исходные байты для таблицы ошибок
+public final class IncomingRecords {
+
+    private IncomingRecords() {
+    }
+
+    public static JsonDeserializer<IncomingMessage> deserializer() {
+        JsonDeserializer<IncomingMessage> jsonDeserializer = new JsonDeserializer<>(IncomingMessage.class);
+        jsonDeserializer.addTrustedPackages("org.pulitko.aiprocessingservice.dto", "org.pulitko.aiprocessingservice.model");
+        jsonDeserializer.setRemoveTypeHeaders(false);
+        return jsonDeserializer;
+    }
+
+    public static String rawPayload(ConsumerRecord<?, ?> record, Exception ex) {
+        String rawPayload = null;
+
+        if (ex instanceof ListenerExecutionFailedException) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof DeserializationException dex) {
+                if (dex.getData() != null) {
+                    rawPayload = new String(dex.getData(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        if (rawPayload == null) {
+            for (Header header : record.headers()) {
+                if (header.key().contains("DeserializationException")) {
+                    byte[] data = header.value();
+                    if (data == null) continue;
+
+                    if (data.length > 2 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED) {
+                        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                            Object obj = ois.readObject();
+                            if (obj instanceof DeserializationException dex) {
+                                rawPayload = new String(dex.getData(), StandardCharsets.UTF_8);
+                            } else if (obj instanceof byte[] bytes) {
+                                rawPayload = new String(bytes, StandardCharsets.UTF_8);
+                            }
+                        } catch (Exception e) {
+                            rawPayload = "Hex Dump: " + HexFormat.of().formatHex(data);
+                        }
+                    } else {
+                        rawPayload = new String(data, StandardCharsets.UTF_8);
+                    }
+                }
+            }
+        }
+
+        if (rawPayload == null && record.value() != null) {
+            rawPayload = record.value().toString();
+        }
+
+        return (rawPayload != null) ? rawPayload : "Could not extract data";
+    }
+}
@@ -1,30 +1,75 @@
 package org.pulitko.aiprocessingservice.kafka;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
 import org.pulitko.aiprocessingservice.dto.OutgoingMessage;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
 import org.pulitko.aiprocessingservice.exception.BaseBusinessException;
 import org.pulitko.aiprocessingservice.exception.MissingHeaderException;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Outcome;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
+import org.pulitko.aiprocessingservice.service.AiBatchService;
 import org.pulitko.aiprocessingservice.service.AiProcessingService;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.log.LogAccessor;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class KafkaIncomingHandler {
+    static final String SINGLE_LISTENER_ID = "incomingListener";
+    static final String BATCH_LISTENER_ID = "incomingBatchListener";
+    static final String PARALLEL_LISTENER_ID = "incomingParallelListener";
+    private static final String SOURCE_ID_HEADER = "x-sourceId";
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(KafkaIncomingHandler.class);
+    private static final long NOT_PERMITTED_DELAY_MS = 1000L;
+
     private final AiProcessingService aiProcessingService;
     private final KafkaOutgoingPublisher kafkaOutgoingPublisher;
     private final DlqPublisher dlqPublisher;
+    private final ConsumerRecordRecoverer incomingRecordRecoverer;
+    private final BackOff incomingBackOff;
+    private final KeyOrderedDispatcher keyOrderedDispatcher;
+    private final KafkaProcessingConfig processingConfig;
+    private final AiBatchService aiBatchService;
+    private final PriorityLaneScheduler laneScheduler;
+    private final PipelineMetrics pipelineMetrics;
+    private final PartitionBackpressure backpressure;
+
+    private final Cache<String, BackOffExecution> batchRetries = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
 
     @Value("${spring.kafka.topics.incoming}")
     String topic;
@@ -36,15 +81,20 @@ public class KafkaIncomingHandler {
     }
 
     @KafkaListener(
+            id = SINGLE_LISTENER_ID,
             topics = "${spring.kafka.topics.incoming}",
             groupId = "${spring.kafka.groups-id.consumer}",
             containerFactory = "kafkaListenerContainerFactory",
-            concurrency = "${spring.kafka.consumer.concurrency}")
+            concurrency = "${spring.kafka.consumer.concurrency}",
+            autoStartup = "#{@kafkaProcessingConfig.single}")
     public void handle(@Payload IncomingMessage message,
-                       @Header(name = "x-sourceId", required = false) String sourceId) {
+                       @Header(name = SOURCE_ID_HEADER, required = false) String sourceId,
+                       @Header(name = KafkaHeaders.RECEIVED_TIMESTAMP, required = false) Long timestamp,
+                       @Header(KafkaHeaders.RECEIVED_TOPIC) String receivedTopic,
+                       @Header(KafkaHeaders.RECEIVED_PARTITION) int partition) {
 
         if (sourceId == null || sourceId.isBlank()) {
-            throw new MissingHeaderException("x-sourceId");
+            throw new MissingHeaderException(SOURCE_ID_HEADER);
         }
 
         if (message == null || message.payload().isBlank()) {
@@ -53,26 +103,270 @@ public class KafkaIncomingHandler {
         }
         log.info("Received event id:{}, ref: {}", sourceId, message.ref());
 
+        if (aiBatchService.accepts(message.ref())) {
+            aiBatchService.enqueue(message, sourceId);
+            return;
+        }
+
+        backpressure.admit(SINGLE_LISTENER_ID, receivedTopic, partition);
+        long deadline = backpressure.waitDeadline();
+        while (true) {
+            try {
+                processAndPublish(message, sourceId, timestamp);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Перегрузка: партиция на паузе, запись повторяется на месте без отката оффсета и ребаланса,
+                // но не дольше max-wait на все повторы вместе
+                if (!backpressure.awaitCapacity(SINGLE_LISTENER_ID, receivedTopic, partition, deadline)) {
+                    log.error("The system is overloaded and cannot process it now: {}", sourceId);
+                    throw e;
+                }
+                log.info("Capacity freed, retrying event id:{}", sourceId);
+            }
+        }
+    }
+
+    private void processAndPublish(IncomingMessage message, String sourceId, Long timestamp) {
         try {
-            JsonNode processedResult = aiProcessingService.process(message);
-            OutgoingMessage outgoingMessage = OutgoingMessage.builder()
-                    .withRef(message.ref())
-                    .withSourceId(sourceId)
-                    .withAiResult(processedResult)
-                    .build();
-            kafkaOutgoingPublisher.send(outgoingMessage);
+            JsonNode processedResult = pipelineMetrics.time(Stage.PROCESS, message.ref(),
+                    () -> aiProcessingService.process(message));
+            kafkaOutgoingPublisher.send(toOutgoing(message, sourceId, processedResult));
+            pipelineMetrics.endToEnd(message.ref(), Outcome.PUBLISHED, timestamp == null ? -1 : timestamp);
         } catch (BaseBusinessException e) {
             if (e.getSourceId() == null) {
                 e.withSourceId(sourceId);
             }
             log.warn("Business logic error, sourceId={}", sourceId, e);
             dlqPublisher.publish(message, sourceId, e.getMessage());
+            pipelineMetrics.endToEnd(message.ref(), Outcome.DLQ, timestamp == null ? -1 : timestamp);
+        } catch (AiCallNotPermittedException | AiRateLimitExceededException e) {
+            log.warn("AI call not permitted, will redeliver sourceId={}: {}", sourceId, e.getMessage());
+            throw e;
         } catch (RejectedExecutionException e) {
-            log.error("The system is overloaded and cannot process it now: {}", sourceId);
             throw e;
         } catch (Exception e) {
             log.error("CRITICAL: Unexpected error during AI processing for sourceId={}", sourceId, e);
             throw e;
         }
     }
+
+    @KafkaListener(
+            id = BATCH_LISTENER_ID,
+            topics = "${spring.kafka.topics.incoming}",
+            groupId = "${spring.kafka.groups-id.consumer}",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            concurrency = "${spring.kafka.consumer.concurrency}",
+            autoStartup = "#{@kafkaProcessingConfig.batch}")
+    public void handleBatch(List<ConsumerRecord<String, IncomingMessage>> records, Acknowledgment ack) {
+        log.info("Received batch of {} events", records.size());
+        backpressure.admit(BATCH_LISTENER_ID, records.stream()
+                .map(record -> new TopicPartition(record.topic(), record.partition()))
+                .distinct()
+                .toList());
+
+        List<CompletableFuture<ProcessingOutcome>> outcomes = records.stream()
+                .map(record -> processRecord(record).toFuture())
+                .toList();
+        // Отправки подтверждаются пачкой перед ack/nack, иначе закоммитим оффсет неотправленной записи
+        PendingSends pending = processingConfig.isPipelinedSends() ? new PendingSends() : null;
+
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, IncomingMessage> record = records.get(i);
+            ProcessingOutcome outcome = outcomes.get(i).join();
+
+            if (isNotPermitted(outcome)) {
+                log.warn("AI call not permitted, redelivering batch from index {} ({}-{}@{})",
+                        i, record.topic(), record.partition(), record.offset());
+                flush(pending);
+                ack.nack(i, Duration.ofMillis(NOT_PERMITTED_DELAY_MS));
+                return;
+            }
+            if (outcome.status() == ProcessingOutcome.Status.RETRY) {
+                BackOffExecution execution = batchRetries.get(retryKey(record), k -> incomingBackOff.start());
+                long interval = execution.nextBackOff();
+                if (interval != BackOffExecution.STOP) {
+                    log.warn("Retrying batch from index {} ({}-{}@{}) in {} ms",
+                            i, record.topic(), record.partition(), record.offset(), interval);
+                    flush(pending);
+                    ack.nack(i, Duration.ofMillis(interval));
+                    return;
+                }
+                log.error("Retries exhausted for {}-{}@{}", record.topic(), record.partition(), record.offset());
+                outcome = ProcessingOutcome.failed(outcome.error());
+            }
+            batchRetries.invalidate(retryKey(record));
+            complete(record, outcome, pending);
+        }
+        flush(pending);
+        ack.acknowledge();
+    }
+
+    @KafkaListener(
+            id = PARALLEL_LISTENER_ID,
+            topics = "${spring.kafka.topics.incoming}",
+            groupId = "${spring.kafka.groups-id.consumer}",
+            containerFactory = "parallelKafkaListenerContainerFactory",
+            concurrency = "${spring.kafka.consumer.concurrency}",
+            autoStartup = "#{@kafkaProcessingConfig.parallel}")
+    public void handleParallel(ConsumerRecord<String, IncomingMessage> record, Acknowledgment ack) {
+        backpressure.admit(PARALLEL_LISTENER_ID, record.topic(), record.partition());
+        keyOrderedDispatcher.dispatch(orderingKey(record), laneScheduler.laneFor(record.value()), () -> {
+            if (processWithRetries(record)) {
+                ack.acknowledge();
+            }
+        });
+    }
+
+    private boolean processWithRetries(ConsumerRecord<String, IncomingMessage> record) {
+        BackOffExecution execution = incomingBackOff.start();
+        while (true) {
+            ProcessingOutcome outcome = processRecord(record).block();
+            if (outcome.status() != ProcessingOutcome.Status.RETRY) {
+                try {
+                    complete(record, outcome, null);
+                    return true;
+                } catch (Exception e) {
+                    outcome = ProcessingOutcome.retry(e);
+                }
+            }
+            // Отказ breaker'а/bulkhead'а/лимитера ждём без расхода попыток
+            long interval = isNotPermitted(outcome) ? NOT_PERMITTED_DELAY_MS : execution.nextBackOff();
+            if (interval == BackOffExecution.STOP) {
+                log.error("Retries exhausted for {}-{}@{}", record.topic(), record.partition(), record.offset());
+                incomingRecordRecoverer.accept(record, outcome.error());
+                return true;
+            }
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while retrying {}-{}@{}, leaving it uncommitted",
+                        record.topic(), record.partition(), record.offset());
+                return false;
+            }
+        }
+    }
+
+    private Mono<ProcessingOutcome> processRecord(ConsumerRecord<String, IncomingMessage> record) {
+        DeserializationException deserializationError = SerializationUtils.getExceptionFromHeader(
+                record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        if (deserializationError != null) {
+            return Mono.just(ProcessingOutcome.failed(deserializationError));
+        }
+
+        String sourceId = sourceIdOf(record);
+        if (sourceId == null || sourceId.isBlank()) {
+            return Mono.just(ProcessingOutcome.failed(new MissingHeaderException(SOURCE_ID_HEADER)));
+        }
+
+        IncomingMessage message = record.value();
+        if (message == null || message.payload() == null || message.payload().isBlank()) {
+            return Mono.just(ProcessingOutcome.skipped());
+        }
+        log.info("Received event id:{}, ref: {}", sourceId, message.ref());
+
+        if (aiBatchService.accepts(message.ref())) {
+            return Mono.fromCallable(() -> {
+                        aiBatchService.enqueue(message, sourceId);
+                        return ProcessingOutcome.deferred();
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .onErrorResume(Exception.class, e -> Mono.just(ProcessingOutcome.retry(e)));
+        }
+
+        return pipelineMetrics.timeMono(Stage.PROCESS, message.ref(), aiProcessingService.processAsync(message))
+                .map(ProcessingOutcome::success)
+                .onErrorResume(Exception.class, e -> Mono.just(classify(e, sourceId)));
+    }
+
+    private void flush(PendingSends pending) {
+        if (pending != null) {
+            kafkaOutgoingPublisher.flush(pending);
+        }
+    }
+
+    private static boolean isNotPermitted(ProcessingOutcome outcome) {
+        return outcome.status() == ProcessingOutcome.Status.RETRY
+                && (outcome.error() instanceof AiCallNotPermittedException
+                || outcome.error() instanceof AiRateLimitExceededException);
+    }
+
+    private ProcessingOutcome classify(Exception e, String sourceId) {
+        if (e instanceof BaseBusinessException businessException) {
+            if (businessException.getSourceId() == null) {
+                businessException.withSourceId(sourceId);
+            }
+            return ProcessingOutcome.dlq(businessException);
+        }
+        return ProcessingOutcome.retry(e);
+    }
+
+    // pending == null - отправка подтверждается сразу
+    private void complete(ConsumerRecord<String, IncomingMessage> record, ProcessingOutcome outcome,
+                          PendingSends pending) {
+        IncomingMessage message = record.value();
+        String sourceId = sourceIdOf(record);
+        switch (outcome.status()) {
+            case SUCCESS -> {
+                OutgoingMessage outgoing = toOutgoing(message, sourceId, outcome.result());
+                if (pending == null) {
+                    kafkaOutgoingPublisher.send(outgoing);
+                    pipelineMetrics.endToEnd(message.ref(), Outcome.PUBLISHED, record.timestamp());
+                } else {
+                    pending.add(kafkaOutgoingPublisher.sendAsync(outgoing)
+                            .whenComplete(endToEnd(record, Outcome.PUBLISHED)));
+                }
+            }
+            case DLQ -> {
+                log.warn("Business logic error, sourceId={}", sourceId, outcome.error());
+                if (pending == null) {
+                    dlqPublisher.publish(message, sourceId, outcome.error().getMessage());
+                    pipelineMetrics.endToEnd(message.ref(), Outcome.DLQ, record.timestamp());
+                } else {
+                    pending.add(dlqPublisher.publishAsync(message, sourceId, outcome.error().getMessage())
+                            .whenComplete(endToEnd(record, Outcome.DLQ)));
+                }
+            }
+            case FAILED -> incomingRecordRecoverer.accept(record, outcome.error());
+            case SKIPPED -> log.warn("Payload is null or empty, check for errors in headers.");
+            case DEFERRED -> log.debug("Event id:{} deferred to batch processing", sourceId);
+            case RETRY -> throw new IllegalStateException("Retry outcome must be resolved before completion");
+        }
+    }
+
+    // от метки времени входной записи до подтверждённой отправки результата
+    private BiConsumer<Object, Throwable> endToEnd(ConsumerRecord<String, IncomingMessage> record, Outcome outcome) {
+        return (result, error) -> {
+            if (error == null) {
+                pipelineMetrics.endToEnd(record.value().ref(), outcome, record.timestamp());
+            }
+        };
+    }
+
+    private OutgoingMessage toOutgoing(IncomingMessage message, String sourceId, JsonNode processedResult) {
+        return OutgoingMessage.builder()
+                .withRef(message.ref())
+                .withSourceId(sourceId)
+                .withAiResult(processedResult)
+                .build();
+    }
+
+    private static String sourceIdOf(ConsumerRecord<?, ?> record) {
+        var header = record.headers().lastHeader(SOURCE_ID_HEADER);
+        return header == null || header.value() == null
+                ? null
+                : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static String orderingKey(ConsumerRecord<String, ?> record) {
+        if (record.key() != null) {
+            return record.key();
+        }
+        String sourceId = sourceIdOf(record);
+        return sourceId != null ? sourceId : retryKey(record);
+    }
+
+    private static String retryKey(ConsumerRecord<?, ?> record) {
+        return record.topic() + "-" + record.partition() + "@" + record.offset();
+    }
 }
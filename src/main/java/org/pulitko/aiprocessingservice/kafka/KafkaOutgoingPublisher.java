@@ -2,12 +2,18 @@ package org.pulitko.aiprocessingservice.kafka;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
 import org.pulitko.aiprocessingservice.config.KafkaTopicsConfig;
 import org.pulitko.aiprocessingservice.dto.OutgoingMessage;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
 import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -18,14 +24,12 @@ import java.util.concurrent.TimeoutException;
 public class KafkaOutgoingPublisher {
     private final KafkaTopicsConfig topicsConfig;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaProcessingConfig processingConfig;
+    private final PipelineMetrics pipelineMetrics;
 
     public void send(OutgoingMessage message) {
         try {
-            kafkaTemplate.send(
-                            topicsConfig.getOutgoing(),
-                            message.sourceId(),
-                            message)
-                    .get(5, TimeUnit.SECONDS);
+            sendAsync(message).get(processingConfig.getSendTimeout().toMillis(), TimeUnit.MILLISECONDS);
             log.info("Sent event id:{}", message.sourceId());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -35,4 +39,28 @@ public class KafkaOutgoingPublisher {
             throw new KafkaException("Failed to publish message to Kafka", e);
         }
     }
+
+    // Результат нужно подтвердить до коммита оффсетов, см. PendingSends
+    public CompletableFuture<SendResult<String, Object>> sendAsync(OutgoingMessage message) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(
+                topicsConfig.getOutgoing(), message.sourceId(), message);
+        // до подтверждения брокером, вместе с ожиданием в буфере продюсера
+        CompletableFuture<SendResult<String, Object>> future = pipelineMetrics.timeAsync(Stage.PUBLISH, message.ref(),
+                () -> kafkaTemplate.isTransactional() && !kafkaTemplate.inTransaction()
+                        ? kafkaTemplate.executeInTransaction(t -> t.send(record))
+                        : kafkaTemplate.send(record));
+        return future.whenComplete((result, e) -> {
+            if (e == null) {
+                log.debug("Sent event id:{}", message.sourceId());
+            }
+        });
+    }
+
+    public void flush(PendingSends pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        kafkaTemplate.flush();
+        pending.awaitAll(processingConfig.getSendTimeout());
+    }
 }
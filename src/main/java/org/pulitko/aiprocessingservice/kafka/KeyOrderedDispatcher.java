@@ -0,0 +1,48 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Component
+public class KeyOrderedDispatcher {
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ai-keyed-", 0).factory());
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public CompletableFuture<Void> dispatch(String key, Runnable task) {
+        return dispatch(key, executor, task);
+    }
+
+    // Порядок по ключу сохраняется, исполнитель задаёт полосу приоритета
+    public CompletableFuture<Void> dispatch(String key, Executor executor, Runnable task) {
+        CompletableFuture<Void> next = tails.compute(key, (k, tail) -> (tail == null
+                ? CompletableFuture.<Void>completedFuture(null)
+                : tail.exceptionally(e -> null))
+                .thenRunAsync(task, executor));
+        next.whenComplete((r, e) -> {
+            if (e != null) {
+                log.error("Keyed task failed for key {}", key, e);
+            }
+            tails.remove(key, next);
+        });
+        return next;
+    }
+
+    public int activeKeys() {
+        return tails.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+}
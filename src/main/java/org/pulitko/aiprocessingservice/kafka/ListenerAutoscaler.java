@@ -0,0 +1,216 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Меняет только max-in-flight: смена concurrency перезапускает консьюмеры и вызывает ребаланс.
+// Верхняя граница - max.poll.records x concurrency, с backpressure ещё и ai-max-in-flight
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.kafka.processing.autoscaling.enabled", havingValue = "true")
+public class ListenerAutoscaler {
+    static final String LISTENER_ID = KafkaIncomingHandler.PARALLEL_LISTENER_ID;
+    // слоты считаются занятыми, если в работе не меньше этой доли доступных слотов
+    private static final double SATURATION = 0.9;
+
+    private final PriorityLaneScheduler laneScheduler;
+    private final KafkaListenerEndpointRegistry registry;
+    private final MeterRegistry meterRegistry;
+    private final KafkaProcessingConfig processingConfig;
+    private final KafkaProcessingConfig.Autoscaling config;
+    private final int pollCap;
+    private final Deque<Decision> history = new ArrayDeque<>();
+    private final AtomicLong backlog = new AtomicLong();
+    private Totals previous;
+    private Signals lastSignals;
+    private long lastChangeAt;
+
+    public ListenerAutoscaler(PriorityLaneScheduler laneScheduler, KafkaListenerEndpointRegistry registry,
+                              MeterRegistry meterRegistry, KafkaProcessingConfig processingConfig,
+                              @Value("${spring.kafka.consumer.concurrency:1}") int concurrency) {
+        this.laneScheduler = laneScheduler;
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+        this.processingConfig = processingConfig;
+        this.config = processingConfig.getAutoscaling();
+        this.pollCap = processingConfig.parallelPollRecords(concurrency) * Math.max(1, concurrency);
+        laneScheduler.setMaxInFlight(clamp(laneScheduler.maxInFlight()));
+        Gauge.builder("ai.autoscaling.capacity", laneScheduler, PriorityLaneScheduler::maxInFlight)
+                .register(meterRegistry);
+        Gauge.builder("ai.autoscaling.backlog", backlog, AtomicLong::get)
+                .register(meterRegistry);
+        if (!processingConfig.isParallel()) {
+            log.warn("Listener autoscaling is enabled but mode is {}, it only drives the parallel mode",
+                    processingConfig.getMode());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${spring.kafka.processing.autoscaling.interval:PT15S}")
+    public void tick() {
+        if (!processingConfig.isParallel()) {
+            return;
+        }
+        evaluate(sample(), System.currentTimeMillis());
+    }
+
+    // null - лимит не меняется
+    synchronized Decision evaluate(Signals signals, long now) {
+        lastSignals = signals;
+        int current = laneScheduler.maxInFlight();
+        boolean trusted = signals.aiCalls() >= config.getMinSamples();
+        int target = current;
+        String reason = null;
+        if (trusted && signals.errorRate() > config.getMaxErrorRate()) {
+            target = (int) (current * config.getBackoffFactor());
+            reason = "error_rate";
+        } else if (trusted && signals.aiLatencyMs() > config.getLatencyCeiling().toMillis()) {
+            target = (int) (current * config.getBackoffFactor());
+            reason = "latency";
+        } else if (signals.backlog() > config.getLagHigh() && signals.inFlight() > 0
+                && signals.inFlight() >= Math.min(Math.min(current, signals.capacity()), pollCap) * SATURATION) {
+            target = current + config.getStepUp();
+            reason = "lag";
+        } else if (signals.backlog() < config.getLagLow() && signals.inFlight() <= current - config.getStepDown()) {
+            target = current - config.getStepDown();
+            reason = "idle";
+        }
+        target = clamp(target);
+        if (reason == null || target == current) {
+            return null;
+        }
+        long cooldown = ("idle".equals(reason) ? config.getScaleDownCooldown() : config.getCooldown()).toMillis();
+        if (now - lastChangeAt < cooldown) {
+            return null;
+        }
+
+        Decision decision = new Decision(Instant.ofEpochMilli(now), current, target, reason, signals);
+        laneScheduler.setMaxInFlight(target);
+        lastChangeAt = now;
+        history.addFirst(decision);
+        while (history.size() > Math.max(1, config.getHistory())) {
+            history.removeLast();
+        }
+        decisions(target > current ? "up" : "down", reason).increment();
+        log.info("Autoscaling {} max-in-flight {} -> {} ({})", LISTENER_ID, current, target, signals);
+        return decision;
+    }
+
+    synchronized Map<String, Object> state() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("listener", LISTENER_ID);
+        state.put("active", processingConfig.isParallel());
+        state.put("maxInFlight", laneScheduler.maxInFlight());
+        state.put("minInFlight", config.getMinInFlight());
+        state.put("maxInFlightBound", upperBound());
+        state.put("pollCap", pollCap);
+        state.put("inFlight", laneScheduler.inFlight());
+        state.put("lastSignals", lastSignals);
+        state.put("decisions", List.copyOf(history));
+        return state;
+    }
+
+    private Signals sample() {
+        Totals totals = totals();
+        Totals delta = previous == null ? new Totals(0, 0, 0, 0) : totals.minus(previous);
+        previous = totals;
+        long behind = consumerLag() + laneScheduler.queued();
+        backlog.set(behind);
+        long requests = delta.aiSucceeded() + delta.aiFailed();
+        int busy = Math.max(0, laneScheduler.inFlight() - bulkheadWaiting());
+        return new Signals(behind, busy, laneScheduler.usableSlots(), delta.aiCalls(),
+                delta.aiCalls() == 0 ? 0 : delta.aiCallMillis() / delta.aiCalls(),
+                requests == 0 ? 0 : (double) delta.aiFailed() / requests);
+    }
+
+    private Totals totals() {
+        long calls = 0;
+        double millis = 0;
+        for (Timer timer : meterRegistry.find("pipeline.stage.duration").tag("stage", Stage.AI_CALL.tag()).timers()) {
+            calls += timer.count();
+            millis += timer.totalTime(TimeUnit.MILLISECONDS);
+        }
+        return new Totals(calls, millis, requests("success"), requests("error"));
+    }
+
+    // Задачи, ждущие слот bulkhead своего ref: лишние слоты полос им не помогут
+    private int bulkheadWaiting() {
+        return (int) meterRegistry.find("ai.bulkhead.waiting").gauges().stream()
+                .mapToDouble(Gauge::value)
+                .sum();
+    }
+
+    private long requests(String status) {
+        return (long) meterRegistry.find("ai.requests.total").tag("status", status).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    // records-lag по каждой партиции всех консьюмеров контейнера
+    private long consumerLag() {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container == null || !container.isRunning()) {
+            return 0;
+        }
+        double lag = 0;
+        for (Map<MetricName, ? extends Metric> metrics : container.metrics().values()) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
+                if ("records-lag".equals(metric.getKey().name())
+                        && metric.getKey().tags().containsKey("partition")
+                        && metric.getValue().metricValue() instanceof Double value
+                        && !value.isNaN()) {
+                    lag += value;
+                }
+            }
+        }
+        return (long) lag;
+    }
+
+    private Counter decisions(String direction, String reason) {
+        return meterRegistry.counter("ai.autoscaling.decisions", "direction", direction, "reason", reason);
+    }
+
+    private int clamp(int value) {
+        int min = Math.max(1, config.getMinInFlight());
+        return Math.max(min, Math.min(Math.max(min, upperBound()), value));
+    }
+
+    private int upperBound() {
+        KafkaProcessingConfig.Backpressure backpressure = processingConfig.getBackpressure();
+        int bound = Math.min(config.getMaxInFlight(), pollCap);
+        return backpressure.isEnabled() ? Math.min(bound, backpressure.getAiMaxInFlight()) : bound;
+    }
+
+    // capacity - слоты, доступные работе в полосах (usableSlots)
+    record Signals(long backlog, int inFlight, int capacity, long aiCalls, double aiLatencyMs, double errorRate) {}
+
+    record Decision(Instant at, int from, int to, String reason, Signals signals) {}
+
+    private record Totals(long aiCalls, double aiCallMillis, long aiSucceeded, long aiFailed) {
+        Totals minus(Totals other) {
+            return new Totals(aiCalls - other.aiCalls, aiCallMillis - other.aiCallMillis,
+                    aiSucceeded - other.aiSucceeded, aiFailed - other.aiFailed);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// /actuator/autoscaling: текущий лимит, границы, последние сигналы и решения (новые первыми)
+@Component
+@Endpoint(id = "autoscaling")
+@ConditionalOnProperty(name = "spring.kafka.processing.autoscaling.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ListenerAutoscalerEndpoint {
+    private final ListenerAutoscaler autoscaler;
+
+    @ReadOperation
+    public Map<String, Object> autoscaling() {
+        return autoscaler.state();
+    }
+}
@@ -0,0 +1,137 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Консьюмер продолжает poll, так что ребаланса нет, а записи не перечитываются
+@Slf4j
+@Component
+public class PartitionBackpressure {
+    private final KafkaListenerEndpointRegistry registry;
+    private final DownstreamCapacity capacity;
+    private final KafkaProcessingConfig.Backpressure config;
+    private final MeterRegistry meterRegistry;
+    private final Map<Paused, Pause> paused = new ConcurrentHashMap<>();
+
+    public PartitionBackpressure(KafkaListenerEndpointRegistry registry, DownstreamCapacity capacity,
+                                 KafkaProcessingConfig processingConfig, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.capacity = capacity;
+        this.config = processingConfig.getBackpressure();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("ai.backpressure.paused.partitions", paused, Map::size)
+                .register(meterRegistry);
+        Gauge.builder("ai.backpressure.pause.current", this, PartitionBackpressure::longestPauseSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public void admit(String listenerId, String topic, int partition) {
+        admit(listenerId, List.of(new TopicPartition(topic, partition)));
+    }
+
+    // Текущие записи обрабатываются дальше, пауза действует со следующего poll
+    public void admit(String listenerId, Collection<TopicPartition> partitions) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        String resource = capacity.saturated(config.getPauseAt());
+        if (resource != null) {
+            partitions.forEach(partition -> pause(listenerId, partition, resource));
+        }
+    }
+
+    // Общий срок ожидания для всех повторов одной записи
+    public long waitDeadline() {
+        return System.nanoTime() + config.getMaxWait().toNanos();
+    }
+
+    // false - отказ не объясняется ни одним ресурсом или срок вышел: запись уходит в back-off контейнера
+    public boolean awaitCapacity(String listenerId, String topic, int partition, long deadline) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        String resource = capacity.saturated(config.getResumeAt());
+        if (resource == null) {
+            return false;
+        }
+        pause(listenerId, new TopicPartition(topic, partition), resource);
+        long interval = Math.max(1, config.getCheckInterval().toMillis());
+        do {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        } while (capacity.saturated(config.getResumeAt()) != null);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${spring.kafka.processing.backpressure.check-interval:PT0.2S}")
+    public void resumeIfFree() {
+        if (paused.isEmpty() || capacity.saturated(config.getResumeAt()) != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        paused.forEach((key, pause) -> {
+            if (!paused.remove(key, pause)) {
+                return;
+            }
+            MessageListenerContainer container = registry.getListenerContainer(key.listenerId());
+            if (container != null) {
+                container.resumePartition(key.partition());
+            }
+            long duration = now - pause.since();
+            meterRegistry.timer("ai.backpressure.pause.duration", "resource", pause.resource())
+                    .record(duration, TimeUnit.NANOSECONDS);
+            log.info("Capacity freed, resuming {} on {} after {} ms",
+                    key.partition(), key.listenerId(), TimeUnit.NANOSECONDS.toMillis(duration));
+        });
+    }
+
+    public int pausedPartitions() {
+        return paused.size();
+    }
+
+    private void pause(String listenerId, TopicPartition partition, String resource) {
+        MessageListenerContainer container = registry.getListenerContainer(listenerId);
+        if (container == null) {
+            return;
+        }
+        Paused key = new Paused(listenerId, partition);
+        if (paused.putIfAbsent(key, new Pause(System.nanoTime(), resource)) == null) {
+            container.pausePartition(partition);
+            meterRegistry.counter("ai.backpressure.pauses", "resource", resource).increment();
+            log.warn("{} is saturated, pausing {} on {}", resource, partition, listenerId);
+        }
+    }
+
+    private double longestPauseSeconds() {
+        long now = System.nanoTime();
+        return paused.values().stream()
+                .mapToLong(pause -> now - pause.since())
+                .max()
+                .orElse(0) / 1e9;
+    }
+
+    private record Paused(String listenerId, TopicPartition partition) {}
+
+    private record Pause(long since, String resource) {}
+}
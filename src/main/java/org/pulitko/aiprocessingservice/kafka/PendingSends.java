@@ -0,0 +1,49 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.KafkaException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Отправки, которые нужно подтвердить до коммита оффсетов
+@Slf4j
+public class PendingSends {
+    private final List<CompletableFuture<?>> futures = new ArrayList<>();
+
+    public void add(CompletableFuture<?> future) {
+        futures.add(future);
+    }
+
+    public boolean isEmpty() {
+        return futures.isEmpty();
+    }
+
+    public int size() {
+        return futures.size();
+    }
+
+    public void awaitAll(Duration timeout) {
+        if (futures.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            log.debug("Confirmed {} pipelined sends", futures.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Thread interrupted while waiting for Kafka sends", e);
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("Technical error confirming {} pipelined sends", futures.size(), e);
+            throw new KafkaException("Failed to publish messages to Kafka", e);
+        } finally {
+            futures.clear();
+        }
+    }
+}
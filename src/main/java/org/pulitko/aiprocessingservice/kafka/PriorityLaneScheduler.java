@@ -0,0 +1,258 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// При смене max-in-flight квоты полос меняются пропорционально
+@Slf4j
+@Component
+public class PriorityLaneScheduler {
+    static final String DEFAULT_LANE = "default";
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Lane defaultLane;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int configuredMaxInFlight;
+    private int maxInFlight;
+    private int inFlight;
+
+    public PriorityLaneScheduler(KafkaProcessingConfig processingConfig, MeterRegistry meterRegistry) {
+        this.configuredMaxInFlight = Math.max(1, processingConfig.getMaxInFlight());
+        this.maxInFlight = configuredMaxInFlight;
+        Lane fallback = null;
+        for (KafkaProcessingConfig.Lane spec : processingConfig.getLanes()) {
+            Lane lane = new Lane(spec, meterRegistry);
+            lanes.add(lane);
+            if (DEFAULT_LANE.equals(spec.getName())) {
+                fallback = lane;
+            }
+        }
+        if (fallback == null) {
+            KafkaProcessingConfig.Lane spec = new KafkaProcessingConfig.Lane();
+            spec.setName(DEFAULT_LANE);
+            spec.setConcurrency(maxInFlight);
+            fallback = new Lane(spec, meterRegistry);
+            lanes.add(fallback);
+        }
+        this.defaultLane = fallback;
+        log.info("Priority lanes: {}", lanes.stream().map(Lane::name).toList());
+    }
+
+    public Executor laneFor(IncomingMessage message) {
+        if (message == null) {
+            return defaultLane;
+        }
+        for (Lane lane : lanes) {
+            if (lane != defaultLane && lane.matches(message)) {
+                return lane;
+            }
+        }
+        return defaultLane;
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int maxInFlight() {
+        lock.lock();
+        try {
+            return maxInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // При росте лимита очередь раздаётся сразу, при снижении лишние задачи просто дорабатывают
+    public void setMaxInFlight(int maxInFlight) {
+        lock.lock();
+        try {
+            this.maxInFlight = Math.max(1, maxInFlight);
+            lanes.forEach(Lane::resize);
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    // Слоты, которые может занять текущая работа: квоты полос с задачами, не больше max-in-flight
+    public int usableSlots() {
+        lock.lock();
+        try {
+            int slots = lanes.stream()
+                    .filter(lane -> lane.active > 0 || !lane.queue.isEmpty())
+                    .mapToInt(lane -> lane.concurrency)
+                    .sum();
+            return Math.min(maxInFlight, slots);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return lanes.stream().mapToInt(lane -> lane.queue.size()).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        List<Runnable> ready = new ArrayList<>();
+        lock.lock();
+        try {
+            while (inFlight < maxInFlight) {
+                Lane lane = next();
+                if (lane == null) {
+                    break;
+                }
+                Queued queued = lane.queue.poll();
+                lane.active++;
+                inFlight++;
+                lane.waitTimer.record(System.nanoTime() - queued.enqueuedAt(), TimeUnit.NANOSECONDS);
+                ready.add(() -> lane.executor.execute(() -> {
+                    try {
+                        queued.task().run();
+                    } finally {
+                        release(lane);
+                    }
+                }));
+            }
+        } finally {
+            lock.unlock();
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    // smooth weighted round-robin среди полос с очередью и свободной квотой
+    private Lane next() {
+        Lane best = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes) {
+            if (lane.queue.isEmpty() || lane.active >= lane.concurrency) {
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (best == null || lane.currentWeight > best.currentWeight) {
+                best = lane;
+            }
+        }
+        if (best != null) {
+            best.currentWeight -= totalWeight;
+        }
+        return best;
+    }
+
+    private void release(Lane lane) {
+        lock.lock();
+        try {
+            lane.active--;
+            inFlight--;
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.forEach(lane -> lane.executor.close());
+    }
+
+    private record Queued(Runnable task, long enqueuedAt) {}
+
+    private final class Lane implements Executor {
+        private final KafkaProcessingConfig.Lane spec;
+        private final int weight;
+        private final ExecutorService executor;
+        private final Queue<Queued> queue = new ArrayDeque<>();
+        private final Timer waitTimer;
+        private int concurrency;
+        private int active;
+        private int currentWeight;
+
+        private Lane(KafkaProcessingConfig.Lane spec, MeterRegistry meterRegistry) {
+            this.spec = spec;
+            resize();
+            this.weight = Math.max(1, spec.getWeight());
+            this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("ai-lane-" + spec.getName() + "-", 0).factory());
+            this.waitTimer = meterRegistry.timer("ai.lane.wait", "lane", spec.getName());
+            Gauge.builder("ai.lane.queue.depth", this, Lane::queued)
+                    .tag("lane", spec.getName())
+                    .register(meterRegistry);
+            Gauge.builder("ai.lane.active", this, Lane::running)
+                    .tag("lane", spec.getName())
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            lock.lock();
+            try {
+                queue.add(new Queued(task, System.nanoTime()));
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        // вызывается под lock (или из конструктора)
+        private void resize() {
+            concurrency = Math.max(1, (int) Math.round((double) spec.getConcurrency() * maxInFlight / configuredMaxInFlight));
+        }
+
+        private boolean matches(IncomingMessage message) {
+            int length = message.payload() == null ? 0 : message.payload().length();
+            return (spec.getTypes().isEmpty() || spec.getTypes().contains(message.type()))
+                    && (spec.getRefs().isEmpty() || spec.getRefs().contains(message.ref()))
+                    && (spec.getMinPayloadChars() <= 0 || length >= spec.getMinPayloadChars())
+                    && (spec.getMaxPayloadChars() <= 0 || length < spec.getMaxPayloadChars());
+        }
+
+        private String name() {
+            return spec.getName();
+        }
+
+        private double queued() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private double running() {
+            lock.lock();
+            try {
+                return active;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
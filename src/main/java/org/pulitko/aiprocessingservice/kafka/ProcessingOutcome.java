@@ -0,0 +1,42 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public record ProcessingOutcome(
+        Status status,
+        JsonNode result,
+        Exception error
+) {
+    public enum Status {
+        SUCCESS,
+        SKIPPED,
+        DEFERRED,
+        DLQ,
+        FAILED,
+        RETRY
+    }
+
+    public static ProcessingOutcome success(JsonNode result) {
+        return new ProcessingOutcome(Status.SUCCESS, result, null);
+    }
+
+    public static ProcessingOutcome skipped() {
+        return new ProcessingOutcome(Status.SKIPPED, null, null);
+    }
+
+    public static ProcessingOutcome deferred() {
+        return new ProcessingOutcome(Status.DEFERRED, null, null);
+    }
+
+    public static ProcessingOutcome dlq(Exception error) {
+        return new ProcessingOutcome(Status.DLQ, null, error);
+    }
+
+    public static ProcessingOutcome failed(Exception error) {
+        return new ProcessingOutcome(Status.FAILED, null, error);
+    }
+
+    public static ProcessingOutcome retry(Exception error) {
+        return new ProcessingOutcome(Status.RETRY, null, error);
+    }
+}
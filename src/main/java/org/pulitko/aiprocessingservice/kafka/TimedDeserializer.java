@@ -0,0 +1,62 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Время десериализации по ref результата; запись, которую не удалось разобрать, идёт в "other"
+public class TimedDeserializer<T> implements Deserializer<T> {
+    private final Deserializer<T> delegate;
+    private final PipelineMetrics pipelineMetrics;
+    private final Function<T, String> refOf;
+
+    public TimedDeserializer(Deserializer<T> delegate, PipelineMetrics pipelineMetrics, Function<T, String> refOf) {
+        this.delegate = delegate;
+        this.pipelineMetrics = pipelineMetrics;
+        this.refOf = refOf;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        long startedAt = System.nanoTime();
+        T value = null;
+        try {
+            value = delegate.deserialize(topic, data);
+            return value;
+        } finally {
+            record(value, startedAt);
+        }
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        long startedAt = System.nanoTime();
+        T value = null;
+        try {
+            value = delegate.deserialize(topic, headers, data);
+            return value;
+        } finally {
+            record(value, startedAt);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private void record(T value, long startedAt) {
+        String ref = value == null ? PipelineMetrics.OTHER_REF : refOf.apply(value);
+        pipelineMetrics.timer(PipelineMetrics.Stage.DESERIALIZE, ref)
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+}
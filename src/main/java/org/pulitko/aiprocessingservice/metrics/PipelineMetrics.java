@@ -0,0 +1,191 @@
+package org.pulitko.aiprocessingservice.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Без гистограмм у стадий: Prometheus требует один тип на имя, а распределения дают
+// ai.request.duration и pipeline.e2e.latency
+@Slf4j
+@Component
+public class PipelineMetrics {
+    public static final String OTHER_REF = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final PipelineMetricsConfig config;
+    private final Map<String, RefMeters> refs = new ConcurrentHashMap<>();
+    // ref со своим тегом, без "other"
+    private final AtomicInteger registered = new AtomicInteger();
+    private final Map<Stage, AtomicInteger> inFlight = new EnumMap<>(Stage.class);
+    private final Counter refOverflow;
+
+    public PipelineMetrics(MeterRegistry meterRegistry, PipelineMetricsConfig config) {
+        this.meterRegistry = meterRegistry;
+        this.config = config;
+        for (Stage stage : Stage.values()) {
+            AtomicInteger counter = new AtomicInteger();
+            inFlight.put(stage, counter);
+            Gauge.builder("pipeline.inflight", counter, AtomicInteger::get)
+                    .tag("stage", stage.tag())
+                    .register(meterRegistry);
+        }
+        this.refOverflow = meterRegistry.counter("pipeline.refs.overflow");
+        refs.put(OTHER_REF, new RefMeters(OTHER_REF));
+        config.getRefs().forEach(this::register);
+    }
+
+    public Timer timer(Stage stage, String ref) {
+        return meters(ref).stages.get(stage);
+    }
+
+    public int inFlight(Stage stage) {
+        return inFlight.get(stage).get();
+    }
+
+    public <T> T time(Stage stage, String ref, Supplier<T> action) {
+        AtomicInteger active = inFlight.get(stage);
+        active.incrementAndGet();
+        long startedAt = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            timer(stage, ref).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            active.decrementAndGet();
+        }
+    }
+
+    public void time(Stage stage, String ref, Runnable action) {
+        time(stage, ref, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Таймер останавливается один раз: по значению, ошибке или отмене
+    public <T> Mono<T> timeMono(Stage stage, String ref, Mono<T> mono) {
+        return Mono.defer(() -> {
+            AtomicInteger active = inFlight.get(stage);
+            active.incrementAndGet();
+            long startedAt = System.nanoTime();
+            return mono.doFinally(signal -> {
+                timer(stage, ref).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                active.decrementAndGet();
+            });
+        });
+    }
+
+    public <T> CompletableFuture<T> timeAsync(Stage stage, String ref, Supplier<CompletableFuture<T>> action) {
+        AtomicInteger active = inFlight.get(stage);
+        active.incrementAndGet();
+        long startedAt = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = action.get();
+        } catch (RuntimeException e) {
+            timer(stage, ref).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            active.decrementAndGet();
+            throw e;
+        }
+        return future.whenComplete((result, error) -> {
+            timer(stage, ref).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            active.decrementAndGet();
+        });
+    }
+
+    // recordTimestamp - CreateTime/LogAppendTime записи из Kafka, мс; отрицательный - нет метки
+    public void endToEnd(String ref, Outcome outcome, long recordTimestamp) {
+        if (recordTimestamp <= 0) {
+            return;
+        }
+        long latency = Math.max(0, System.currentTimeMillis() - recordTimestamp);
+        RefMeters meters = meters(ref);
+        (outcome == Outcome.PUBLISHED ? meters.e2ePublished : meters.e2eDlq).record(latency, TimeUnit.MILLISECONDS);
+    }
+
+    // Свой тег получают только ref с найденным промптом: мусорные ref из входа не займут лимит
+    public void register(String ref) {
+        if (ref == null || refs.containsKey(ref)) {
+            return;
+        }
+        // Слот лимита занимается внутри computeIfAbsent: одновременные новые ref не превысят max-refs
+        RefMeters meters = refs.computeIfAbsent(ref, key -> {
+            if (registered.incrementAndGet() > config.getMaxRefs()) {
+                registered.decrementAndGet();
+                return null;
+            }
+            return new RefMeters(key);
+        });
+        if (meters == null) {
+            refOverflow.increment();
+        }
+    }
+
+    private RefMeters meters(String ref) {
+        RefMeters meters = ref == null ? null : refs.get(ref);
+        return meters != null ? meters : refs.get(OTHER_REF);
+    }
+
+    public enum Stage {
+        DESERIALIZE("deserialize"),
+        PROCESS("process"),
+        VALIDATE_INPUT("validate_input"),
+        PROMPT_LOOKUP("prompt_lookup"),
+        PREPROCESS("preprocess"),
+        AI_CALL("ai_call"),
+        SCHEMA_VALIDATION("schema_validation"),
+        PUBLISH("publish"),
+        DLQ_PUBLISH("dlq_publish");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    public enum Outcome {
+        PUBLISHED, DLQ
+    }
+
+    private class RefMeters {
+        private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+        private final Timer e2ePublished;
+        private final Timer e2eDlq;
+
+        RefMeters(String ref) {
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, Timer.builder("pipeline.stage.duration")
+                        .tag("stage", stage.tag())
+                        .tag("ref", ref)
+                        .register(meterRegistry));
+            }
+            this.e2ePublished = e2e(ref, "published");
+            this.e2eDlq = e2e(ref, "dlq");
+            log.debug("Registered pipeline meters for ref {}", ref);
+        }
+
+        private Timer e2e(String ref, String outcome) {
+            return Timer.builder("pipeline.e2e.latency")
+                    .tag("ref", ref)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.pulitko.aiprocessingservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Table("ai_batch")
+public record AiBatchEntity(
+        @Id Long id,
+        String ref,
+        String providerBatchId,
+        String inputFileId,
+        String status,
+        int requestCount,
+        // схема промпта на момент отправки: ответы проверяются по ней, даже если промпт успели поменять
+        String schemaJson,
+        Instant leasedUntil,
+        Instant createdAt,
+        Instant updatedAt
+) {
+    public static final String CREATING = "CREATING";
+    public static final String SUBMITTED = "SUBMITTED";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+}
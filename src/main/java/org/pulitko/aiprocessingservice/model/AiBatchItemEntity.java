@@ -0,0 +1,29 @@
+package org.pulitko.aiprocessingservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Table("ai_batch_item")
+public record AiBatchItemEntity(
+        @Id Long id,
+        Long batchId,
+        String ref,
+        String type,
+        String sourceId,
+        String payload,
+        String status,
+        int attempts,
+        Instant createdAt
+) {
+    public static final String PENDING = "PENDING";
+    public static final String SUBMITTED = "SUBMITTED";
+    public static final String DONE = "DONE";
+    public static final String EXHAUSTED = "EXHAUSTED";
+    public static final String FAILED = "FAILED";
+
+    public static AiBatchItemEntity pending(String ref, String type, String sourceId, String payload) {
+        return new AiBatchItemEntity(null, null, ref, type, sourceId, payload, PENDING, 0, Instant.now());
+    }
+}
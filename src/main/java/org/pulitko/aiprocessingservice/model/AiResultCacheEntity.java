@@ -0,0 +1,19 @@
+package org.pulitko.aiprocessingservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Table("ai_result_cache")
+public record AiResultCacheEntity(
+        @Id Long id,
+        String ref,
+        String promptHash,
+        String payloadHash,
+        String result,
+        int totalTokens,
+        Instant createdAt,
+        Instant expiresAt
+) {
+}
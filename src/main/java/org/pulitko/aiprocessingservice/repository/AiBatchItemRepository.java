@@ -0,0 +1,63 @@
+package org.pulitko.aiprocessingservice.repository;
+
+import org.pulitko.aiprocessingservice.model.AiBatchItemEntity;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface AiBatchItemRepository extends CrudRepository<AiBatchItemEntity, Long> {
+
+    @Query("""
+            SELECT ref FROM ai_batch_item WHERE status = 'PENDING'
+            GROUP BY ref
+            HAVING COUNT(*) >= :minRequests OR MIN(created_at) < :oldestBefore
+            """)
+    List<String> findRefsReadyForBatch(int minRequests, Instant oldestBefore);
+
+    // SKIP LOCKED: параллельные ноды забирают разные записи
+    @Modifying
+    @Query("""
+            UPDATE ai_batch_item SET batch_id = :batchId, status = 'SUBMITTED', attempts = attempts + 1
+            WHERE id IN (
+                SELECT id FROM ai_batch_item
+                WHERE ref = :ref AND status = 'PENDING'
+                ORDER BY id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            """)
+    int claimPending(String ref, long batchId, int limit);
+
+    @Query("SELECT * FROM ai_batch_item WHERE batch_id = :batchId ORDER BY id")
+    List<AiBatchItemEntity> findByBatchId(long batchId);
+
+    @Query("SELECT * FROM ai_batch_item WHERE id = :id AND batch_id = :batchId")
+    Optional<AiBatchItemEntity> findInBatch(long id, long batchId);
+
+    @Modifying
+    @Query("UPDATE ai_batch_item SET status = :status WHERE id = :id")
+    void updateStatus(long id, String status);
+
+    // Незавершённые записи батча возвращаются в очередь, исчерпавшие попытки - помечаются EXHAUSTED
+    @Modifying
+    @Query("""
+            UPDATE ai_batch_item
+            SET status = CASE WHEN attempts >= :maxAttempts THEN 'EXHAUSTED' ELSE 'PENDING' END,
+                batch_id = CASE WHEN attempts >= :maxAttempts THEN batch_id ELSE NULL END
+            WHERE batch_id = :batchId AND status = 'SUBMITTED'
+            """)
+    int releaseUnfinished(long batchId, int maxAttempts);
+
+    @Query("SELECT * FROM ai_batch_item WHERE batch_id = :batchId AND status = 'EXHAUSTED'")
+    List<AiBatchItemEntity> findExhaustedInBatch(long batchId);
+
+    @Query("SELECT COUNT(*) FROM ai_batch_item WHERE status = 'PENDING'")
+    long countPending();
+
+    @Modifying
+    @Query("UPDATE ai_batch_item SET status = 'PENDING', batch_id = NULL, attempts = attempts - 1 WHERE batch_id = :batchId AND status = 'SUBMITTED'")
+    int unclaim(long batchId);
+}
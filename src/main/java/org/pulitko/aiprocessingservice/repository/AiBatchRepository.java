@@ -0,0 +1,44 @@
+package org.pulitko.aiprocessingservice.repository;
+
+import org.pulitko.aiprocessingservice.model.AiBatchEntity;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface AiBatchRepository extends CrudRepository<AiBatchEntity, Long> {
+
+    @Query("SELECT * FROM ai_batch WHERE status = :status ORDER BY id")
+    List<AiBatchEntity> findByStatus(String status);
+
+    @Query("SELECT * FROM ai_batch WHERE status = 'CREATING' AND created_at < :before")
+    List<AiBatchEntity> findStaleCreating(Instant before);
+
+    // Аренда батча одной нодой: остальные пропускают его до истечения leased_until
+    @Modifying
+    @Query("""
+            UPDATE ai_batch SET leased_until = :until
+            WHERE id = :id AND (leased_until IS NULL OR leased_until < :now)
+            """)
+    int lease(long id, Instant now, Instant until);
+
+    @Modifying
+    @Query("""
+            UPDATE ai_batch SET provider_batch_id = :providerBatchId, input_file_id = :inputFileId,
+                   request_count = :requestCount, schema_json = :schemaJson, status = 'SUBMITTED',
+                   leased_until = NULL, updated_at = :now
+            WHERE id = :id
+            """)
+    void markSubmitted(long id, String providerBatchId, String inputFileId, int requestCount, String schemaJson,
+                       Instant now);
+
+    @Modifying
+    @Query("UPDATE ai_batch SET leased_until = NULL WHERE id = :id")
+    void releaseLease(long id);
+
+    @Modifying
+    @Query("UPDATE ai_batch SET status = :status, leased_until = NULL, updated_at = :now WHERE id = :id")
+    void updateStatus(long id, String status, Instant now);
+}
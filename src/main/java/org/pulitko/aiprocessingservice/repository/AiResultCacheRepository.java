@@ -0,0 +1,40 @@
+package org.pulitko.aiprocessingservice.repository;
+
+import org.pulitko.aiprocessingservice.model.AiResultCacheEntity;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface AiResultCacheRepository extends CrudRepository<AiResultCacheEntity, Long> {
+
+    @Query("""
+            SELECT * FROM ai_result_cache
+            WHERE ref = :ref AND prompt_hash = :promptHash AND payload_hash = :payloadHash
+              AND expires_at > :now
+            """)
+    Optional<AiResultCacheEntity> findValid(String ref, String promptHash, String payloadHash, Instant now);
+
+    @Modifying
+    @Query("""
+            INSERT INTO ai_result_cache (ref, prompt_hash, payload_hash, result, total_tokens, created_at, expires_at)
+            VALUES (:ref, :promptHash, :payloadHash, :result, :totalTokens, :createdAt, :expiresAt)
+            ON CONFLICT (ref, prompt_hash, payload_hash) DO UPDATE
+            SET result = EXCLUDED.result,
+                total_tokens = EXCLUDED.total_tokens,
+                created_at = EXCLUDED.created_at,
+                expires_at = EXCLUDED.expires_at
+            """)
+    void upsert(String ref, String promptHash, String payloadHash, String result, int totalTokens,
+                Instant createdAt, Instant expiresAt);
+
+    @Modifying
+    @Query("DELETE FROM ai_result_cache WHERE ref = :ref")
+    void deleteByRef(String ref);
+
+    @Modifying
+    @Query("DELETE FROM ai_result_cache WHERE expires_at <= :now")
+    int deleteExpired(Instant now);
+}
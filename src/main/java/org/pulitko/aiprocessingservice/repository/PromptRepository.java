@@ -5,12 +5,19 @@ import org.springframework.data.jdbc.repository.query.Modifying;
 import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.ListCrudRepository;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 public interface PromptRepository extends ListCrudRepository<PromptEntity, Long> {
 
     Optional<PromptEntity> findByRefAndActiveTrue(String ref);
     Optional<PromptEntity> findByRef(String ref);
+    List<PromptEntity> findAllByActiveTrue();
+    List<PromptEntity> findByUpdatedAtAfter(Instant since);
+
+    @Query("SELECT ref FROM ai_prompt")
+    List<String> findAllRefs();
 
     @Modifying
     @Query("DELETE FROM ai_prompt WHERE ref = :ref")
@@ -0,0 +1,325 @@
+package org.pulitko.aiprocessingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.ai.batch.BatchJob;
+import org.pulitko.aiprocessingservice.ai.batch.BatchRequestLine;
+import org.pulitko.aiprocessingservice.ai.batch.BatchResultLine;
+import org.pulitko.aiprocessingservice.ai.batch.OpenAiBatchClient;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextPlan;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextWindowPlanner;
+import org.pulitko.aiprocessingservice.ai.dto.AiResponse;
+import org.pulitko.aiprocessingservice.config.AiBatchConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.dto.OutgoingMessage;
+import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.exception.BaseBusinessException;
+import org.pulitko.aiprocessingservice.exception.PayloadTooLargeException;
+import org.pulitko.aiprocessingservice.kafka.DlqPublisher;
+import org.pulitko.aiprocessingservice.kafka.KafkaOutgoingPublisher;
+import org.pulitko.aiprocessingservice.model.AiBatchEntity;
+import org.pulitko.aiprocessingservice.model.AiBatchItemEntity;
+import org.pulitko.aiprocessingservice.repository.AiBatchItemRepository;
+import org.pulitko.aiprocessingservice.repository.AiBatchRepository;
+import org.pulitko.aiprocessingservice.usecases.preprocessing.PayloadPreprocessingPipeline;
+import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.IncomingMessageValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.StructuredOutputRepairer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Каждый переход состояния сохраняется в таблицах: после рестарта продолжает любая нода
+@Slf4j
+@Service
+public class AiBatchService {
+    private final AiBatchConfig config;
+    private final AiBatchRepository batchRepository;
+    private final AiBatchItemRepository itemRepository;
+    private final OpenAiBatchClient batchClient;
+    private final AiRequestFactory requestFactory;
+    private final PromptService promptService;
+    private final IncomingMessageValidator incomingMessageValidator;
+    private final AiResultValidator aiResultValidator;
+    private final StructuredOutputRepairer outputRepairer;
+    private final PayloadPreprocessingPipeline preprocessingPipeline;
+    private final ContextWindowPlanner contextPlanner;
+    private final ObjectMapper objectMapper;
+    private final KafkaOutgoingPublisher kafkaOutgoingPublisher;
+    private final DlqPublisher dlqPublisher;
+    private final MeterRegistry meterRegistry;
+
+    public AiBatchService(
+            AiBatchConfig config,
+            AiBatchRepository batchRepository,
+            AiBatchItemRepository itemRepository,
+            OpenAiBatchClient batchClient,
+            AiRequestFactory requestFactory,
+            PromptService promptService,
+            IncomingMessageValidator incomingMessageValidator,
+            AiResultValidator aiResultValidator,
+            StructuredOutputRepairer outputRepairer,
+            PayloadPreprocessingPipeline preprocessingPipeline,
+            ContextWindowPlanner contextPlanner,
+            ObjectMapper objectMapper,
+            KafkaOutgoingPublisher kafkaOutgoingPublisher,
+            DlqPublisher dlqPublisher,
+            MeterRegistry meterRegistry) {
+        this.config = config;
+        this.batchRepository = batchRepository;
+        this.itemRepository = itemRepository;
+        this.batchClient = batchClient;
+        this.requestFactory = requestFactory;
+        this.promptService = promptService;
+        this.incomingMessageValidator = incomingMessageValidator;
+        this.aiResultValidator = aiResultValidator;
+        this.outputRepairer = outputRepairer;
+        this.preprocessingPipeline = preprocessingPipeline;
+        this.contextPlanner = contextPlanner;
+        this.objectMapper = objectMapper;
+        this.kafkaOutgoingPublisher = kafkaOutgoingPublisher;
+        this.dlqPublisher = dlqPublisher;
+        this.meterRegistry = meterRegistry;
+
+        if (config.isEnabled()) {
+            Gauge.builder("ai.batch.pending", itemRepository, AiBatchItemRepository::countPending)
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean accepts(String ref) {
+        return config.accepts(ref);
+    }
+
+    public void enqueue(IncomingMessage message, String sourceId) {
+        itemRepository.save(AiBatchItemEntity.pending(message.ref(), message.type(), sourceId, message.payload()));
+        countItems(message.ref(), "queued", 1);
+        log.info("Queued event id:{} for batch processing, ref: {}", sourceId, message.ref());
+    }
+
+    @Scheduled(fixedDelayString = "${ai.batch.submit-interval:PT1M}")
+    public void submitReady() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Instant now = Instant.now();
+        // Батчи, которые нода не успела отправить (упала между claim и create), возвращаем в очередь
+        for (AiBatchEntity stale : batchRepository.findStaleCreating(now.minus(config.getLease()))) {
+            log.warn("Releasing items of batch {} stuck in CREATING", stale.id());
+            itemRepository.unclaim(stale.id());
+            batchRepository.deleteById(stale.id());
+        }
+        for (String ref : itemRepository.findRefsReadyForBatch(
+                config.getMinRequestsPerBatch(), now.minus(config.getMaxWait()))) {
+            if (!config.getRefs().contains(ref)) {
+                continue;
+            }
+            try {
+                submit(ref);
+            } catch (Exception e) {
+                log.error("Failed to submit batch for ref {}", ref, e);
+            }
+        }
+    }
+
+    private void submit(String ref) {
+        Instant now = Instant.now();
+        AiBatchEntity batch = batchRepository.save(new AiBatchEntity(
+                null, ref, null, null, AiBatchEntity.CREATING, 0, null, null, now, now));
+        int claimed = itemRepository.claimPending(ref, batch.id(), config.getMaxRequestsPerBatch());
+        if (claimed == 0) {
+            batchRepository.deleteById(batch.id());
+            return;
+        }
+
+        List<BatchRequestLine> lines = new ArrayList<>();
+        try {
+            Prompt prompt = promptService.getActivePrompt(ref);
+            for (AiBatchItemEntity item : itemRepository.findByBatchId(batch.id())) {
+                try {
+                    incomingMessageValidator.validate(toIncoming(item));
+                    ContextPlan plan = contextPlanner.plan(prompt, preprocessingPipeline.process(ref, item.payload()), ref);
+                    if (plan.model() != null) {
+                        // все строки batch-файла должны идти в одну модель
+                        throw new PayloadTooLargeException(ref, plan.promptTokens(),
+                                contextPlanner.promptLimit(requestFactory.defaultModel()));
+                    }
+                    lines.add(BatchRequestLine.chatCompletion(String.valueOf(item.id()),
+                            requestFactory.build(prompt.template(), plan.payload(), prompt.schemaJson(), ref)));
+                } catch (BaseBusinessException e) {
+                    reject(item, e.getMessage());
+                }
+            }
+            if (lines.isEmpty()) {
+                batchRepository.updateStatus(batch.id(), AiBatchEntity.COMPLETED, Instant.now());
+                return;
+            }
+            String inputFileId = batchClient.uploadRequests(lines);
+            BatchJob job = batchClient.createBatch(inputFileId);
+            batchRepository.markSubmitted(batch.id(), job.id(), inputFileId, lines.size(), prompt.schemaJson(),
+                    Instant.now());
+            countItems(ref, "submitted", lines.size());
+            log.info("Submitted batch {} ({}) with {} requests for ref {}", batch.id(), job.id(), lines.size(), ref);
+        } catch (BaseBusinessException e) {
+            // промпт не найден или схема битая - всё содержимое батча в DLQ
+            log.warn("Cannot build batch for ref {}, sending {} items to DLQ", ref, claimed, e);
+            itemRepository.findByBatchId(batch.id()).stream()
+                    .filter(item -> AiBatchItemEntity.SUBMITTED.equals(item.status()))
+                    .forEach(item -> reject(item, e.getMessage()));
+            batchRepository.updateStatus(batch.id(), AiBatchEntity.FAILED, Instant.now());
+        } catch (RuntimeException e) {
+            itemRepository.unclaim(batch.id());
+            batchRepository.deleteById(batch.id());
+            throw e;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ai.batch.poll-interval:PT5M}")
+    public void pollSubmitted() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        for (AiBatchEntity batch : batchRepository.findByStatus(AiBatchEntity.SUBMITTED)) {
+            Instant now = Instant.now();
+            if (batchRepository.lease(batch.id(), now, now.plus(config.getLease())) == 0) {
+                continue;
+            }
+            try {
+                poll(batch);
+            } catch (Exception e) {
+                // аренда истечёт, батч подхватит следующий опрос
+                log.error("Failed to poll batch {} ({})", batch.id(), batch.providerBatchId(), e);
+            }
+        }
+    }
+
+    void poll(AiBatchEntity batch) {
+        BatchJob job = batchClient.getBatch(batch.providerBatchId());
+        if (job.isCompleted()) {
+            if (job.outputFileId() != null) {
+                for (BatchResultLine line : batchClient.downloadResults(job.outputFileId())) {
+                    processResult(batch, line);
+                }
+            }
+            finish(batch, AiBatchEntity.COMPLETED);
+        } else if (job.isFailed()) {
+            log.warn("Batch {} ({}) ended with status {}", batch.id(), job.id(), job.status());
+            finish(batch, AiBatchEntity.FAILED);
+        } else {
+            log.debug("Batch {} ({}) is {}", batch.id(), job.id(), job.status());
+            batchRepository.releaseLease(batch.id());
+        }
+    }
+
+    private void processResult(AiBatchEntity batch, BatchResultLine line) {
+        Optional<AiBatchItemEntity> found = parseId(line.customId())
+                .flatMap(id -> itemRepository.findInBatch(id, batch.id()));
+        if (found.isEmpty()) {
+            log.warn("Batch {} returned unknown custom_id {}", batch.id(), line.customId());
+            return;
+        }
+        AiBatchItemEntity item = found.get();
+        if (!AiBatchItemEntity.SUBMITTED.equals(item.status())) {
+            return;
+        }
+        if (!line.isSuccessful()) {
+            // остаётся SUBMITTED и уйдёт на повтор в finish()
+            log.warn("Batch request {} failed: {}", item.id(), line.error() != null ? line.error().message() : line.response());
+            return;
+        }
+
+        AiResponse response = line.response().body();
+        recordUsage(item.ref(), response.usage());
+        JsonNode result;
+        try {
+            result = toResult(response, item.ref(), schemaOf(batch));
+        } catch (BaseBusinessException e) {
+            log.warn("Business logic error, sourceId={}", item.sourceId(), e);
+            reject(item, e.getMessage());
+            return;
+        }
+        // сбой Kafka пробрасывается наверх: запись останется SUBMITTED, результат будет перечитан
+        kafkaOutgoingPublisher.send(OutgoingMessage.builder()
+                .withRef(item.ref())
+                .withSourceId(item.sourceId())
+                .withAiResult(result)
+                .build());
+        itemRepository.updateStatus(item.id(), AiBatchItemEntity.DONE);
+        countItems(item.ref(), "done", 1);
+    }
+
+    // батчи, отправленные до появления schema_json, проверяются по активному промпту
+    private String schemaOf(AiBatchEntity batch) {
+        return batch.schemaJson() != null ? batch.schemaJson() : promptService.getActivePrompt(batch.ref()).schemaJson();
+    }
+
+    private JsonNode toResult(AiResponse response, String ref, String schemaJson) {
+        if (response.choices() == null || response.choices().isEmpty()) {
+            throw new AiResultValidationException(ref, "Empty response from AI");
+        }
+        String content = response.choices().get(0).message().content();
+        JsonNode aiResult;
+        try {
+            aiResult = objectMapper.readTree(content);
+        } catch (JsonProcessingException e) {
+            return outputRepairer.repair(content, null, schemaJson, ref,
+                    new AiResultValidationException(ref, "Malformed JSON from AI", e));
+        }
+        try {
+            return aiResultValidator.validateTree(aiResult, schemaJson, ref);
+        } catch (AiResultValidationException e) {
+            return outputRepairer.repair(content, aiResult, schemaJson, ref, e);
+        }
+    }
+
+    private void finish(AiBatchEntity batch, String status) {
+        int released = itemRepository.releaseUnfinished(batch.id(), config.getMaxAttempts());
+        if (released > 0) {
+            log.info("Batch {}: {} unfinished items returned to queue or exhausted", batch.id(), released);
+        }
+        for (AiBatchItemEntity item : itemRepository.findExhaustedInBatch(batch.id())) {
+            reject(item, "Batch processing failed after " + item.attempts() + " attempts");
+        }
+        batchRepository.updateStatus(batch.id(), status, Instant.now());
+    }
+
+    private void reject(AiBatchItemEntity item, String reason) {
+        dlqPublisher.publish(toIncoming(item), item.sourceId(), reason);
+        itemRepository.updateStatus(item.id(), AiBatchItemEntity.FAILED);
+        countItems(item.ref(), "dlq", 1);
+    }
+
+    private void recordUsage(String ref, AiResponse.Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        meterRegistry.counter("ai.tokens.used", "ref", ref, "type", "prompt").increment(usage.promptTokens());
+        meterRegistry.counter("ai.tokens.used", "ref", ref, "type", "completion").increment(usage.completionTokens());
+    }
+
+    private void countItems(String ref, String status, int count) {
+        meterRegistry.counter("ai.batch.items", "ref", ref, "status", status).increment(count);
+    }
+
+    private static IncomingMessage toIncoming(AiBatchItemEntity item) {
+        return new IncomingMessage(item.type(), item.ref(), item.payload());
+    }
+
+    private static Optional<Long> parseId(String customId) {
+        try {
+            return Optional.of(Long.parseLong(customId));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -3,16 +3,30 @@ package org.pulitko.aiprocessingservice.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.validation.ValidationException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.pulitko.aiprocessingservice.ai.AiClient;
+import org.pulitko.aiprocessingservice.ai.cache.AiResultCache;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.cache.AiResultCacheKey;
+import org.pulitko.aiprocessingservice.ai.cache.InFlightRequestCoalescer;
+import org.pulitko.aiprocessingservice.ai.cascade.ModelCascade;
+import org.pulitko.aiprocessingservice.ai.resilience.AiBulkhead;
+import org.pulitko.aiprocessingservice.ai.resilience.AiCircuitBreaker;
+import org.pulitko.aiprocessingservice.ai.resilience.AiHedger;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextPlan;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextWindowPlanner;
 import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
 import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
+import org.pulitko.aiprocessingservice.usecases.preprocessing.PayloadPreprocessingPipeline;
 import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
 import org.pulitko.aiprocessingservice.usecases.validation.IncomingMessageValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.StructuredOutputRepairer;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 @Service
 @RequiredArgsConstructor
@@ -23,20 +37,89 @@ public class AiProcessingService {
     private final AiResultValidator aiResultValidator;
     private final PromptService promptService;
     private final ObjectMapper objectMapper;
+    private final AiResultCache resultCache;
+    private final InFlightRequestCoalescer coalescer;
+    private final AiCircuitBreaker circuitBreaker;
+    private final AiBulkhead bulkhead;
+    private final PayloadPreprocessingPipeline preprocessingPipeline;
+    private final ContextWindowPlanner contextPlanner;
+    private final AiHedger hedger;
+    private final ModelCascade cascade;
+    private final StructuredOutputRepairer outputRepairer;
+    private final PipelineMetrics pipelineMetrics;
 
     public JsonNode process(IncomingMessage message) {
-        if (message == null) {
-            log.debug("Incoming message is null");
+        return processAsync(message).block();
+    }
+
+    public Mono<JsonNode> processAsync(IncomingMessage message) {
+        return Mono.defer(() -> {
+            if (message == null) {
+                log.debug("Incoming message is null");
+            }
+            String ref = message.ref();
+            pipelineMetrics.time(Stage.VALIDATE_INPUT, ref, () -> incomingMessageValidator.validate(message));
+            Prompt prompt = pipelineMetrics.time(Stage.PROMPT_LOOKUP, ref, () -> promptService.getActivePrompt(ref));
+            pipelineMetrics.register(ref);
+            ContextPlan plan = pipelineMetrics.time(Stage.PREPROCESS, ref, () ->
+                    contextPlanner.plan(prompt, preprocessingPipeline.process(ref, message.payload()), ref));
+            String payload = plan.payload();
+            AiResultCacheKey cacheKey = resultCache.keyFor(ref, prompt, cascade.modelsFor(ref, plan.model()), payload);
+            return coalescer.execute(cacheKey, () -> resultCache.get(cacheKey)
+                    .map(cached -> toResult(cached.content(), prompt, ref))
+                    .switchIfEmpty(Mono.defer(() ->
+                            bulkhead.execute(ref, () -> circuitBreaker.execute(ref, () -> cascade.execute(ref, plan.model(),
+                                            model -> hedger.execute(ref,
+                                                    () -> analyze(prompt, payload, model, ref),
+                                                    validated -> promptTokens(validated.completion())),
+                                            validated -> confidence(validated.result()),
+                                            validated -> totalTokens(validated.completion()))))
+                                    .switchIfEmpty(Mono.error(() ->
+                                            new AiResultValidationException(ref, "Empty response from AI")))
+                                    .map(validated -> {
+                                        resultCache.put(cacheKey, validated.completion());
+                                        return validated.result();
+                                    }))));
+        });
+    }
+
+    // Проверка схемы внутри хеджируемого вызова: побеждает первый валидный ответ
+    private Mono<ValidatedCompletion> analyze(Prompt prompt, String payload, String model, String ref) {
+        return pipelineMetrics.timeMono(Stage.AI_CALL, ref, model == null
+                        ? aiClient.analyzeAsync(prompt.template(), payload, prompt.schemaJson(), ref)
+                        : aiClient.analyzeAsync(prompt.template(), payload, prompt.schemaJson(), ref, model))
+                .map(completion -> new ValidatedCompletion(completion, toResult(completion.content(), prompt, ref)));
+    }
+
+    private static long promptTokens(AiCompletion completion) {
+        return completion.usage() == null ? 0 : completion.usage().promptTokens();
+    }
+
+    private static long totalTokens(AiCompletion completion) {
+        return completion.usage() == null ? 0 : completion.usage().totalTokens();
+    }
+
+    // без поля confidence ответ не эскалируется
+    private static double confidence(JsonNode result) {
+        return result.path("confidence").asDouble(1.0);
+    }
+
+    // Ответ модели парсится один раз, провалидированное дерево уходит в OutgoingMessage как есть
+    private JsonNode toResult(String aiResultAsString, Prompt prompt, String ref) {
+        JsonNode aiResult;
+        try {
+            aiResult = objectMapper.readTree(aiResultAsString);
+        } catch (JsonProcessingException e) {
+            return outputRepairer.repair(aiResultAsString, null, prompt.schemaJson(), ref,
+                    new AiResultValidationException(ref, "Malformed JSON from AI", e));
         }
-        String ref = message.ref();
-        incomingMessageValidator.validate(message);
-        Prompt prompt = promptService.getActivePrompt(ref);
         try {
-            String aiResultAsString = aiClient.analyze(prompt.template(), message.payload(), prompt.schemaJson(), ref);
-            aiResultAsString = aiResultValidator.validate(aiResultAsString, prompt.schemaJson(), ref);
-            return objectMapper.readTree(aiResultAsString);
-        } catch (ValidationException | JsonProcessingException e) {
-            throw new AiResultValidationException(ref, "Malformed JSON from AI", e);
+            return aiResultValidator.validateTree(aiResult, prompt.schemaJson(), ref);
+        } catch (AiResultValidationException e) {
+            return outputRepairer.repair(aiResultAsString, aiResult, prompt.schemaJson(), ref, e);
         }
     }
+
+    private record ValidatedCompletion(AiCompletion completion, JsonNode result) {
+    }
 }
@@ -0,0 +1,12 @@
+package org.pulitko.aiprocessingservice.service;
+
+public record PromptChangedEvent(
+        String ref,
+        Change change
+) {
+    public enum Change {
+        UPDATED,
+        STATUS_CHANGED,
+        DELETED
+    }
+}
@@ -0,0 +1,108 @@
+package org.pulitko.aiprocessingservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+// Держит одно соединение с LISTEN ai_prompt_changed и обновляет снапшот промптов на всех нодах
+@Slf4j
+@Component
+public class PromptNotificationListener implements SmartLifecycle {
+    static final String CHANNEL = "ai_prompt_changed";
+    private static final int POLL_TIMEOUT_MS = 5000;
+
+    private final DataSource dataSource;
+    private final PromptSnapshot snapshot;
+    private final boolean enabled;
+    private final Duration reconnectDelay;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public PromptNotificationListener(
+            DataSource dataSource,
+            PromptSnapshot snapshot,
+            @Value("${ai.prompts.notify.enabled:true}") boolean enabled,
+            @Value("${ai.prompts.notify.reconnect-delay:5s}") Duration reconnectDelay) {
+        this.dataSource = dataSource;
+        this.snapshot = snapshot;
+        this.enabled = enabled;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            log.info("Prompt LISTEN/NOTIFY disabled, relying on periodic resync");
+            return;
+        }
+        running = true;
+        worker = Thread.ofPlatform().name("prompt-notify").daemon().start(this::listen);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                log.info("Listening for prompt changes on channel {}", CHANNEL);
+                // Всё, что поменялось до LISTEN (старт, переподключение), добираем дельтой
+                snapshot.resync();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        onNotification(notification.getParameter());
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                // поток один: если он умрёт, isRunning() останется true, а уведомления перестанут приходить
+                if (!running) {
+                    return;
+                }
+                log.warn("Prompt notification listener failed, reconnecting in {}", reconnectDelay, e);
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void onNotification(String ref) {
+        try {
+            snapshot.refresh(ref);
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh prompt {} after notification, leaving it to resync", ref, e);
+        }
+    }
+}
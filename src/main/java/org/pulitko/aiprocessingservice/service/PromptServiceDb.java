@@ -11,14 +11,14 @@ import org.pulitko.aiprocessingservice.dto.Prompt;
 import org.pulitko.aiprocessingservice.model.PromptEntity;
 import org.pulitko.aiprocessingservice.repository.PromptRepository;
 import org.pulitko.aiprocessingservice.usecases.mapper.PromptMapper;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Objects;
 
 @Slf4j
 @Service
@@ -29,18 +29,18 @@ public class PromptServiceDb implements PromptService {
     private final PromptRepository repository;
     private final PromptMapper mapper;
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PromptSnapshot snapshot;
 
     @Override
-    @Cacheable(value = "prompts", key = "#p0")
     @Retryable(
             retryFor = { org.springframework.dao.DataAccessException.class },
             maxAttempts = 3,
             backoff = @Backoff(delay = 2000)
     )
     public Prompt getActivePrompt(String ref) {
-        log.info("Searching prompt for ref: {}", ref);
-        return repository.findByRefAndActiveTrue(ref)
-                .map(mapper::toAiDto)
+        log.debug("Searching prompt for ref: {}", ref);
+        return snapshot.find(ref)
                 .orElseThrow(() -> new PromptNotFoundException("Prompt not found for ref " + ref));
     }
 
@@ -57,20 +57,23 @@ public class PromptServiceDb implements PromptService {
     }
 
     @Transactional(transactionManager = "jdbcTransactionManager")
-    @CacheEvict(value = "prompts", key = "#request.ref()")
     public PromptFullResponse saveOrUpdate(PromptCreateRequest request) {
         validateJson(request.schemaJson());
         PromptEntity entity = repository.findByRef(request.ref())
                 .orElse(new PromptEntity());
+        boolean changed = !Objects.equals(entity.getPromptTemplate(), request.template())
+                || !Objects.equals(entity.getSchemaJson(), request.schemaJson());
         entity.setRef(request.ref());
         entity.setPromptTemplate(request.template());
         entity.setSchemaJson(request.schemaJson());
         repository.save(entity);
+        if (changed) {
+            eventPublisher.publishEvent(new PromptChangedEvent(request.ref(), PromptChangedEvent.Change.UPDATED));
+        }
         return mapper.toAdminResponse(entity);
     }
 
     @Transactional(transactionManager = "jdbcTransactionManager")
-    @CacheEvict(value = "prompts", key = "#ref")
     public void delete(String ref) {
         log.info("Попытка удаления промта с ref: {}", ref);
         if (!repository.existsByRef(ref)) {
@@ -79,16 +82,17 @@ public class PromptServiceDb implements PromptService {
         }
         repository.deleteByRef(ref);
         log.info("Метод deleteByRef вызван для {}", ref);
+        eventPublisher.publishEvent(new PromptChangedEvent(ref, PromptChangedEvent.Change.DELETED));
     }
 
     @Transactional(transactionManager = "jdbcTransactionManager")
-    @CacheEvict(value = "prompts", key = "#ref")
     public void changeStatus(String ref, boolean active) {
         PromptEntity entity = repository.findByRef(ref)
                         .orElseThrow(() ->
                                 new IllegalArgumentException("Промт с ключом '" + ref + "' не найден."));
         entity.setActive(active);
         repository.save(entity);
+        eventPublisher.publishEvent(new PromptChangedEvent(ref, PromptChangedEvent.Change.STATUS_CHANGED));
     }
 
     private void validateJson(String json) {
@@ -0,0 +1,116 @@
+package org.pulitko.aiprocessingservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.model.PromptEntity;
+import org.pulitko.aiprocessingservice.repository.PromptRepository;
+import org.pulitko.aiprocessingservice.usecases.mapper.PromptMapper;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Периодический resync по updated_at добирает уведомления, пропущенные во время переподключения
+@Slf4j
+@Component
+public class PromptSnapshot implements SmartInitializingSingleton {
+    // Запас на расхождение часов между нодами, updated_at ставит приложение
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(5);
+
+    private final PromptRepository repository;
+    private final PromptMapper mapper;
+
+    private volatile Map<String, Prompt> prompts = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private Instant syncedAt = Instant.EPOCH;
+
+    public PromptSnapshot(PromptRepository repository, PromptMapper mapper, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.mapper = mapper;
+        Gauge.builder("ai.prompts.snapshot.size", this, snapshot -> snapshot.prompts.size())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            reload();
+        } catch (DataAccessException e) {
+            log.warn("Prompt snapshot not loaded at startup, falling back to DB lookups until resync", e);
+        }
+    }
+
+    // До первой успешной загрузки ходим в БД, после - снапшот авторитетен
+    public Optional<Prompt> find(String ref) {
+        if (loaded) {
+            return Optional.ofNullable(prompts.get(ref));
+        }
+        return repository.findByRefAndActiveTrue(ref).map(mapper::toAiDto);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void reload() {
+        Instant startedAt = Instant.now();
+        Map<String, Prompt> fresh = new ConcurrentHashMap<>();
+        for (PromptEntity entity : repository.findAllByActiveTrue()) {
+            fresh.put(entity.getRef(), mapper.toAiDto(entity));
+        }
+        prompts = fresh;
+        syncedAt = startedAt;
+        loaded = true;
+        log.info("Prompt snapshot loaded: {} active prompts", fresh.size());
+    }
+
+    public synchronized void refresh(String ref) {
+        Optional<PromptEntity> entity = repository.findByRef(ref);
+        apply(ref, entity.orElse(null));
+        log.info("Prompt {} refreshed in snapshot", ref);
+    }
+
+    @Scheduled(fixedDelayString = "${ai.prompts.resync-interval:PT1M}")
+    public synchronized void resync() {
+        try {
+            if (!loaded) {
+                reload();
+                return;
+            }
+            Instant startedAt = Instant.now();
+            for (PromptEntity entity : repository.findByUpdatedAtAfter(syncedAt.minus(CLOCK_SKEW))) {
+                apply(entity.getRef(), entity);
+            }
+            // Удаления в дельту по updated_at не попадают
+            prompts.keySet().retainAll(new HashSet<>(repository.findAllRefs()));
+            syncedAt = startedAt;
+        } catch (DataAccessException e) {
+            log.warn("Prompt snapshot resync failed, keeping current snapshot", e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromptChanged(PromptChangedEvent event) {
+        if (loaded) {
+            refresh(event.ref());
+        }
+    }
+
+    private void apply(String ref, PromptEntity entity) {
+        if (entity != null && entity.isActive()) {
+            prompts.put(ref, mapper.toAiDto(entity));
+        } else {
+            prompts.remove(ref);
+        }
+    }
+}
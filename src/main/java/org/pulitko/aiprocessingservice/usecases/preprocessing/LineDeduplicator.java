@@ -0,0 +1,38 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// Повторяющиеся строки (подписи, футеры, копипаста блоков) остаются только в первом вхождении
+@Component
+public class LineDeduplicator implements PayloadPreprocessor {
+
+    @Override
+    public String name() {
+        return "dedupe";
+    }
+
+    @Override
+    public String apply(String payload, PayloadPreprocessingConfig.Profile profile) {
+        Set<String> seen = new HashSet<>();
+        StringBuilder result = new StringBuilder(payload.length());
+        boolean previousBlank = false;
+        for (String line : payload.split("\n", -1)) {
+            String key = line.strip();
+            boolean blank = key.isEmpty();
+            // после удалённого дубля не оставляем подряд идущие пустые строки
+            if (blank ? previousBlank : !seen.add(key)) {
+                continue;
+            }
+            if (!result.isEmpty()) {
+                result.append('\n');
+            }
+            result.append(line);
+            previousBlank = blank;
+        }
+        return result.toString().strip();
+    }
+}
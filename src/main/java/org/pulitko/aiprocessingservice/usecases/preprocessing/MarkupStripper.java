@@ -0,0 +1,63 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Остатки HTML из резюме: скрипты/стили целиком, теги заменяются пробелом, блочные - переводом строки
+@Component
+public class MarkupStripper implements PayloadPreprocessor {
+    private static final Pattern SCRIPTS = Pattern.compile("(?is)<(script|style|head)\\b.*?</\\1\\s*>");
+    private static final Pattern COMMENTS = Pattern.compile("(?s)<!--.*?-->");
+    private static final Pattern BLOCK_TAGS = Pattern.compile(
+            "(?i)</?(p|div|br|li|ul|ol|tr|table|h[1-6]|section|article|header|footer)\\b[^>]*>");
+    private static final Pattern TAGS = Pattern.compile("<[a-zA-Z/!][^<>]*>");
+    private static final Pattern ENTITY = Pattern.compile("&(#\\d{1,6}|#x[0-9a-fA-F]{1,5}|[a-zA-Z]{2,6});");
+    private static final Map<String, String> NAMED_ENTITIES = Map.of(
+            "nbsp", " ", "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'",
+            "mdash", "—", "ndash", "–", "laquo", "«", "raquo", "»");
+
+    @Override
+    public String name() {
+        return "strip-markup";
+    }
+
+    @Override
+    public String apply(String payload, PayloadPreprocessingConfig.Profile profile) {
+        if (payload.indexOf('<') < 0 && payload.indexOf('&') < 0) {
+            return payload;
+        }
+        String text = SCRIPTS.matcher(payload).replaceAll(" ");
+        text = COMMENTS.matcher(text).replaceAll(" ");
+        text = BLOCK_TAGS.matcher(text).replaceAll("\n");
+        text = TAGS.matcher(text).replaceAll(" ");
+        return decodeEntities(text);
+    }
+
+    private static String decodeEntities(String text) {
+        Matcher matcher = ENTITY.matcher(text);
+        StringBuilder result = new StringBuilder(text.length());
+        while (matcher.find()) {
+            matcher.appendReplacement(result, Matcher.quoteReplacement(decode(matcher.group(1), matcher.group())));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static String decode(String entity, String original) {
+        try {
+            if (entity.startsWith("#x")) {
+                return Character.toString(Integer.parseInt(entity.substring(2), 16));
+            }
+            if (entity.startsWith("#")) {
+                return Character.toString(Integer.parseInt(entity.substring(1)));
+            }
+        } catch (IllegalArgumentException e) {
+            return original;
+        }
+        return NAMED_ENTITIES.getOrDefault(entity.toLowerCase(), original);
+    }
+}
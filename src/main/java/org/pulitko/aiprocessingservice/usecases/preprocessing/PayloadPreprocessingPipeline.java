@@ -0,0 +1,69 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Шаги между IncomingMessageValidator и AiClient, набор и порядок задаются per ref
+@Slf4j
+@Component
+public class PayloadPreprocessingPipeline {
+    private final PayloadPreprocessingConfig config;
+    private final Map<String, PayloadPreprocessor> steps;
+    private final MeterRegistry meterRegistry;
+
+    public PayloadPreprocessingPipeline(PayloadPreprocessingConfig config,
+                                        List<PayloadPreprocessor> preprocessors,
+                                        MeterRegistry meterRegistry) {
+        this.config = config;
+        this.steps = preprocessors.stream()
+                .collect(Collectors.toMap(PayloadPreprocessor::name, Function.identity()));
+        this.meterRegistry = meterRegistry;
+
+        Map<String, PayloadPreprocessingConfig.Profile> profiles = new HashMap<>(config.getRefs());
+        profiles.put("defaults", config.getDefaults());
+        profiles.forEach((ref, profile) -> profile.getSteps().forEach(step -> {
+            if (!steps.containsKey(step)) {
+                throw new IllegalStateException("Unknown preprocessing step '" + step + "' for " + ref
+                        + ", available: " + steps.keySet());
+            }
+            // в бюджет должен поместиться хотя бы маркер обрезки
+            if ("truncate".equals(step) && profile.getMaxTokens() > 0
+                    && (long) profile.getMaxTokens() * config.getCharsPerToken() <= TokenBudgetTruncator.MARKER.length()) {
+                throw new IllegalStateException("Preprocessing max-tokens " + profile.getMaxTokens() + " for " + ref
+                        + " is too small for truncation with chars-per-token " + config.getCharsPerToken());
+            }
+        }));
+    }
+
+    public String process(String ref, String payload) {
+        if (!config.isEnabled() || payload == null) {
+            return payload;
+        }
+        PayloadPreprocessingConfig.Profile profile = config.profileFor(ref);
+        String result = payload;
+        for (String step : profile.getSteps()) {
+            result = steps.get(step).apply(result, profile);
+        }
+        if (result.isBlank()) {
+            // нечего отправлять - пусть модель увидит исходный текст
+            return payload;
+        }
+
+        int saved = payload.length() - result.length();
+        if (saved > 0) {
+            meterRegistry.counter("ai.preprocessing.chars.saved", "ref", ref).increment(saved);
+            meterRegistry.counter("ai.preprocessing.tokens.saved", "ref", ref)
+                    .increment((double) saved / config.getCharsPerToken());
+            log.debug("Preprocessing for ref {} reduced payload from {} to {} chars", ref, payload.length(), result.length());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,11 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+
+public interface PayloadPreprocessor {
+
+    // имя шага в ai.preprocessing.*.steps
+    String name();
+
+    String apply(String payload, PayloadPreprocessingConfig.Profile profile);
+}
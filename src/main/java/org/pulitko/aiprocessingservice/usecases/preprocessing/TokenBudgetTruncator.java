@@ -0,0 +1,54 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.springframework.stereotype.Component;
+
+// Хвост сохраняется: контакты и подпись обычно в конце резюме
+@Component
+public class TokenBudgetTruncator implements PayloadPreprocessor {
+    static final String MARKER = "\n[...]\n";
+    private static final double HEAD_SHARE = 0.8;
+
+    private final PayloadPreprocessingConfig config;
+
+    public TokenBudgetTruncator(PayloadPreprocessingConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String name() {
+        return "truncate";
+    }
+
+    @Override
+    public String apply(String payload, PayloadPreprocessingConfig.Profile profile) {
+        if (profile.getMaxTokens() <= 0) {
+            return payload;
+        }
+        int budget = profile.getMaxTokens() * config.getCharsPerToken() - MARKER.length();
+        if (payload.length() <= budget + MARKER.length()) {
+            return payload;
+        }
+        int headEnd = boundaryBefore(payload, (int) (budget * HEAD_SHARE));
+        int tailStart = boundaryAfter(payload, payload.length() - (budget - headEnd));
+        return payload.substring(0, headEnd).stripTrailing() + MARKER + payload.substring(tailStart).stripLeading();
+    }
+
+    private static int boundaryBefore(String text, int limit) {
+        int newline = text.lastIndexOf('\n', limit);
+        if (newline > limit / 2) {
+            return newline;
+        }
+        int space = text.lastIndexOf(' ', limit);
+        return space > limit / 2 ? space : limit;
+    }
+
+    private static int boundaryAfter(String text, int from) {
+        int newline = text.indexOf('\n', from);
+        if (newline >= 0 && newline - from < 200) {
+            return newline + 1;
+        }
+        int space = text.indexOf(' ', from);
+        return space >= 0 && space - from < 50 ? space + 1 : from;
+    }
+}
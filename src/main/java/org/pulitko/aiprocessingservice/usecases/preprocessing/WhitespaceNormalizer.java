@@ -0,0 +1,32 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+@Component
+public class WhitespaceNormalizer implements PayloadPreprocessor {
+    private static final Pattern INVISIBLE = Pattern.compile("[\\u200B-\\u200D\\uFEFF\\p{Cc}&&[^\\n\\t]]");
+    private static final Pattern HORIZONTAL_SPACE = Pattern.compile("[\\t\\x0B\\f\\h]+");
+    private static final Pattern SPACE_AROUND_NEWLINE = Pattern.compile(" *\\n *");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+
+    @Override
+    public String name() {
+        return "normalize";
+    }
+
+    @Override
+    public String apply(String payload, PayloadPreprocessingConfig.Profile profile) {
+        String text = Normalizer.normalize(payload, Normalizer.Form.NFKC)
+                .replace("\r\n", "\n")
+                .replace('\r', '\n');
+        text = INVISIBLE.matcher(text).replaceAll("");
+        text = HORIZONTAL_SPACE.matcher(text).replaceAll(" ");
+        text = SPACE_AROUND_NEWLINE.matcher(text).replaceAll("\n");
+        text = BLANK_LINES.matcher(text).replaceAll("\n\n");
+        return text.strip();
+    }
+}
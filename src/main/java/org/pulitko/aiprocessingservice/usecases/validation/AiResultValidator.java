@@ -2,33 +2,44 @@ package org.pulitko.aiprocessingservice.usecases.validation;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.networknt.schema.JsonSchema;
-import com.networknt.schema.JsonSchemaFactory;
-import com.networknt.schema.SpecVersion;
 import com.networknt.schema.ValidationMessage;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class AiResultValidator {
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final JsonSchemaFactory schemaFactory =
-            JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V202012);
-
-    private final Map<String, JsonSchema> schemaCache = new ConcurrentHashMap<>();
+    private final JsonSchemaCache schemaCache;
+    private final PipelineMetrics pipelineMetrics;
 
     public String validate(String rawResponse, String schemaJson, String ref) {
         try {
-            JsonNode jsonNode = objectMapper.readTree(rawResponse);
-            JsonSchema schema = schemaCache.computeIfAbsent(ref, k -> schemaFactory.getSchema(schemaJson));
-            Set<ValidationMessage> errors = schema.validate(jsonNode);
+            validateTree(objectMapper.readTree(rawResponse), schemaJson, ref);
+        } catch (AiResultValidationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AiResultValidationException(ref, "Internal validation error", e);
+        }
+        return rawResponse;
+    }
+
+    // Валидирует уже распарсенный ответ и возвращает то же дерево, без повторного парсинга
+    public JsonNode validateTree(JsonNode jsonNode, String schemaJson, String ref) {
+        return pipelineMetrics.time(Stage.SCHEMA_VALIDATION, ref, () -> check(jsonNode, schemaJson, ref));
+    }
+
+    private JsonNode check(JsonNode jsonNode, String schemaJson, String ref) {
+        try {
+            Set<ValidationMessage> errors = schemaCache.get(schemaJson).validate(jsonNode);
             if (!errors.isEmpty()) {
                 log.error("Schema validation failed for ref {}: {}", ref, errors);
                 String errorMsg = errors.stream()
@@ -46,6 +57,6 @@ public class AiResultValidator {
         } catch (Exception e) {
             throw new AiResultValidationException(ref, "Internal validation error", e);
         }
-        return rawResponse;
+        return jsonNode;
     }
 }
@@ -0,0 +1,39 @@
+package org.pulitko.aiprocessingservice.usecases.validation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import org.springframework.stereotype.Component;
+
+// Схема парсится и компилируется один раз на версию промпта: ключ - сам текст схемы
+@Component
+public class JsonSchemaCache {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonSchemaFactory schemaFactory =
+            JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V202012);
+
+    private final Cache<String, JsonSchema> schemas = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    public JsonSchema get(String schemaJson) {
+        return schemas.get(schemaJson, this::compile);
+    }
+
+    public JsonNode schemaNode(String schemaJson) {
+        return get(schemaJson).getSchemaNode();
+    }
+
+    private JsonSchema compile(String schemaJson) {
+        try {
+            return schemaFactory.getSchema(objectMapper.readTree(schemaJson));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON Schema: " + e.getOriginalMessage(), e);
+        }
+    }
+}
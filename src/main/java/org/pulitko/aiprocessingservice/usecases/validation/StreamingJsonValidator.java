@@ -0,0 +1,244 @@
+package org.pulitko.aiprocessingservice.usecases.validation;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+// Непонятные ему ключевые слова ($ref, anyOf, ...) поддерево не проверяют: полную проверку всё равно делает
+// AiResultValidator. Не потокобезопасен: один экземпляр на ответ
+public class StreamingJsonValidator {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonNode rootSchema;
+    private final String ref;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private boolean rootSeen;
+    private boolean rootClosed;
+
+    public StreamingJsonValidator(JsonNode rootSchema, String ref) {
+        this.rootSchema = rootSchema;
+        this.ref = ref;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    public void feed(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            drain();
+        } catch (IOException e) {
+            throw new AiResultValidationException(ref, "Malformed JSON from AI", e);
+        }
+    }
+
+    public void finish() {
+        feeder.endOfInput();
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new AiResultValidationException(ref, "Malformed JSON from AI", e);
+        }
+        if (!rootClosed) {
+            throw new AiResultValidationException(ref, "Truncated JSON from AI");
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            onToken(token);
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        switch (token) {
+            case FIELD_NAME -> onField(parser.currentName());
+            case END_OBJECT -> {
+                Frame frame = stack.pop();
+                checkRequired(frame);
+                closeValue();
+            }
+            case END_ARRAY -> {
+                stack.pop();
+                closeValue();
+            }
+            default -> onValue(token);
+        }
+    }
+
+    private void onField(String name) {
+        Frame frame = stack.peek();
+        frame.field = name;
+        frame.seen.add(name);
+        frame.fieldSchema = null;
+        if (frame.schema == null) {
+            return;
+        }
+        JsonNode property = frame.schema.path("properties").get(name);
+        if (property != null) {
+            frame.fieldSchema = property;
+            return;
+        }
+        JsonNode additional = frame.schema.get("additionalProperties");
+        if (additional != null && additional.isBoolean() && !additional.booleanValue()) {
+            throw violation("unknown property '" + name + "'");
+        }
+        if (additional != null && additional.isObject()) {
+            frame.fieldSchema = additional;
+        }
+    }
+
+    private void onValue(JsonToken token) throws IOException {
+        if (rootClosed) {
+            throw violation("unexpected content after the JSON document");
+        }
+        rootSeen = true;
+        JsonNode schema = expectedSchema();
+        checkType(schema, token);
+        switch (token) {
+            case START_OBJECT -> stack.push(new Frame(schema, false));
+            case START_ARRAY -> stack.push(new Frame(schema == null ? null : schema.get("items"), true));
+            default -> {
+                checkEnum(schema, token);
+                closeValue();
+            }
+        }
+    }
+
+    // для массива schema фрейма - это уже схема элементов
+    private JsonNode expectedSchema() {
+        Frame frame = stack.peek();
+        if (frame == null) {
+            return rootSchema;
+        }
+        return frame.array ? frame.schema : frame.fieldSchema;
+    }
+
+    private void closeValue() {
+        Frame frame = stack.peek();
+        if (frame == null) {
+            rootClosed = rootSeen;
+        } else if (frame.array) {
+            frame.index++;
+        }
+    }
+
+    private void checkType(JsonNode schema, JsonToken token) {
+        if (schema == null || !schema.has("type")) {
+            return;
+        }
+        JsonNode type = schema.get("type");
+        if (type.isArray()) {
+            for (JsonNode allowed : type) {
+                if (matches(allowed.asText(), token)) {
+                    return;
+                }
+            }
+        } else if (matches(type.asText(), token)) {
+            return;
+        }
+        throw violation("expected " + type + " but got " + describe(token));
+    }
+
+    private void checkEnum(JsonNode schema, JsonToken token) throws IOException {
+        if (schema == null || !schema.has("enum")) {
+            return;
+        }
+        String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+        for (JsonNode allowed : schema.get("enum")) {
+            if (value == null ? allowed.isNull() : !allowed.isNull() && allowed.asText().equals(value)) {
+                return;
+            }
+        }
+        throw violation("value '" + value + "' is not in enum " + schema.get("enum"));
+    }
+
+    private void checkRequired(Frame frame) {
+        if (frame.schema == null || !frame.schema.has("required")) {
+            return;
+        }
+        for (JsonNode required : frame.schema.get("required")) {
+            if (!frame.seen.contains(required.asText())) {
+                stack.push(frame);
+                throw violation("missing required property '" + required.asText() + "'");
+            }
+        }
+    }
+
+    private static boolean matches(String type, JsonToken token) {
+        return switch (type) {
+            case "object" -> token == JsonToken.START_OBJECT;
+            case "array" -> token == JsonToken.START_ARRAY;
+            case "string" -> token == JsonToken.VALUE_STRING;
+            case "integer" -> token == JsonToken.VALUE_NUMBER_INT;
+            case "number" -> token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT;
+            case "boolean" -> token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE;
+            case "null" -> token == JsonToken.VALUE_NULL;
+            default -> true;
+        };
+    }
+
+    private static String describe(JsonToken token) {
+        return switch (token) {
+            case START_OBJECT -> "object";
+            case START_ARRAY -> "array";
+            case VALUE_STRING -> "string";
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> "number";
+            case VALUE_TRUE, VALUE_FALSE -> "boolean";
+            case VALUE_NULL -> "null";
+            default -> token.name();
+        };
+    }
+
+    private AiResultValidationException violation(String message) {
+        return new AiResultValidationException(ref, "streamed output at " + path() + ": " + message);
+    }
+
+    private String path() {
+        StringBuilder path = new StringBuilder("$");
+        var frames = stack.descendingIterator();
+        while (frames.hasNext()) {
+            Frame frame = frames.next();
+            if (frame.array) {
+                path.append('[').append(frame.index).append(']');
+            } else if (frame.field != null) {
+                path.append('.').append(frame.field);
+            }
+        }
+        return path.toString();
+    }
+
+    private static final class Frame {
+        private final JsonNode schema;
+        private final boolean array;
+        private final Set<String> seen = new HashSet<>();
+        private String field;
+        private JsonNode fieldSchema;
+        private int index;
+
+        private Frame(JsonNode schema, boolean array) {
+            this.schema = schema;
+            this.array = array;
+        }
+    }
+}
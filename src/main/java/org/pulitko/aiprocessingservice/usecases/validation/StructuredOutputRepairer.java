@@ -0,0 +1,234 @@
+package org.pulitko.aiprocessingservice.usecases.validation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Вызывается только после неудачной обычной проверки; исправленное дерево проверяется заново
+@Slf4j
+@Component
+public class StructuredOutputRepairer {
+    private static final Pattern FENCE = Pattern.compile("```(?:json|JSON)?\\s*(.*?)\\s*(?:```|$)", Pattern.DOTALL);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonSchemaCache schemaCache;
+    private final AiResultValidator aiResultValidator;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+
+    public StructuredOutputRepairer(JsonSchemaCache schemaCache,
+                                    AiResultValidator aiResultValidator,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${ai.repair.enabled:true}") boolean enabled) {
+        this.schemaCache = schemaCache;
+        this.aiResultValidator = aiResultValidator;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    // parsed == null - исходный текст не разобрался как JSON
+    public JsonNode repair(String raw, JsonNode parsed, String schemaJson, String ref, AiResultValidationException cause) {
+        if (!enabled || raw == null) {
+            throw cause;
+        }
+        JsonNode candidate = parsed != null && parsed.isObject() ? parsed.deepCopy() : extractObject(raw);
+        if (candidate == null) {
+            throw rejected(ref, cause);
+        }
+        coerce(candidate, schemaCache.schemaNode(schemaJson));
+        if (candidate.equals(parsed)) {
+            throw rejected(ref, cause);
+        }
+        JsonNode result;
+        try {
+            result = aiResultValidator.validateTree(candidate, schemaJson, ref);
+        } catch (AiResultValidationException e) {
+            throw rejected(ref, cause);
+        }
+        meterRegistry.counter("ai.result.repair", "ref", ref, "outcome", "repaired").increment();
+        log.info("Repaired AI output for ref {} (was: {})", ref, cause.getMessage());
+        return result;
+    }
+
+    private AiResultValidationException rejected(String ref, AiResultValidationException cause) {
+        meterRegistry.counter("ai.result.repair", "ref", ref, "outcome", "rejected").increment();
+        return cause;
+    }
+
+    // Первый JSON-объект в тексте: без ограждений и хвоста, с закрытием оборванных строк и скобок
+    JsonNode extractObject(String raw) {
+        String text = raw;
+        Matcher fence = FENCE.matcher(text);
+        if (fence.find()) {
+            text = fence.group(1);
+        }
+        int start = text.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        Deque<Character> closers = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escaped = false;
+        int end = -1;
+        for (int i = start; i < text.length() && end < 0; i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{' -> closers.push('}');
+                case '[' -> closers.push(']');
+                case '}', ']' -> {
+                    closers.pop();
+                    if (closers.isEmpty()) {
+                        end = i + 1;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        StringBuilder json = new StringBuilder(end > 0 ? text.substring(start, end) : text.substring(start));
+        if (end < 0) {
+            if (inString) {
+                json.append('"');
+            }
+            trimDanglingComma(json);
+            closers.forEach(json::append);
+        }
+        try {
+            JsonNode node = objectMapper.readTree(json.toString());
+            return node.isObject() ? node : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static void trimDanglingComma(StringBuilder json) {
+        int i = json.length() - 1;
+        while (i >= 0 && Character.isWhitespace(json.charAt(i))) {
+            i--;
+        }
+        json.setLength(i >= 0 && json.charAt(i) == ',' ? i : i + 1);
+    }
+
+    private void coerce(JsonNode node, JsonNode schema) {
+        if (schema == null || node == null) {
+            return;
+        }
+        if (node instanceof ObjectNode object) {
+            JsonNode properties = schema.path("properties");
+            boolean closed = schema.path("additionalProperties").isBoolean()
+                    && !schema.path("additionalProperties").booleanValue();
+            Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode propertySchema = properties.get(field.getKey());
+                if (propertySchema == null) {
+                    if (closed) {
+                        fields.remove();
+                    }
+                    continue;
+                }
+                JsonNode coerced = coerceScalar(field.getValue(), propertySchema);
+                if (coerced != field.getValue()) {
+                    field.setValue(coerced);
+                } else {
+                    coerce(field.getValue(), propertySchema);
+                }
+            }
+        } else if (node instanceof ArrayNode array && schema.has("items")) {
+            JsonNode itemSchema = schema.get("items");
+            for (int i = 0; i < array.size(); i++) {
+                JsonNode coerced = coerceScalar(array.get(i), itemSchema);
+                if (coerced != array.get(i)) {
+                    array.set(i, coerced);
+                } else {
+                    coerce(array.get(i), itemSchema);
+                }
+            }
+        }
+    }
+
+    // Тот же узел, если приводить нечего
+    private static JsonNode coerceScalar(JsonNode value, JsonNode schema) {
+        if (!value.isValueNode() || allows(schema, typeOf(value))) {
+            return value;
+        }
+        if (value.isTextual()) {
+            String text = value.textValue().trim();
+            if (allows(schema, "integer") && text.matches("-?\\d+")) {
+                return LongNode.valueOf(Long.parseLong(text));
+            }
+            if (allows(schema, "number") && text.matches("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?")) {
+                return DecimalNode.valueOf(new BigDecimal(text));
+            }
+            if (allows(schema, "boolean") && (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false"))) {
+                return BooleanNode.valueOf(Boolean.parseBoolean(text.toLowerCase()));
+            }
+        } else if ((value.isNumber() || value.isBoolean()) && allows(schema, "string")) {
+            return TextNode.valueOf(value.asText());
+        }
+        return value;
+    }
+
+    private static String typeOf(JsonNode value) {
+        if (value.isIntegralNumber()) {
+            return "integer";
+        }
+        if (value.isNumber()) {
+            return "number";
+        }
+        if (value.isBoolean()) {
+            return "boolean";
+        }
+        if (value.isNull()) {
+            return "null";
+        }
+        return "string";
+    }
+
+    // integer подходит и под number; схема без type принимает всё
+    private static boolean allows(JsonNode schema, String type) {
+        JsonNode declared = schema.get("type");
+        if (declared == null) {
+            return true;
+        }
+        if (declared.isArray()) {
+            for (JsonNode t : declared) {
+                if (t.asText().equals(type) || ("integer".equals(type) && "number".equals(t.asText()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return declared.asText().equals(type) || ("integer".equals(type) && "number".equals(declared.asText()));
+    }
+}
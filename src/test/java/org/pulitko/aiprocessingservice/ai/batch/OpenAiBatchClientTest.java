@@ -0,0 +1,70 @@
+package org.pulitko.aiprocessingservice.ai.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.config.AiBatchConfig;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.pulitko.aiprocessingservice.util.StubBatchServer;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+class OpenAiBatchClientTest {
+    private final AiRequestFactory requestFactory = new AiRequestFactory("gpt-4.1-nano", 0.1, new JsonSchemaCache());
+    private StubBatchServer server;
+    private OpenAiBatchClient client;
+
+    @BeforeEach
+    void setUp() {
+        server = new StubBatchServer(customId -> SUCCESS_AI_RESULT);
+        AiBatchConfig config = new AiBatchConfig();
+        config.setBaseUrl(server.baseUrl());
+        client = new OpenAiBatchClient(WebClient.builder(), config, "test-key", new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void shouldUploadJsonlAndCreateBatch() {
+        String fileId = client.uploadRequests(List.of(
+                line("1"), line("2")));
+
+        BatchJob job = client.createBatch(fileId);
+
+        assertThat(server.uploadedFile(fileId).lines()).hasSize(2)
+                .allMatch(l -> l.contains("\"url\":\"/v1/chat/completions\""));
+        assertThat(job.id()).isNotBlank();
+        assertThat(job.inputFileId()).isEqualTo(fileId);
+        assertThat(job.isCompleted()).isFalse();
+    }
+
+    @Test
+    void shouldDownloadResultsOnceBatchIsCompleted() {
+        BatchJob job = client.createBatch(client.uploadRequests(List.of(line("7"))));
+
+        assertThat(client.getBatch(job.id()).status()).isEqualTo("in_progress");
+        BatchJob completed = client.getBatch(job.id());
+        List<BatchResultLine> results = client.downloadResults(completed.outputFileId());
+
+        assertThat(completed.isCompleted()).isTrue();
+        assertThat(results).singleElement().satisfies(result -> {
+            assertThat(result.customId()).isEqualTo("7");
+            assertThat(result.isSuccessful()).isTrue();
+            assertThat(result.response().body().choices().get(0).message().content()).isEqualTo(SUCCESS_AI_RESULT);
+        });
+    }
+
+    private BatchRequestLine line(String customId) {
+        return BatchRequestLine.chatCompletion(customId, requestFactory.build(
+                TEMPLATE_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, SCHEMA_JAVACANDIDATE, REF_JAVACANDIDATE));
+    }
+}
@@ -0,0 +1,101 @@
+package org.pulitko.aiprocessingservice.ai.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.dto.AiResponse;
+import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.model.AiResultCacheEntity;
+import org.pulitko.aiprocessingservice.repository.AiResultCacheRepository;
+import org.pulitko.aiprocessingservice.service.PromptChangedEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+@ExtendWith(MockitoExtension.class)
+class AiResultCacheTest {
+    @Mock
+    private AiResultCacheRepository repository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AiResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AiResultCache(repository, meterRegistry, true, 100, Duration.ofHours(1), "gpt-4.1-nano");
+    }
+
+    @Test
+    void shouldMissThenHitFromMemory() {
+        AiResultCacheKey key = cache.keyFor(REF_JAVACANDIDATE, PROMPT, null, PAYLOAD_JAVACANDIDATE);
+        when(repository.findValid(anyString(), anyString(), anyString(), any())).thenReturn(Optional.empty());
+
+        assertThat(cache.get(key).blockOptional()).isEmpty();
+
+        cache.put(key, new AiCompletion(SUCCESS_AI_RESULT, new AiResponse.Usage(100, 20, 120)));
+
+        assertThat(cache.get(key).block().content()).isEqualTo(SUCCESS_AI_RESULT);
+        assertThat(meterRegistry.counter("ai.cache.tokens.saved", "ref", REF_JAVACANDIDATE).count())
+                .isEqualTo(120.0);
+        assertThat(meterRegistry.counter("ai.cache.requests",
+                "ref", REF_JAVACANDIDATE, "result", "miss", "tier", "none").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldFallBackToDatabaseTier() {
+        AiResultCacheKey key = cache.keyFor(REF_JAVACANDIDATE, PROMPT, null, PAYLOAD_JAVACANDIDATE);
+        when(repository.findValid(anyString(), anyString(), anyString(), any())).thenReturn(Optional.of(
+                new AiResultCacheEntity(1L, REF_JAVACANDIDATE, key.promptHash(), key.payloadHash(),
+                        SUCCESS_AI_RESULT, 50, Instant.now(), Instant.now().plusSeconds(60))));
+
+        assertThat(cache.get(key).block().content()).isEqualTo(SUCCESS_AI_RESULT);
+        assertThat(cache.get(key).block().totalTokens()).isEqualTo(50);
+
+        verify(repository, times(1)).findValid(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void shouldChangeKeyWhenPromptChanges() {
+        AiResultCacheKey original = cache.keyFor(REF_JAVACANDIDATE, PROMPT, null, PAYLOAD_JAVACANDIDATE);
+        AiResultCacheKey changed = cache.keyFor(REF_JAVACANDIDATE,
+                new Prompt(REF_JAVACANDIDATE, "Another template", SCHEMA_JAVACANDIDATE), null, PAYLOAD_JAVACANDIDATE);
+
+        assertThat(changed.payloadHash()).isEqualTo(original.payloadHash());
+        assertThat(changed.promptHash()).isNotEqualTo(original.promptHash());
+    }
+
+    @Test
+    void shouldChangeKeyWhenModelChanges() {
+        AiResultCacheKey byDefault = cache.keyFor(REF_JAVACANDIDATE, PROMPT, null, PAYLOAD_JAVACANDIDATE);
+        AiResultCacheKey sameModel = cache.keyFor(REF_JAVACANDIDATE, PROMPT, "gpt-4.1-nano", PAYLOAD_JAVACANDIDATE);
+        AiResultCacheKey otherModel = cache.keyFor(REF_JAVACANDIDATE, PROMPT, "gpt-4.1", PAYLOAD_JAVACANDIDATE);
+        AiResultCacheKey afterUpgrade = new AiResultCache(repository, meterRegistry, true, 100, Duration.ofHours(1),
+                "gpt-4.1-mini").keyFor(REF_JAVACANDIDATE, PROMPT, null, PAYLOAD_JAVACANDIDATE);
+
+        assertThat(sameModel).isEqualTo(byDefault);
+        assertThat(otherModel.promptHash()).isNotEqualTo(byDefault.promptHash());
+        assertThat(afterUpgrade.promptHash()).isNotEqualTo(byDefault.promptHash());
+    }
+
+    @Test
+    void shouldDropEntriesOfChangedPrompt() {
+        AiResultCacheKey key = cache.keyFor(REF_JAVACANDIDATE, PROMPT, null, PAYLOAD_JAVACANDIDATE);
+        cache.put(key, new AiCompletion(SUCCESS_AI_RESULT, null));
+        when(repository.findValid(anyString(), anyString(), anyString(), any())).thenReturn(Optional.empty());
+
+        cache.onPromptChanged(new PromptChangedEvent(REF_JAVACANDIDATE, PromptChangedEvent.Change.UPDATED));
+
+        assertThat(cache.get(key).blockOptional()).isEmpty();
+    }
+}
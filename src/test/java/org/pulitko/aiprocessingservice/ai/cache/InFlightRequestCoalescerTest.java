@@ -0,0 +1,66 @@
+package org.pulitko.aiprocessingservice.ai.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+
+class InFlightRequestCoalescerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(meterRegistry, true);
+    private final AiResultCacheKey key = new AiResultCacheKey(REF_JAVACANDIDATE, "prompt", "payload");
+
+    @Test
+    void shouldShareOneUpstreamCallBetweenConcurrentRequests() {
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+
+        CompletableFuture<String> first = coalescer.execute(key, () -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        }).toFuture();
+        CompletableFuture<String> second = coalescer.execute(key, () -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        }).toFuture();
+
+        upstream.tryEmitValue("result");
+
+        assertThat(first.join()).isEqualTo("result");
+        assertThat(second.join()).isEqualTo("result");
+        assertThat(calls).hasValue(1);
+        assertThat(coalescer.inFlightCount()).isZero();
+        assertThat(meterRegistry.counter("ai.requests.coalesced", "ref", REF_JAVACANDIDATE).count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldPropagateSameFailureToAllWaiters() {
+        Sinks.One<String> upstream = Sinks.one();
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        CompletableFuture<String> first = coalescer.execute(key, upstream::asMono).toFuture();
+        CompletableFuture<String> second = coalescer.execute(key, upstream::asMono).toFuture();
+
+        upstream.tryEmitError(failure);
+
+        assertThatThrownBy(first::join).hasCause(failure);
+        assertThatThrownBy(second::join).hasCause(failure);
+    }
+
+    @Test
+    void shouldCallUpstreamAgainAfterCompletion() {
+        AtomicInteger calls = new AtomicInteger();
+
+        coalescer.execute(key, () -> Mono.fromCallable(calls::incrementAndGet)).block();
+        coalescer.execute(key, () -> Mono.fromCallable(calls::incrementAndGet)).block();
+
+        assertThat(calls).hasValue(2);
+    }
+}
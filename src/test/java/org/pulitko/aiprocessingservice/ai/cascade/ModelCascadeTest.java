@@ -0,0 +1,96 @@
+package org.pulitko.aiprocessingservice.ai.cascade;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.AiCascadeConfig;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelCascadeTest {
+    private static final String REF = "candidate_java";
+    private static final String CHEAP = "gpt-4.1-nano";
+    private static final String STRONG = "gpt-4.1-mini";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ModelCascade cascade = new ModelCascade(config(), meterRegistry);
+    private final List<String> calledModels = new CopyOnWriteArrayList<>();
+
+    @Test
+    void shouldAcceptConfidentAnswerOfCheapModel() {
+        Answer answer = run(null, Map.of(CHEAP, 0.9, STRONG, 0.95));
+
+        assertThat(answer.model()).isEqualTo(CHEAP);
+        assertThat(calledModels).containsExactly(CHEAP);
+        assertThat(meterRegistry.get("ai.cascade.stage").tag("model", CHEAP).tag("outcome", "accepted")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ai.cascade.tokens").tag("model", CHEAP).counter().count()).isEqualTo(50);
+    }
+
+    @Test
+    void shouldEscalateLowConfidenceAnswer() {
+        Answer answer = run(null, Map.of(CHEAP, 0.4, STRONG, 0.5));
+
+        assertThat(answer.model()).isEqualTo(STRONG);
+        assertThat(calledModels).containsExactly(CHEAP, STRONG);
+        assertThat(meterRegistry.get("ai.cascade.escalations").tag("model", CHEAP).tag("reason", "low_confidence")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEscalateInvalidAnswerAndRejectWhenLastModelFails() {
+        assertThat(run(null, Map.of(STRONG, 0.9)).model()).isEqualTo(STRONG);
+        assertThat(meterRegistry.get("ai.cascade.escalations").tag("reason", "invalid").counter().count())
+                .isEqualTo(1);
+
+        assertThatThrownBy(() -> run(null, Map.of()))
+                .isInstanceOf(AiResultValidationException.class);
+        assertThat(meterRegistry.get("ai.cascade.stage").tag("model", STRONG).tag("outcome", "rejected")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldUseExplicitModelWithoutCascade() {
+        Answer answer = run("gpt-4.1", Map.of("gpt-4.1", 0.1));
+
+        assertThat(answer.model()).isEqualTo("gpt-4.1");
+        assertThat(calledModels).containsExactly("gpt-4.1");
+        assertThat(cascade.appliesTo(REF)).isTrue();
+        assertThat(cascade.appliesTo("other_ref")).isFalse();
+        assertThat(cascade.modelsFor(REF, null)).isEqualTo(CHEAP + "," + STRONG);
+        assertThat(cascade.modelsFor(REF, "gpt-4.1")).isEqualTo("gpt-4.1");
+        assertThat(cascade.modelsFor("other_ref", null)).isNull();
+    }
+
+    // модели без записи в confidences отвечают невалидно
+    private Answer run(String model, Map<String, Double> confidences) {
+        Function<String, Mono<Answer>> call = m -> {
+            calledModels.add(m);
+            Double confidence = confidences.get(m);
+            return confidence == null
+                    ? Mono.error(new AiResultValidationException(REF, "Not valid"))
+                    : Mono.just(new Answer(m, confidence));
+        };
+        return cascade.execute(REF, model, call, Answer::confidence, answer -> 50).block();
+    }
+
+    private static AiCascadeConfig config() {
+        AiCascadeConfig.Cascade refCascade = new AiCascadeConfig.Cascade();
+        refCascade.setModels(List.of(CHEAP, STRONG));
+        refCascade.setMinConfidence(0.7);
+        AiCascadeConfig config = new AiCascadeConfig();
+        config.setEnabled(true);
+        config.setRefs(Map.of(REF, refCascade));
+        return config;
+    }
+
+    private record Answer(String model, double confidence) {
+    }
+}
@@ -0,0 +1,146 @@
+package org.pulitko.aiprocessingservice.ai.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.ratelimit.OpenAiRateLimiter;
+import org.pulitko.aiprocessingservice.config.AiHttpProperties;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+class OpenAiClientStreamingTest {
+    private static final String SCHEMA = """
+            {
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["full_name", "confidence"],
+              "properties": {
+                "full_name": { "type": "string" },
+                "confidence": { "type": "number" }
+              }
+            }
+            """;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger chunksWritten = new AtomicInteger();
+    private HttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldAssembleStreamedCompletionAndRecordTimeToFirstToken() throws Exception {
+        OpenAiClient client = client(List.of("{\"full_name\": ", "\"Иван Иванов\", ", "\"confidence\": 0.9}"));
+
+        AiCompletion completion = client.analyzeAsync(TEMPLATE_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, SCHEMA,
+                REF_JAVACANDIDATE).block(Duration.ofSeconds(5));
+
+        assertThat(objectMapper.readTree(completion.content()).get("full_name").asText()).isEqualTo("Иван Иванов");
+        assertThat(completion.totalTokens()).isEqualTo(15);
+        assertThat(meterRegistry.timer("ai.request.ttft", "ref", REF_JAVACANDIDATE).count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReconcileRateLimiterWithStreamedUsage() throws Exception {
+        OpenAiRateLimiter rateLimiter = mock(OpenAiRateLimiter.class);
+        when(rateLimiter.acquire(REF_JAVACANDIDATE)).thenReturn(Mono.just(1000));
+        OpenAiClient client = client(List.of("{\"full_name\": \"Иван\", ", "\"confidence\": 0.9}"), rateLimiter);
+
+        client.analyzeAsync(TEMPLATE_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, SCHEMA, REF_JAVACANDIDATE)
+                .block(Duration.ofSeconds(5));
+
+        verify(rateLimiter, timeout(1000)).onResponse(eq(REF_JAVACANDIDATE), eq(1000), any(), eq(15));
+    }
+
+    @Test
+    void shouldReconcileRateLimiterWhenStreamIsAborted() throws Exception {
+        OpenAiRateLimiter rateLimiter = mock(OpenAiRateLimiter.class);
+        when(rateLimiter.acquire(REF_JAVACANDIDATE)).thenReturn(Mono.just(1000));
+        OpenAiClient client = client(List.of("{\"age\": 30, ", "\"padding\" "), rateLimiter);
+
+        assertThatThrownBy(() -> client.analyzeAsync(TEMPLATE_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, SCHEMA,
+                REF_JAVACANDIDATE).block(Duration.ofSeconds(5)))
+                .isInstanceOf(AiResultValidationException.class);
+
+        verify(rateLimiter, timeout(1000)).onResponse(eq(REF_JAVACANDIDATE), eq(1000), any(), isNull());
+    }
+
+    @Test
+    void shouldAbortStreamOnFirstSchemaViolation() throws Exception {
+        List<String> chunks = new ArrayList<>(List.of("{\"full_name\": \"Иван\", ", "\"age\": 30, "));
+        for (int i = 0; i < 20; i++) {
+            chunks.add("\"padding\" ");
+        }
+        OpenAiClient client = client(chunks);
+
+        assertThatThrownBy(() -> client.analyzeAsync(TEMPLATE_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, SCHEMA,
+                REF_JAVACANDIDATE).block(Duration.ofSeconds(5)))
+                .isInstanceOf(AiResultValidationException.class)
+                .hasMessageContaining("unknown property 'age'");
+        assertThat(meterRegistry.counter("ai.stream.aborted", "ref", REF_JAVACANDIDATE).count()).isEqualTo(1.0);
+        Thread.sleep(300);
+        assertThat(chunksWritten.get()).isLessThan(chunks.size());
+    }
+
+    private OpenAiClient client(List<String> contentChunks) throws IOException {
+        return client(contentChunks,
+                new OpenAiRateLimiter(meterRegistry, false, 0, 0, Duration.ofSeconds(1), 1000));
+    }
+
+    private OpenAiClient client(List<String> contentChunks, OpenAiRateLimiter rateLimiter) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String content : contentChunks) {
+                    write(out, "{\"choices\":[{\"delta\":{\"content\":" + objectMapper.writeValueAsString(content) + "}}]}");
+                    chunksWritten.incrementAndGet();
+                    Thread.sleep(50);
+                }
+                write(out, "{\"choices\":[],\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}}");
+                write(out, "[DONE]");
+            } catch (IOException | InterruptedException e) {
+                // клиент оборвал поток
+            }
+        });
+        server.start();
+        return new OpenAiClient(WebClient.builder(), "http://localhost:" + server.getAddress().getPort(), "test-key",
+                meterRegistry, rateLimiter, new AiRequestFactory("gpt-4.1-nano", 0.1, new JsonSchemaCache()), true,
+                new AiHttpProperties());
+    }
+
+    private static void write(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,148 @@
+package org.pulitko.aiprocessingservice.ai.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.ratelimit.OpenAiRateLimiter;
+import org.pulitko.aiprocessingservice.config.AiHttpClientConfig;
+import org.pulitko.aiprocessingservice.config.AiHttpProperties;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+class OpenAiClientTransportTest {
+    private static final String RESPONSE = """
+            {"choices":[{"message":{"role":"assistant","content":"{\\"ok\\":true}"}}],
+             "usage":{"prompt_tokens":10,"completion_tokens":5,"total_tokens":15}}
+            """;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicReference<String> contentEncoding = new AtomicReference<>();
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+    private HttpServer server;
+    private ConnectionProvider provider;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // метрики пула reactor-netty пишет в глобальный реестр
+        Metrics.addRegistry(meterRegistry);
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/", exchange -> {
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            contentEncoding.set(encoding);
+            byte[] body = "gzip".equals(encoding)
+                    ? new GZIPInputStream(exchange.getRequestBody()).readAllBytes()
+                    : exchange.getRequestBody().readAllBytes();
+            receivedBody.set(new String(body, StandardCharsets.UTF_8));
+            byte[] response = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        if (provider != null) {
+            provider.dispose();
+        }
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void shouldGzipLargeRequestBodiesAndExportPoolMetrics() {
+        AiHttpProperties properties = new AiHttpProperties();
+        properties.getCompression().setRequests(true);
+        properties.getCompression().setMinRequestSize(DataSize.ofBytes(256));
+        String payload = "Java developer with Spring Boot and Kafka experience. ".repeat(50);
+
+        AiCompletion completion = client(properties)
+                .analyzeAsync("system", payload, SCHEMA_JAVACANDIDATE, REF_JAVACANDIDATE)
+                .block(Duration.ofSeconds(5));
+
+        assertThat(completion.content()).isEqualTo("{\"ok\":true}");
+        assertThat(contentEncoding.get()).isEqualTo("gzip");
+        assertThat(receivedBody.get()).contains(payload.trim());
+        assertThat(meterRegistry.get("ai.request.compression.saved.bytes").counter().count()).isPositive();
+        assertThat(meterRegistry.find("reactor.netty.connection.provider.active.connections")
+                .tag("name", "ai-api").gauge()).isNotNull();
+        assertThat(meterRegistry.find("reactor.netty.connection.provider.pending.connections")
+                .tag("name", "ai-api").gauge()).isNotNull();
+    }
+
+    @Test
+    void shouldSendSmallBodiesUncompressed() {
+        AiHttpProperties properties = new AiHttpProperties();
+        properties.getCompression().setRequests(true);
+
+        client(properties).analyzeAsync("system", "short", SCHEMA_JAVACANDIDATE, REF_JAVACANDIDATE)
+                .block(Duration.ofSeconds(5));
+
+        assertThat(contentEncoding.get()).isNull();
+        assertThat(receivedBody.get()).contains("short");
+    }
+
+    @Test
+    void shouldReturnReservationOfCancelledCall() {
+        // как у проигравшего хеджа: подписку отменяют до ответа
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        OpenAiRateLimiter rateLimiter = mock(OpenAiRateLimiter.class);
+        when(rateLimiter.acquire(REF_JAVACANDIDATE)).thenReturn(Mono.just(1000));
+
+        Disposable call = client(new AiHttpProperties(), rateLimiter, "/slow")
+                .analyzeAsync("system", "short", SCHEMA_JAVACANDIDATE, REF_JAVACANDIDATE)
+                .subscribe(completion -> { }, error -> { });
+        verify(rateLimiter, timeout(1000)).acquire(REF_JAVACANDIDATE);
+        call.dispose();
+
+        verify(rateLimiter, timeout(1000)).onResponse(REF_JAVACANDIDATE, 1000, null, 0);
+    }
+
+    private OpenAiClient client(AiHttpProperties properties) {
+        return client(properties, new OpenAiRateLimiter(meterRegistry, false, 0, 0, Duration.ofSeconds(1), 1000), "");
+    }
+
+    private OpenAiClient client(AiHttpProperties properties, OpenAiRateLimiter rateLimiter, String path) {
+        AiHttpClientConfig config = new AiHttpClientConfig();
+        String baseUrl = "http://localhost:" + server.getAddress().getPort() + path;
+        provider = config.aiConnectionProvider(properties);
+        WebClient.Builder builder = config.aiHttpConnector(provider, properties)
+                .applyTo(WebClient.builder(), baseUrl);
+        return new OpenAiClient(builder, baseUrl, "test-key", meterRegistry, rateLimiter,
+                new AiRequestFactory("gpt-4.1-nano", 0.1, new JsonSchemaCache()), false, properties);
+    }
+}
@@ -0,0 +1,94 @@
+package org.pulitko.aiprocessingservice.ai.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
+import org.pulitko.aiprocessingservice.exception.AiRetryableException;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+
+class OpenAiRateLimiterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong(0);
+
+    @Test
+    void shouldSpreadRequestsEvenlyOverTheMinute() {
+        OpenAiRateLimiter limiter = limiter(6000, 0, Duration.ofSeconds(1));
+
+        limiter.acquire(REF_JAVACANDIDATE).block();
+        limiter.acquire(REF_JAVACANDIDATE).block();
+
+        assertThat(meterRegistry.timer("ai.ratelimit.wait", "ref", REF_JAVACANDIDATE)
+                .max(TimeUnit.MILLISECONDS)).isEqualTo(10.0);
+    }
+
+    @Test
+    void shouldRejectWhenWaitExceedsLimit() {
+        OpenAiRateLimiter limiter = limiter(0, 0, Duration.ofSeconds(1));
+        limiter.onResponse(REF_JAVACANDIDATE, 0, headers("0", "1m0s"), null);
+
+        assertThatThrownBy(() -> limiter.acquire(REF_JAVACANDIDATE).block())
+                .isInstanceOf(AiRetryableException.class);
+        assertThat(meterRegistry.counter("ai.ratelimit.rejected", "ref", REF_JAVACANDIDATE).count())
+                .isEqualTo(1.0);
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(limiter.acquire(REF_JAVACANDIDATE).block()).isEqualTo(1000);
+    }
+
+    @Test
+    void shouldLearnLimitsAndTokenEstimatesFromResponses() {
+        OpenAiRateLimiter limiter = limiter(0, 0, Duration.ofSeconds(30));
+        HttpHeaders headers = headers("499", "120ms");
+        headers.add("x-ratelimit-limit-requests", "500");
+        headers.add("x-ratelimit-limit-tokens", "200000");
+
+        limiter.onResponse(REF_JAVACANDIDATE, 1000, headers, 2000);
+        assertThat(limiter.estimateTokens(REF_JAVACANDIDATE)).isEqualTo(2000);
+
+        limiter.onResponse(REF_JAVACANDIDATE, 2000, headers, 1000);
+        assertThat(limiter.estimateTokens(REF_JAVACANDIDATE)).isEqualTo(1800);
+        assertThat(meterRegistry.get("ai.ratelimit.remaining").tag("type", "requests").gauge().value())
+                .isEqualTo(499.0);
+    }
+
+    @Test
+    void shouldHoldCallsWhenRemainingTokensDoNotCoverReservationOfRef() {
+        OpenAiRateLimiter limiter = limiter(0, 0, Duration.ofSeconds(1));
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-remaining-tokens", "3000");
+        headers.add("x-ratelimit-reset-tokens", "1m0s");
+
+        // 3000 хватает на оценку по умолчанию, но не на резерв этого ref
+        limiter.onResponse(REF_JAVACANDIDATE, 5000, headers, null);
+
+        assertThatThrownBy(() -> limiter.acquire(REF_JAVACANDIDATE).block())
+                .isInstanceOf(AiRateLimitExceededException.class);
+    }
+
+    @Test
+    void shouldParseProviderResetDurations() {
+        assertThat(OpenAiRateLimiter.parseReset("20ms")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(OpenAiRateLimiter.parseReset("6m0s")).isEqualTo(TimeUnit.MINUTES.toNanos(6));
+        assertThat(OpenAiRateLimiter.parseReset("1.5s")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertThat(OpenAiRateLimiter.parseReset(null)).isZero();
+    }
+
+    private OpenAiRateLimiter limiter(long rpm, long tpm, Duration maxWait) {
+        return new OpenAiRateLimiter(meterRegistry, clock::get, true, rpm, tpm, maxWait, 1000);
+    }
+
+    private static HttpHeaders headers(String remainingRequests, String resetRequests) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-remaining-requests", remainingRequests);
+        headers.add("x-ratelimit-reset-requests", resetRequests);
+        return headers;
+    }
+}
@@ -0,0 +1,64 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class AiBulkheadTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AiBulkhead bulkhead = new AiBulkhead(meterRegistry, true, 1, Duration.ofMillis(100));
+
+    @Test
+    void shouldIsolateRefsAndRejectAfterMaxWait() {
+        Sinks.One<String> slowCall = Sinks.one();
+        CompletableFuture<String> busy = bulkhead.execute("slow", slowCall::asMono).toFuture();
+
+        assertThatThrownBy(() -> bulkhead.execute("slow", () -> Mono.just("second")).block())
+                .isInstanceOf(AiCallNotPermittedException.class);
+        assertThat(bulkhead.execute("other", () -> Mono.just("other")).block()).isEqualTo("other");
+
+        slowCall.tryEmitValue("done");
+        assertThat(busy.join()).isEqualTo("done");
+        assertThat(bulkhead.execute("slow", () -> Mono.just("again")).block()).isEqualTo("again");
+        assertThat(meterRegistry.counter("ai.bulkhead.rejected", "ref", "slow").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("ai.bulkhead.waiting").tag("ref", "slow").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldHandFreedPermitToWaitingCall() {
+        AiBulkhead patient = new AiBulkhead(meterRegistry, true, 1, Duration.ofSeconds(5));
+        Sinks.One<String> slowCall = Sinks.one();
+        CompletableFuture<String> busy = patient.execute("slow", slowCall::asMono).toFuture();
+        CompletableFuture<String> waiting = patient.execute("slow", () -> Mono.just("second")).toFuture();
+
+        await().atMost(1, TimeUnit.SECONDS).until(() ->
+                meterRegistry.get("ai.bulkhead.waiting").tag("ref", "slow").gauge().value() == 1.0);
+        assertThat(waiting).isNotDone();
+        slowCall.tryEmitValue("done");
+
+        assertThat(busy.join()).isEqualTo("done");
+        assertThat(waiting.join()).isEqualTo("second");
+        assertThat(meterRegistry.get("ai.bulkhead.active").tag("ref", "slow").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldNotLeakPermitsOfCancelledCalls() {
+        Sinks.One<String> slowCall = Sinks.one();
+        CompletableFuture<String> busy = bulkhead.execute("slow", slowCall::asMono).toFuture();
+        bulkhead.execute("slow", () -> Mono.just("never")).subscribe().dispose();
+        busy.cancel(true);
+
+        assertThat(bulkhead.execute("slow", () -> Mono.just("free")).block()).isEqualTo("free");
+        assertThat(meterRegistry.get("ai.bulkhead.active").tag("ref", "slow").gauge().value()).isZero();
+    }
+}
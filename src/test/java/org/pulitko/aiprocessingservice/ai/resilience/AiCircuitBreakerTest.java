@@ -0,0 +1,89 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+
+class AiCircuitBreakerTest {
+    private final List<AiCircuitStateChangedEvent> events = new CopyOnWriteArrayList<>();
+    private final AiCircuitBreaker breaker = new AiCircuitBreaker(
+            new SimpleMeterRegistry(), event -> events.add((AiCircuitStateChangedEvent) event),
+            true, 4, 4, 50, Duration.ofMillis(200), 1);
+
+    @Test
+    void shouldOpenAndFailFastAfterTechnicalFailures() {
+        failTimes(2);
+        succeedTimes(2);
+        assertThat(breaker.getState()).isEqualTo(AiCircuitBreaker.State.OPEN);
+
+        AtomicInteger calls = new AtomicInteger();
+        assertThatThrownBy(() -> breaker.execute(REF_JAVACANDIDATE,
+                () -> Mono.fromCallable(calls::incrementAndGet)).block())
+                .isInstanceOf(AiCallNotPermittedException.class);
+        assertThat(calls).hasValue(0);
+        assertThat(events).containsExactly(
+                new AiCircuitStateChangedEvent(AiCircuitBreaker.State.CLOSED, AiCircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void shouldIgnoreBusinessErrors() {
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> breaker.execute(REF_JAVACANDIDATE,
+                    () -> Mono.error(new AiResultValidationException(REF_JAVACANDIDATE, "invalid"))).block())
+                    .isInstanceOf(AiResultValidationException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(AiCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldIgnoreRejectionsOfOwnLimiters() {
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> breaker.execute(REF_JAVACANDIDATE,
+                    () -> Mono.error(new AiRateLimitExceededException("no capacity"))).block())
+                    .isInstanceOf(AiRateLimitExceededException.class);
+            assertThatThrownBy(() -> breaker.execute(REF_JAVACANDIDATE,
+                    () -> Mono.error(new AiCallNotPermittedException("backends busy"))).block())
+                    .isInstanceOf(AiCallNotPermittedException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(AiCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulTrialCall() {
+        failTimes(4);
+
+        await().atMost(Duration.ofSeconds(2))
+                .until(() -> breaker.getState() == AiCircuitBreaker.State.HALF_OPEN);
+        succeedTimes(1);
+
+        assertThat(breaker.getState()).isEqualTo(AiCircuitBreaker.State.CLOSED);
+        assertThat(events).extracting(AiCircuitStateChangedEvent::to).containsExactly(
+                AiCircuitBreaker.State.OPEN, AiCircuitBreaker.State.HALF_OPEN, AiCircuitBreaker.State.CLOSED);
+    }
+
+    private void failTimes(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThatThrownBy(() -> breaker.execute(REF_JAVACANDIDATE,
+                    () -> Mono.error(new RuntimeException("AI down"))).block());
+        }
+    }
+
+    private void succeedTimes(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.execute(REF_JAVACANDIDATE, () -> Mono.just("ok")).block();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.pulitko.aiprocessingservice.ai.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.routing.RoutingContext;
+import org.pulitko.aiprocessingservice.config.AiHedgingConfig;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AiHedgerTest {
+    private static final String REF = "candidate_java";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldReturnHedgeResultAndCancelSlowAttempt() {
+        AiHedger hedger = hedger(1.0);
+        warmUp(hedger);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean slowCancelled = new AtomicBoolean();
+
+        String result = hedger.execute(REF, () -> attempts.incrementAndGet() == 1
+                        ? Mono.<String>never().doOnCancel(() -> slowCancelled.set(true))
+                        : Mono.just("hedge"),
+                value -> 100)
+                .block(Duration.ofSeconds(2));
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(slowCancelled).isTrue();
+        assertThat(meterRegistry.get("ai.hedge.sent").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ai.hedge.won").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ai.hedge.tokens.extra").counter().count()).isEqualTo(100);
+    }
+
+    @Test
+    void shouldNotHedgeBeyondBudget() {
+        AiHedger hedger = hedger(0.0);
+        warmUp(hedger);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.execute(REF, () -> {
+                    attempts.incrementAndGet();
+                    return Mono.just("slow").delayElement(Duration.ofMillis(100));
+                }, value -> 100)
+                .block(Duration.ofSeconds(2));
+
+        assertThat(result).isEqualTo("slow");
+        assertThat(attempts).hasValue(1);
+        assertThat(meterRegistry.get("ai.hedge.skipped").tag("reason", "budget").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("ai.hedge.sent").counter()).isNull();
+    }
+
+    @Test
+    void shouldFailFastWhenFirstAttemptFailsBeforeHedge() {
+        AiHedger hedger = hedger(1.0);
+        warmUp(hedger);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> hedger.execute(REF, () -> {
+                    attempts.incrementAndGet();
+                    return Mono.<String>error(new IllegalStateException("boom"));
+                }, value -> 0).block(Duration.ofSeconds(2)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void shouldAskRouterToAvoidBackendOfFirstAttempt() {
+        AiHedger hedger = hedger(1.0);
+        warmUp(hedger);
+        AtomicInteger attempts = new AtomicInteger();
+        List<Set<String>> avoided = new CopyOnWriteArrayList<>();
+
+        hedger.execute(REF, () -> Mono.deferContextual(context -> {
+                    avoided.add(context.getOrDefault(RoutingContext.AVOID_BACKENDS, Set.of()));
+                    if (attempts.incrementAndGet() == 1) {
+                        context.<Set<String>>get(RoutingContext.USED_BACKENDS).add("primary");
+                        return Mono.never();
+                    }
+                    return Mono.just("hedge");
+                }), value -> 0)
+                .block(Duration.ofSeconds(2));
+
+        assertThat(avoided).containsExactly(Set.of(), Set.of("primary"));
+    }
+
+    @Test
+    void shouldPassThroughRefsWithoutHedging() {
+        AiHedger hedger = hedger(1.0);
+
+        assertThat(hedger.appliesTo("other_ref")).isFalse();
+        assertThat(hedger.execute("other_ref", () -> Mono.just("plain"), value -> 0).block()).isEqualTo("plain");
+    }
+
+    private AiHedger hedger(double maxHedgeRate) {
+        AiHedgingConfig config = new AiHedgingConfig();
+        config.setEnabled(true);
+        config.setRefs(Set.of(REF));
+        config.setMinSamples(3);
+        config.setMinDelay(Duration.ofMillis(20));
+        config.setMaxHedgeRate(maxHedgeRate);
+        return new AiHedger(config, meterRegistry);
+    }
+
+    private static void warmUp(AiHedger hedger) {
+        for (int i = 0; i < 3; i++) {
+            hedger.execute(REF, () -> Mono.just("fast").delayElement(Duration.ofMillis(5)), value -> 0).block();
+        }
+    }
+}
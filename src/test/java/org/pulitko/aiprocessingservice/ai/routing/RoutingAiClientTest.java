@@ -0,0 +1,151 @@
+package org.pulitko.aiprocessingservice.ai.routing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.AiClient;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.client.OpenAiClient;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.ratelimit.OpenAiRateLimiter;
+import org.pulitko.aiprocessingservice.config.AiHttpProperties;
+import org.pulitko.aiprocessingservice.config.AiRoutingConfig;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiConfigurationException;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.pulitko.aiprocessingservice.util.StubChatServer;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+class RoutingAiClientTest {
+    private static final String RESULT = "{\"ok\":true}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<StubChatServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(StubChatServer::close);
+    }
+
+    @Test
+    void shouldSendMostTrafficToFasterBackend() {
+        StubChatServer fast = stub(StubChatServer.responding(Duration.ofMillis(10), RESULT));
+        StubChatServer slow = stub(StubChatServer.responding(Duration.ofMillis(150), RESULT));
+        RoutingAiClient client = routing(backend("fast", fast, Set.of(), 4), backend("slow", slow, Set.of(), 4));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(call(client, REF_JAVACANDIDATE).content()).isEqualTo(RESULT);
+        }
+
+        // по одному разогревочному запросу на сервер
+        assertThat(fast.requests()).isGreaterThanOrEqualTo(19);
+        assertThat(slow.requests()).isBetween(2, 3);
+        assertThat(meterRegistry.get("ai.routing.latency.ewma").tag("backend", "slow").gauge().value())
+                .isGreaterThan(meterRegistry.get("ai.routing.latency.ewma").tag("backend", "fast").gauge().value());
+    }
+
+    @Test
+    void shouldFailOverToHealthyBackendAndPenaliseFailingOne() {
+        StubChatServer broken = stub(StubChatServer.failing(400));
+        StubChatServer healthy = stub(StubChatServer.responding(Duration.ofMillis(50), RESULT));
+        RoutingAiClient client = routing(backend("broken", broken, Set.of(), 4), backend("healthy", healthy, Set.of(), 4));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(call(client, REF_JAVACANDIDATE).content()).isEqualTo(RESULT);
+        }
+
+        assertThat(broken.requests()).isEqualTo(2);
+        assertThat(healthy.requests()).isEqualTo(6);
+        assertThat(meterRegistry.get("ai.routing.error.rate").tag("backend", "broken").gauge().value()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("ai.routing.requests").tag("backend", "broken").tag("status", "error")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRouteOnlyToBackendsThatAllowRef() {
+        StubChatServer shared = stub(StubChatServer.responding(Duration.ofMillis(100), RESULT));
+        StubChatServer dedicated = stub(StubChatServer.responding(Duration.ZERO, RESULT));
+        RoutingAiClient client = routing(backend("shared", shared, Set.of(), 4),
+                backend("dedicated", dedicated, Set.of("other_ref"), 4));
+
+        for (int i = 0; i < 3; i++) {
+            call(client, REF_JAVACANDIDATE);
+        }
+        call(client, "other_ref");
+
+        assertThat(dedicated.requests()).isEqualTo(2);
+        assertThat(shared.requests()).isEqualTo(4);
+        assertThatThrownBy(() -> routing(backend("dedicated", dedicated, Set.of("other_ref"), 4))
+                .acquire(REF_JAVACANDIDATE, null, Set.of()))
+                .isInstanceOf(AiConfigurationException.class);
+    }
+
+    @Test
+    void shouldRejectWhenEveryBackendIsAtCapacity() {
+        StubChatServer server = stub(StubChatServer.responding(Duration.ZERO, RESULT));
+        RoutingAiClient client = routing(backend("only", server, Set.of(), 1));
+
+        AiBackend taken = client.acquire(REF_JAVACANDIDATE, null, Set.of());
+
+        assertThatThrownBy(() -> client.acquire(REF_JAVACANDIDATE, null, Set.of()))
+                .isInstanceOf(AiCallNotPermittedException.class);
+        assertThat(meterRegistry.get("ai.routing.rejected").counter().count()).isEqualTo(1);
+        taken.release();
+        assertThat(client.acquire(REF_JAVACANDIDATE, null, Set.of()).name()).isEqualTo("only");
+    }
+
+    @Test
+    void shouldAvoidBackendWithStuckCallsAndNoFreshSamples() throws Exception {
+        AiRoutingConfig config = new AiRoutingConfig();
+        config.setDecayTime(Duration.ofMillis(10));
+        AiBackend stuck = new AiBackend("stuck", mock(AiClient.class), null, Set.of(), 8, 0.2);
+        AiBackend healthy = new AiBackend("healthy", mock(AiClient.class), null, Set.of(), 8, 0.2);
+        RoutingAiClient client = new RoutingAiClient(config, meterRegistry, List.of(stuck, healthy));
+
+        // был быстрым, потом вызовы повисли и замеров больше нет
+        stuck.record(Duration.ofMillis(50).toNanos(), true);
+        for (int i = 0; i < 3; i++) {
+            assertThat(stuck.tryAcquire()).isTrue();
+        }
+        Thread.sleep(200);
+        healthy.record(Duration.ofMillis(100).toNanos(), true);
+
+        assertThat(client.acquire(REF_JAVACANDIDATE, null, Set.of()).name()).isEqualTo("healthy");
+    }
+
+    private AiCompletion call(RoutingAiClient client, String ref) {
+        return client.analyzeAsync("system", PAYLOAD_JAVACANDIDATE, SCHEMA_JAVACANDIDATE, ref)
+                .block(Duration.ofSeconds(5));
+    }
+
+    private StubChatServer stub(StubChatServer server) {
+        servers.add(server);
+        return server;
+    }
+
+    private RoutingAiClient routing(AiBackend... backends) {
+        return new RoutingAiClient(new AiRoutingConfig(), meterRegistry, List.of(backends));
+    }
+
+    private AiBackend backend(String name, StubChatServer server, Set<String> refs, int capacity) {
+        OpenAiClient client = new OpenAiClient(WebClient.builder(), server.baseUrl(), null, meterRegistry,
+                new OpenAiRateLimiter(meterRegistry, false, 0, 0, Duration.ofSeconds(1), 1000),
+                new AiRequestFactory("gpt-4.1-nano", 0.1, new JsonSchemaCache()), false, new AiHttpProperties());
+        // первый запрос (соединение, JIT) иначе попадёт в EWMA как выброс
+        client.analyzeAsync("system", "warm-up", SCHEMA_JAVACANDIDATE, "warm_up")
+                .onErrorResume(e -> Mono.empty())
+                .block(Duration.ofSeconds(5));
+        return new AiBackend(name, client, null, refs, capacity, new AiRoutingConfig().getEwmaAlpha());
+    }
+}
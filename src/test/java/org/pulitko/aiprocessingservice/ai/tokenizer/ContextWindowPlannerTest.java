@@ -0,0 +1,90 @@
+package org.pulitko.aiprocessingservice.ai.tokenizer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.config.AiContextConfig;
+import org.pulitko.aiprocessingservice.exception.PayloadTooLargeException;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+class ContextWindowPlannerTest {
+    private static final String MODEL = "gpt-4.1-nano";
+    private static final String LARGER_MODEL = "gpt-4.1-mini";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AiContextConfig config = new AiContextConfig();
+    private final TokenCounter tokenCounter = new TokenCounter(config);
+
+    @Test
+    void shouldCountTokensOffline() {
+        assertThat(tokenCounter.count("hello world")).isEqualTo(2);
+        assertThat(tokenCounter.countPrompt(TEMPLATE_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, SCHEMA_JAVACANDIDATE))
+                .isEqualTo(tokenCounter.count(TEMPLATE_JAVACANDIDATE) + tokenCounter.count(PAYLOAD_JAVACANDIDATE)
+                        + tokenCounter.count(SCHEMA_JAVACANDIDATE) + 9);
+    }
+
+    @Test
+    void shouldSendPayloadThatFits() {
+        ContextPlan plan = planner(10_000).plan(PROMPT, PAYLOAD_JAVACANDIDATE, REF_JAVACANDIDATE);
+
+        assertThat(plan.decision()).isEqualTo(ContextPlan.Decision.SEND);
+        assertThat(plan.model()).isNull();
+        assertThat(plan.payload()).isEqualTo(PAYLOAD_JAVACANDIDATE);
+        assertThat(plan.promptTokens()).isPositive();
+        assertThat(meterRegistry.get("ai.prompt.tokens.estimated").tag("ref", REF_JAVACANDIDATE)
+                .summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldTruncateSlightlyOversizedPayload() {
+        int fixed = tokenCounter.countPrompt(PROMPT.template(), null, PROMPT.schemaJson());
+        String payload = "word ".repeat(1000);
+        ContextWindowPlanner planner = planner(fixed + 900);
+
+        ContextPlan plan = planner.plan(PROMPT, payload, REF_JAVACANDIDATE);
+
+        assertThat(plan.decision()).isEqualTo(ContextPlan.Decision.TRUNCATE);
+        assertThat(plan.promptTokens()).isLessThanOrEqualTo(fixed + 900);
+        assertThat(plan.payload()).contains(TokenCounter.TRUNCATION_MARKER);
+    }
+
+    @Test
+    void shouldSwitchToLargerModelWhenTruncationWouldLoseTooMuch() {
+        config.setLargerModel(LARGER_MODEL);
+        config.setContextWindows(Map.of(MODEL, 500 + config.getReservedCompletionTokens(),
+                LARGER_MODEL, 100_000));
+
+        ContextPlan plan = new ContextWindowPlanner(config, tokenCounter, requestFactory(), meterRegistry)
+                .plan(PROMPT, "word ".repeat(2000), REF_JAVACANDIDATE);
+
+        assertThat(plan.decision()).isEqualTo(ContextPlan.Decision.LARGER_MODEL);
+        assertThat(plan.model()).isEqualTo(LARGER_MODEL);
+        assertThat(meterRegistry.counter("ai.context.plan", "ref", REF_JAVACANDIDATE, "decision", "larger_model").count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldRejectPayloadThatFitsNowhere() {
+        ContextWindowPlanner planner = planner(500);
+
+        assertThatThrownBy(() -> planner.plan(PROMPT, "word ".repeat(5000), REF_JAVACANDIDATE))
+                .isInstanceOf(PayloadTooLargeException.class);
+        assertThat(meterRegistry.counter("ai.context.plan", "ref", REF_JAVACANDIDATE, "decision", "rejected").count())
+                .isEqualTo(1.0);
+    }
+
+    private ContextWindowPlanner planner(int promptLimit) {
+        config.setContextWindows(Map.of(MODEL, promptLimit + config.getReservedCompletionTokens()));
+        return new ContextWindowPlanner(config, tokenCounter, requestFactory(), meterRegistry);
+    }
+
+    private static AiRequestFactory requestFactory() {
+        return new AiRequestFactory(MODEL, 0.1, new JsonSchemaCache());
+    }
+}
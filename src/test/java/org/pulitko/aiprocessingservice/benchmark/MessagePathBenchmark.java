@@ -0,0 +1,130 @@
+package org.pulitko.aiprocessingservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.dto.AiRequest;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.dto.OutgoingMessage;
+import org.pulitko.aiprocessingservice.kafka.IncomingRecords;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.pulitko.aiprocessingservice.util.TestData.SUCCESS_AI_RESULT;
+
+// gc.alloc.rate.norm - байты на сообщение, только при запуске через BenchmarkRunner (или -Pbenchmark)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagePathBenchmark {
+    private static final String TOPIC = "incoming";
+    private static final String REF = "candidate_java";
+
+    // Размер payload: короткое сообщение, типичное резюме, предел IncomingMessage (100k)
+    @Param({"1000", "20000", "100000"})
+    public int payloadChars;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonDeserializer<IncomingMessage> incomingDeserializer;
+    private JsonSerializer<Object> outgoingSerializer;
+    private AiResultValidator validator;
+    private String resultSchemaJson;
+    private byte[] incomingBytes;
+    private AiRequest aiRequest;
+    private OutgoingMessage outgoingMessage;
+    private ConsumerRecord<String, IncomingMessage> failedRecord;
+    private ListenerExecutionFailedException listenerFailure;
+    private ConsumerRecord<String, IncomingMessage> headerRecord;
+    private Exception headerFailure;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/schema/ai-result-schema.json")) {
+            resultSchemaJson = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String payload = "Java developer, Spring Boot, Kafka, PostgreSQL. ".repeat(payloadChars / 48 + 1)
+                .substring(0, payloadChars);
+        incomingBytes = objectMapper.writeValueAsBytes(new IncomingMessage("txt", REF, payload));
+
+        incomingDeserializer = IncomingRecords.deserializer();
+        outgoingSerializer = new JsonSerializer<>();
+        JsonSchemaCache schemaCache = new JsonSchemaCache();
+        validator = new AiResultValidator(schemaCache,
+                new PipelineMetrics(new SimpleMeterRegistry(), new PipelineMetricsConfig()));
+        aiRequest = new AiRequestFactory("gpt-4.1-nano", 0.1, schemaCache)
+                .build("Extract candidate data", payload, resultSchemaJson, REF);
+        outgoingMessage = OutgoingMessage.builder()
+                .withRef(REF)
+                .withSourceId("src-1")
+                .withAiResult(objectMapper.readTree(SUCCESS_AI_RESULT))
+                .build();
+
+        DeserializationException dex = new DeserializationException("failed", incomingBytes, false, null);
+        failedRecord = new ConsumerRecord<>(TOPIC, 0, 0L, null, null);
+        listenerFailure = new ListenerExecutionFailedException("listener failed", dex);
+
+        // самая дорогая ветка recoverer'а: Java-десериализация исключения из заголовка
+        headerRecord = new ConsumerRecord<>(TOPIC, 0, 0L, null, null);
+        headerRecord.headers().add("DeserializationException", javaSerialize(dex));
+        headerFailure = new IllegalStateException("deserialization failed");
+    }
+
+    @Benchmark
+    public IncomingMessage deserializeIncoming() {
+        return incomingDeserializer.deserialize(TOPIC, new RecordHeaders(), incomingBytes);
+    }
+
+    @Benchmark
+    public String validateResult() {
+        return validator.validate(SUCCESS_AI_RESULT, resultSchemaJson, REF);
+    }
+
+    @Benchmark
+    public byte[] serializeAiRequest() throws IOException {
+        return objectMapper.writeValueAsBytes(aiRequest);
+    }
+
+    @Benchmark
+    public byte[] serializeOutgoing() {
+        return outgoingSerializer.serialize("outgoing", new RecordHeaders(), outgoingMessage);
+    }
+
+    @Benchmark
+    public void extractRecoveredPayload(Blackhole blackhole) {
+        blackhole.consume(IncomingRecords.rawPayload(failedRecord, listenerFailure));
+    }
+
+    @Benchmark
+    public void extractRecoveredPayloadFromHeader(Blackhole blackhole) {
+        blackhole.consume(IncomingRecords.rawPayload(headerRecord, headerFailure));
+    }
+
+    private static byte[] javaSerialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package org.pulitko.aiprocessingservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.pulitko.aiprocessingservice.util.TestData.SUCCESS_AI_RESULT;
+
+// legacy - схема и ответ парсятся на каждый запрос, parseOnce - один раз
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultPathBenchmark {
+    private static final String REF = "candidate_java";
+
+    // Длина поля reason: короткий ответ, типичный, развёрнутый
+    @Param({"120", "1000", "8000"})
+    public int reasonLength;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper validatorMapper = new ObjectMapper();
+    private final JsonSchemaFactory schemaFactory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V202012);
+    private final Map<String, JsonSchema> legacySchemas = new ConcurrentHashMap<>();
+
+    private String schemaJson;
+    private String aiResult;
+    private AiResultValidator validator;
+    private JsonSchemaCache schemaCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/benchmark/candidate_java.schema.json")) {
+            schemaJson = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        ObjectNode result = (ObjectNode) objectMapper.readTree(SUCCESS_AI_RESULT);
+        result.put("reason", "x".repeat(reasonLength));
+        aiResult = objectMapper.writeValueAsString(result);
+
+        schemaCache = new JsonSchemaCache();
+        validator = new AiResultValidator(schemaCache,
+                new PipelineMetrics(new SimpleMeterRegistry(), new PipelineMetricsConfig()));
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) throws IOException {
+        blackhole.consume(objectMapper.readTree(schemaJson));
+
+        JsonNode validated = validatorMapper.readTree(aiResult);
+        JsonSchema schema = legacySchemas.computeIfAbsent(REF, k -> schemaFactory.getSchema(schemaJson));
+        if (!schema.validate(validated).isEmpty() || validated.get("confidence").asDouble() > 1) {
+            throw new AiResultValidationException(REF, "invalid");
+        }
+
+        blackhole.consume(objectMapper.readTree(aiResult));
+    }
+
+    @Benchmark
+    public void parseOnce(Blackhole blackhole) throws IOException {
+        blackhole.consume(schemaCache.schemaNode(schemaJson));
+        blackhole.consume(validator.validateTree(objectMapper.readTree(aiResult), schemaJson, REF));
+    }
+}
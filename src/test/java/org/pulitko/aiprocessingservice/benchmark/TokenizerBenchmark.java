@@ -0,0 +1,75 @@
+package org.pulitko.aiprocessingservice.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextPlan;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextWindowPlanner;
+import org.pulitko.aiprocessingservice.ai.tokenizer.TokenCounter;
+import org.pulitko.aiprocessingservice.config.AiContextConfig;
+import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.pulitko.aiprocessingservice.util.TestData.TEMPLATE_JAVACANDIDATE;
+
+// planFits - payload заведомо помещается и не токенизируется, planTight - считается и обрезается
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+    private static final String CV_LINE = "Иван Иванов, Java developer: Spring Boot, Kafka, PostgreSQL, 5 лет опыта. "
+            + "Built payment services handling 2k rps, mentoring, code review.\n";
+
+    @Param({"2000", "20000", "100000"})
+    public int payloadChars;
+
+    private TokenCounter tokenCounter;
+    private String payload;
+    private String schemaJson;
+    private Prompt prompt;
+    private ContextWindowPlanner widePlanner;
+    private ContextWindowPlanner tightPlanner;
+
+    @Setup
+    public void setUp() throws IOException {
+        tokenCounter = new TokenCounter(new AiContextConfig());
+        try (InputStream in = getClass().getResourceAsStream("/benchmark/candidate_java.schema.json")) {
+            schemaJson = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        payload = CV_LINE.repeat(payloadChars / CV_LINE.length() + 1).substring(0, payloadChars);
+        prompt = new Prompt("candidate_java", TEMPLATE_JAVACANDIDATE, schemaJson);
+
+        AiRequestFactory requestFactory = new AiRequestFactory("gpt-4.1-nano", 0.1, new JsonSchemaCache());
+        AiContextConfig wide = new AiContextConfig();
+        wide.setContextWindows(Map.of("gpt-4.1-nano", 1_047_576));
+        widePlanner = new ContextWindowPlanner(wide, tokenCounter, requestFactory, new SimpleMeterRegistry());
+        AiContextConfig tight = new AiContextConfig();
+        int promptTokens = tokenCounter.countPrompt(TEMPLATE_JAVACANDIDATE, payload, schemaJson);
+        tight.setContextWindows(Map.of("gpt-4.1-nano", promptTokens * 9 / 10 + tight.getReservedCompletionTokens()));
+        tightPlanner = new ContextWindowPlanner(tight, tokenCounter, requestFactory, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public int countPrompt() {
+        return tokenCounter.countPrompt(TEMPLATE_JAVACANDIDATE, payload, schemaJson);
+    }
+
+    @Benchmark
+    public ContextPlan planFits() {
+        return widePlanner.plan(prompt, payload, "candidate_java");
+    }
+
+    @Benchmark
+    public ContextPlan planTight() {
+        return tightPlanner.plan(prompt, payload, "candidate_java");
+    }
+}
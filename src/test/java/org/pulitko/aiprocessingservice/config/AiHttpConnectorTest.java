@@ -0,0 +1,40 @@
+package org.pulitko.aiprocessingservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AiHttpConnectorTest {
+    private final ClientHttpConnector http11 = mock(ClientHttpConnector.class);
+    private final ClientHttpConnector negotiated = mock(ClientHttpConnector.class);
+
+    @Test
+    void shouldNegotiateH2OnlyWithHttpsBackends() {
+        when(http11.connect(any(), any(), any())).thenReturn(Mono.empty());
+        when(negotiated.connect(any(), any(), any())).thenReturn(Mono.empty());
+        AiHttpConnector connector = new AiHttpConnector(http11, negotiated);
+
+        call(connector.applyTo(WebClient.builder(), "http://ollama:11434/v1"));
+        call(connector.applyTo(WebClient.builder(), "https://api.openai.com/v1"));
+
+        verify(http11, times(1)).connect(any(), any(), any());
+        verify(negotiated, times(1)).connect(any(), any(), any());
+    }
+
+    @Test
+    void shouldStayOnHttp11WhenH2IsDisabled() {
+        when(http11.connect(any(), any(), any())).thenReturn(Mono.empty());
+
+        call(new AiHttpConnector(http11, null).applyTo(WebClient.builder(), "https://api.openai.com/v1"));
+
+        verify(http11).connect(any(), any(), any());
+    }
+
+    private static void call(WebClient.Builder builder) {
+        builder.build().get().uri("https://ignored/").retrieve().toBodilessEntity().onErrorComplete().block();
+    }
+}
@@ -0,0 +1,33 @@
+package org.pulitko.aiprocessingservice.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KafkaProcessingConfigTest {
+    private final KafkaProcessingConfig config = new KafkaProcessingConfig();
+
+    @Test
+    void shouldDeriveParallelPollSizeFromMaxInFlight() {
+        config.setMaxInFlight(64);
+
+        assertThat(config.parallelPollRecords(3)).isEqualTo(22);
+        assertThat(config.parallelPollRecords(1)).isEqualTo(64);
+
+        config.getAutoscaling().setEnabled(true);
+        config.getAutoscaling().setMaxInFlight(128);
+        assertThat(config.parallelPollRecords(3)).isEqualTo(43);
+    }
+
+    @Test
+    void shouldRejectPollSizeBelowMaxInFlightPerConsumer() {
+        config.setMaxInFlight(64);
+        config.setParallelMaxPollRecords(1);
+
+        assertThatThrownBy(() -> config.parallelPollRecords(3)).isInstanceOf(IllegalStateException.class);
+
+        config.setParallelMaxPollRecords(30);
+        assertThat(config.parallelPollRecords(3)).isEqualTo(30);
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.*;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
 import org.pulitko.aiprocessingservice.util.AbstractDbIT;
 import org.pulitko.aiprocessingservice.util.TestData;
@@ -18,6 +19,7 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.test.utils.KafkaTestUtils;
+import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -75,7 +77,7 @@ class FullPipelineIT extends AbstractDbIT {
 
         when(promptService.getActivePrompt(anyString())).thenReturn(TestData.PROMPT);
         when(promptMapper.toAiDto(any())).thenReturn(TestData.PROMPT);
-        when(aiClient.analyze(anyString(), anyString(), anyString(), anyString())).thenReturn(aiResponse);
+        when(aiClient.analyzeAsync(anyString(), anyString(), anyString(), anyString())).thenReturn(Mono.just(new AiCompletion(aiResponse, null)));
 
         ProducerRecord<String, Object> record = new ProducerRecord<>(incomingTopic, incomingMessage);
         record.headers().add("x-sourceId", sourceId.getBytes(StandardCharsets.UTF_8));
@@ -6,6 +6,7 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
 import org.pulitko.aiprocessingservice.dto.Prompt;
 import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
@@ -14,6 +15,7 @@ import org.pulitko.aiprocessingservice.util.AbstractDbIT;
 import org.pulitko.aiprocessingservice.util.TestData;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
@@ -58,8 +60,8 @@ class KafkaFlowTest extends AbstractDbIT {
         doNothing().when(incomingMessageValidator).validate(any());
         when(promptMapper.toAiDto(any())).thenReturn(prompt);
         when(promptService.getActivePrompt(msg.ref())).thenReturn(prompt);
-        when(aiClient.analyze(any(), any(), anyString(),anyString())).thenReturn(aiResult);
-        when(aiResultValidator.validate(any(), any(), any())).thenReturn(aiResult);
+        when(aiClient.analyzeAsync(any(), any(), anyString(),anyString())).thenReturn(Mono.just(new AiCompletion(aiResult, null)));
+        when(aiResultValidator.validateTree(any(), any(), any())).thenAnswer(inv -> inv.getArgument(0));
 
         kafkaTemplate.executeInTransaction(t -> t.send(record));
 
@@ -0,0 +1,200 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.exception.AiCallNotPermittedException;
+import org.pulitko.aiprocessingservice.exception.AiRateLimitExceededException;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.service.AiBatchService;
+import org.pulitko.aiprocessingservice.service.AiProcessingService;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.util.backoff.FixedBackOff;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaIncomingHandlerBatchTest {
+    @Mock
+    private AiProcessingService aiProcessingService;
+    @Mock
+    private KafkaOutgoingPublisher kafkaOutgoingPublisher;
+    @Mock
+    private DlqPublisher dlqPublisher;
+    @Mock
+    private ConsumerRecordRecoverer recoverer;
+    @Mock
+    private Acknowledgment ack;
+    @Mock
+    private AiBatchService aiBatchService;
+    @Mock
+    private PartitionBackpressure backpressure;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics(meterRegistry, new PipelineMetricsConfig());
+    private KafkaIncomingHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new KafkaIncomingHandler(aiProcessingService, kafkaOutgoingPublisher, dlqPublisher,
+                recoverer, new FixedBackOff(100L, 1), new KeyOrderedDispatcher(), new KafkaProcessingConfig(), aiBatchService,
+                new PriorityLaneScheduler(new KafkaProcessingConfig(), new SimpleMeterRegistry()), pipelineMetrics,
+                backpressure);
+        lenient().when(kafkaOutgoingPublisher.sendAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+        lenient().when(dlqPublisher.publishAsync(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        lenient().doAnswer(inv -> {
+            inv.<PendingSends>getArgument(0).awaitAll(Duration.ofSeconds(1));
+            return null;
+        }).when(kafkaOutgoingPublisher).flush(any());
+    }
+
+    @Test
+    void shouldPublishEveryRecordAndAcknowledgeBatch() throws Exception {
+        when(aiProcessingService.processAsync(any())).thenReturn(Mono.just(objectMapper.readTree(SUCCESS_AI_RESULT)));
+
+        handler.handleBatch(List.of(record(0, INCOMING_MESSAGE), record(1, INCOMING_MESSAGE)), ack);
+
+        verify(kafkaOutgoingPublisher, times(2)).sendAsync(any());
+        verify(kafkaOutgoingPublisher).flush(any());
+        verify(ack).acknowledge();
+        verify(backpressure).admit(KafkaIncomingHandler.BATCH_LISTENER_ID, List.of(new TopicPartition("in", 0)));
+        verify(ack, never()).nack(anyInt(), any());
+    }
+
+    @Test
+    void shouldRouteBusinessErrorToDlqAndContinue() throws Exception {
+        when(aiProcessingService.processAsync(any()))
+                .thenReturn(Mono.error(new AiResultValidationException(REF_JAVACANDIDATE, "Not valid")))
+                .thenReturn(Mono.just(objectMapper.readTree(SUCCESS_AI_RESULT)));
+
+        handler.handleBatch(List.of(record(0, INCOMING_MESSAGE), record(1, INCOMING_MESSAGE)), ack);
+
+        verify(dlqPublisher, times(1)).publishAsync(any(), eq(SOURCE_ID_JAVACANDIDATE), contains("Validation failed"));
+        verify(kafkaOutgoingPublisher, times(1)).sendAsync(any());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    void shouldNackFromFirstRetryableFailure() throws Exception {
+        when(aiProcessingService.processAsync(argThat(m -> m != null && m.ref().equals(INVALID_REF_JAVACANDIDATE))))
+                .thenReturn(Mono.error(new RuntimeException("System error")));
+        when(aiProcessingService.processAsync(argThat(m -> m != null && m.ref().equals(REF_JAVACANDIDATE))))
+                .thenReturn(Mono.just(objectMapper.readTree(SUCCESS_AI_RESULT)));
+
+        handler.handleBatch(List.of(
+                record(0, INCOMING_MESSAGE),
+                record(1, INCOMING_MESSAGE_WITH_WRONG_REF),
+                record(2, INCOMING_MESSAGE)), ack);
+
+        verify(kafkaOutgoingPublisher, times(1)).sendAsync(any());
+        verify(ack).nack(1, Duration.ofMillis(100L));
+        verify(ack, never()).acknowledge();
+    }
+
+    @Test
+    void shouldRecoverRecordWhenRetriesAreExhausted() {
+        when(aiProcessingService.processAsync(any())).thenReturn(Mono.error(new RuntimeException("System error")));
+        ConsumerRecord<String, IncomingMessage> failing = record(0, INCOMING_MESSAGE);
+
+        handler.handleBatch(List.of(failing), ack);
+        handler.handleBatch(List.of(failing), ack);
+
+        verify(ack, times(1)).nack(0, Duration.ofMillis(100L));
+        verify(recoverer, times(1)).accept(eq(failing), any());
+        verify(ack, times(1)).acknowledge();
+    }
+
+    @Test
+    void shouldRedeliverWithoutSpendingRetriesWhenAiCallIsNotPermitted() {
+        when(aiProcessingService.processAsync(any()))
+                .thenReturn(Mono.error(new AiCallNotPermittedException("AI circuit breaker is open")));
+        ConsumerRecord<String, IncomingMessage> blocked = record(0, INCOMING_MESSAGE);
+
+        handler.handleBatch(List.of(blocked), ack);
+        handler.handleBatch(List.of(blocked), ack);
+        handler.handleBatch(List.of(blocked), ack);
+
+        verify(ack, times(3)).nack(0, Duration.ofMillis(1000L));
+        verify(recoverer, never()).accept(any(), any());
+    }
+
+    @Test
+    void shouldRedeliverWithoutSpendingRetriesWhenRateLimiterRejects() {
+        when(aiProcessingService.processAsync(any()))
+                .thenReturn(Mono.error(new AiRateLimitExceededException("AI rate limit: no capacity")));
+        ConsumerRecord<String, IncomingMessage> blocked = record(0, INCOMING_MESSAGE);
+
+        handler.handleBatch(List.of(blocked), ack);
+        handler.handleBatch(List.of(blocked), ack);
+        handler.handleBatch(List.of(blocked), ack);
+
+        verify(ack, times(3)).nack(0, Duration.ofMillis(1000L));
+        verify(recoverer, never()).accept(any(), any());
+    }
+
+    @Test
+    void shouldNotAcknowledgeBatchWhenPipelinedSendFails() throws Exception {
+        when(aiProcessingService.processAsync(any())).thenReturn(Mono.just(objectMapper.readTree(SUCCESS_AI_RESULT)));
+        when(kafkaOutgoingPublisher.sendAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        assertThatThrownBy(() -> handler.handleBatch(
+                List.of(record(0, INCOMING_MESSAGE), record(1, INCOMING_MESSAGE)), ack))
+                .isInstanceOf(KafkaException.class);
+
+        verify(ack, never()).acknowledge();
+    }
+
+    @Test
+    void shouldDeferBatchModeRefsWithoutCallingAi() {
+        when(aiBatchService.accepts(REF_JAVACANDIDATE)).thenReturn(true);
+
+        handler.handleBatch(List.of(record(0, INCOMING_MESSAGE)), ack);
+
+        verify(aiBatchService).enqueue(INCOMING_MESSAGE, SOURCE_ID_JAVACANDIDATE);
+        verify(aiProcessingService, never()).processAsync(any());
+        verify(kafkaOutgoingPublisher, never()).sendAsync(any());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    void shouldRecoverRecordWithoutSourceId() {
+        ConsumerRecord<String, IncomingMessage> noHeader = new ConsumerRecord<>("in", 0, 0L, null, INCOMING_MESSAGE);
+
+        handler.handleBatch(List.of(noHeader), ack);
+
+        verify(aiProcessingService, never()).processAsync(any());
+        verify(recoverer).accept(eq(noHeader), any());
+        verify(ack).acknowledge();
+    }
+
+    private static ConsumerRecord<String, IncomingMessage> record(long offset, IncomingMessage message) {
+        ConsumerRecord<String, IncomingMessage> record = new ConsumerRecord<>("in", 0, offset, null, message);
+        record.headers().add("x-sourceId", SOURCE_ID_JAVACANDIDATE.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
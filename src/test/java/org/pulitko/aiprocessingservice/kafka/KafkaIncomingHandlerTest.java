@@ -0,0 +1,187 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.service.AiBatchService;
+import org.pulitko.aiprocessingservice.service.AiProcessingService;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.util.backoff.FixedBackOff;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.pulitko.aiprocessingservice.kafka.KafkaIncomingHandler.SINGLE_LISTENER_ID;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaIncomingHandlerTest {
+    private static final TopicPartition PARTITION = new TopicPartition("incoming", 0);
+
+    @Mock
+    private AiProcessingService aiProcessingService;
+    @Mock
+    private KafkaOutgoingPublisher kafkaOutgoingPublisher;
+    @Mock
+    private DlqPublisher dlqPublisher;
+    @Mock
+    private ConsumerRecordRecoverer recoverer;
+    @Mock
+    private AiBatchService aiBatchService;
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+    @Mock
+    private MessageListenerContainer container;
+    @Mock
+    private DownstreamCapacity capacity;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KafkaProcessingConfig processingConfig = new KafkaProcessingConfig();
+    private KafkaIncomingHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        processingConfig.getBackpressure().setCheckInterval(Duration.ofMillis(20));
+        processingConfig.getBackpressure().setMaxWait(Duration.ofMillis(300));
+        lenient().when(registry.getListenerContainer(SINGLE_LISTENER_ID)).thenReturn(container);
+        // до pause-at не доходит: партиция ставится на паузу только после отказа
+        lenient().when(capacity.saturated(0.95)).thenReturn(null);
+        PartitionBackpressure backpressure = new PartitionBackpressure(registry, capacity, processingConfig, meterRegistry);
+        handler = new KafkaIncomingHandler(aiProcessingService, kafkaOutgoingPublisher, dlqPublisher,
+                recoverer, new FixedBackOff(100L, 1), new KeyOrderedDispatcher(), processingConfig, aiBatchService,
+                new PriorityLaneScheduler(processingConfig, meterRegistry),
+                new PipelineMetrics(meterRegistry, new PipelineMetricsConfig()), backpressure);
+    }
+
+    @Test
+    void shouldLeaveUnexplainedRejectionToContainerBackOff() {
+        when(aiProcessingService.process(any())).thenThrow(new RejectedExecutionException("Overloaded"));
+
+        assertThatThrownBy(this::handle).isInstanceOf(RejectedExecutionException.class);
+
+        verify(aiProcessingService, times(1)).process(any());
+        verify(container, never()).pausePartition(any());
+    }
+
+    @Test
+    void shouldRetryInPlaceOnceCapacityIsFreed() throws Exception {
+        when(capacity.saturated(0.75)).thenReturn(DownstreamCapacity.AI_IN_FLIGHT, DownstreamCapacity.AI_IN_FLIGHT,
+                null);
+        when(aiProcessingService.process(any()))
+                .thenThrow(new RejectedExecutionException("Overloaded"))
+                .thenReturn(objectMapper.readTree(SUCCESS_AI_RESULT));
+
+        handle();
+
+        verify(aiProcessingService, times(2)).process(any());
+        verify(kafkaOutgoingPublisher).send(any());
+        verify(container).pausePartition(PARTITION);
+    }
+
+    @Test
+    void shouldBoundAllRetriesOfRecordByOneDeadline() {
+        // ресурс то освобождается, то снова заполнен: каждое ожидание короткое, но их сумма ограничена max-wait
+        AtomicInteger checks = new AtomicInteger();
+        when(capacity.saturated(0.75)).thenAnswer(inv ->
+                checks.incrementAndGet() % 2 == 1 ? DownstreamCapacity.DB_POOL : null);
+        when(aiProcessingService.process(any())).thenThrow(new RejectedExecutionException("Overloaded"));
+
+        long startedAt = System.nanoTime();
+        assertThatThrownBy(this::handle).isInstanceOf(RejectedExecutionException.class);
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - startedAt).toMillis();
+
+        assertThat(elapsedMs).isBetween(300L, 2_000L);
+        verify(aiProcessingService, atLeast(2)).process(any());
+        verify(aiProcessingService, atMost(16)).process(any());
+    }
+
+    @Test
+    void shouldFillEveryLaneWithRecordsOfSeveralPolls() throws Exception {
+        // как в application.yml: 64 слота, interactive 56 (< 20000 символов), bulk 8
+        processingConfig.setMode(KafkaProcessingConfig.Mode.PARALLEL);
+        processingConfig.setMaxInFlight(64);
+        processingConfig.setLanes(List.of(
+                lane("interactive", 56, 8, 0, 20_000),
+                lane("bulk", 8, 1, 20_000, 0)));
+        int consumers = 3;
+        int pollRecords = processingConfig.parallelPollRecords(consumers);
+        PriorityLaneScheduler scheduler = new PriorityLaneScheduler(processingConfig, meterRegistry);
+        KafkaIncomingHandler parallel = new KafkaIncomingHandler(aiProcessingService, kafkaOutgoingPublisher,
+                dlqPublisher, recoverer, new FixedBackOff(100L, 1), new KeyOrderedDispatcher(), processingConfig,
+                aiBatchService, scheduler, new PipelineMetrics(meterRegistry, new PipelineMetricsConfig()),
+                new PartitionBackpressure(registry, capacity, processingConfig, meterRegistry));
+        Sinks.Empty<Void> aiResponds = Sinks.empty();
+        JsonNode result = objectMapper.readTree(SUCCESS_AI_RESULT);
+        when(aiProcessingService.processAsync(any())).thenReturn(aiResponds.asMono().then(Mono.just(result)));
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        // каждый консьюмер отдаёт по poll, пока записи предыдущих ещё в работе; в первом - 10 крупных
+        int offset = 0;
+        for (int consumer = 0; consumer < consumers; consumer++) {
+            for (int i = 0; i < pollRecords; i++, offset++) {
+                String payload = consumer == 0 && i < 10 ? "x".repeat(20_000) : "resume " + offset;
+                parallel.handleParallel(record(consumer, offset, payload), ack);
+            }
+        }
+
+        try {
+            await().atMost(5, TimeUnit.SECONDS).until(() -> scheduler.inFlight() == 64);
+            assertThat(meterRegistry.get("ai.lane.active").tag("lane", "interactive").gauge().value()).isEqualTo(56);
+            assertThat(meterRegistry.get("ai.lane.active").tag("lane", "bulk").gauge().value()).isEqualTo(8);
+            assertThat(scheduler.queued()).isEqualTo(consumers * pollRecords - 64);
+        } finally {
+            aiResponds.tryEmitEmpty();
+        }
+        verify(ack, timeout(5000).times(consumers * pollRecords)).acknowledge();
+        scheduler.shutdown();
+    }
+
+    private static ConsumerRecord<String, IncomingMessage> record(int partition, int offset, String payload) {
+        ConsumerRecord<String, IncomingMessage> record = new ConsumerRecord<>("incoming", partition, offset,
+                "key-" + offset, new IncomingMessage(TYPE_JAVACANDIDATE, REF_JAVACANDIDATE, payload));
+        record.headers().add("x-sourceId", ("src-" + offset).getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private static KafkaProcessingConfig.Lane lane(String name, int concurrency, int weight,
+                                                   int minPayloadChars, int maxPayloadChars) {
+        KafkaProcessingConfig.Lane lane = new KafkaProcessingConfig.Lane();
+        lane.setName(name);
+        lane.setConcurrency(concurrency);
+        lane.setWeight(weight);
+        lane.setMinPayloadChars(minPayloadChars);
+        lane.setMaxPayloadChars(maxPayloadChars);
+        return lane;
+    }
+
+    private void handle() {
+        handler.handle(INCOMING_MESSAGE, SOURCE_ID_JAVACANDIDATE, System.currentTimeMillis(),
+                PARTITION.topic(), PARTITION.partition());
+    }
+}
@@ -0,0 +1,80 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class KeyOrderedDispatcherTest {
+    private final KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher();
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void shouldKeepOrderWithinKey() {
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Void>> futures = IntStream.range(0, 50)
+                .mapToObj(i -> dispatcher.dispatch("same-key", () -> {
+                    sleep(i % 3);
+                    seen.add(i);
+                }))
+                .toList();
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(seen).containsExactlyElementsOf(IntStream.range(0, 50).boxed().toList());
+    }
+
+    @Test
+    void shouldRunDifferentKeysConcurrently() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Runnable task = () -> {
+            bothStarted.countDown();
+            try {
+                bothStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        CompletableFuture<Void> first = dispatcher.dispatch("key-1", task);
+        CompletableFuture<Void> second = dispatcher.dispatch("key-2", task);
+
+        assertThat(bothStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture.allOf(first, second).join();
+    }
+
+    @Test
+    void shouldContinueKeyAfterFailedTask() {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> failed = dispatcher.dispatch("key", () -> {
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<Void> next = dispatcher.dispatch("key", () -> seen.add("next"));
+
+        next.join();
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(seen).containsExactly("next");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.activeKeys() == 0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.kafka.ListenerAutoscaler.Decision;
+import org.pulitko.aiprocessingservice.kafka.ListenerAutoscaler.Signals;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+import static org.pulitko.aiprocessingservice.util.TestData.TYPE_JAVACANDIDATE;
+
+class ListenerAutoscalerTest {
+    private static final long T0 = 1_000_000L;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KafkaProcessingConfig processingConfig = new KafkaProcessingConfig();
+    private PriorityLaneScheduler scheduler;
+    private ListenerAutoscaler autoscaler;
+
+    @BeforeEach
+    void setUp() {
+        processingConfig.setMode(KafkaProcessingConfig.Mode.PARALLEL);
+        processingConfig.setMaxInFlight(32);
+        KafkaProcessingConfig.Autoscaling config = processingConfig.getAutoscaling();
+        config.setEnabled(true);
+        config.setMinInFlight(8);
+        config.setMaxInFlight(48);
+        config.setLagHigh(100);
+        config.setLagLow(10);
+        config.setMinSamples(10);
+        config.setCooldown(Duration.ofSeconds(30));
+        config.setScaleDownCooldown(Duration.ofMinutes(2));
+        scheduler = new PriorityLaneScheduler(processingConfig, meterRegistry);
+        autoscaler = new ListenerAutoscaler(scheduler, mock(KafkaListenerEndpointRegistry.class),
+                meterRegistry, processingConfig, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void shouldStepUpOnSaturatedBacklogAndHoldDuringCooldown() {
+        Decision decision = autoscaler.evaluate(signals(500, 32, 50, 800, 0), T0);
+
+        assertThat(decision.from()).isEqualTo(32);
+        assertThat(decision.to()).isEqualTo(40);
+        assertThat(decision.reason()).isEqualTo("lag");
+        assertThat(autoscaler.evaluate(signals(500, 40, 50, 800, 0), T0 + 10_000)).isNull();
+        assertThat(autoscaler.evaluate(signals(500, 40, 50, 800, 0), T0 + 30_000).to()).isEqualTo(48);
+        // верхняя граница
+        assertThat(autoscaler.evaluate(signals(500, 48, 50, 800, 0), T0 + 60_000)).isNull();
+        assertThat(scheduler.maxInFlight()).isEqualTo(48);
+        assertThat(meterRegistry.get("ai.autoscaling.capacity").gauge().value()).isEqualTo(48.0);
+        assertThat(meterRegistry.get("ai.autoscaling.decisions").tags("direction", "up", "reason", "lag")
+                .counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotGrowWhileSlotsAreFree() {
+        assertThat(autoscaler.evaluate(signals(500, 12, 50, 800, 0), T0)).isNull();
+        assertThat(scheduler.maxInFlight()).isEqualTo(32);
+    }
+
+    @Test
+    void shouldBackOffOnErrorsAndLatencyOnlyWithEnoughSamples() {
+        assertThat(autoscaler.evaluate(signals(50, 32, 5, 800, 0.8), T0)).isNull();
+
+        Decision errors = autoscaler.evaluate(signals(500, 32, 50, 800, 0.5), T0);
+        assertThat(errors.to()).isEqualTo(24);
+        assertThat(errors.reason()).isEqualTo("error_rate");
+
+        Decision latency = autoscaler.evaluate(signals(500, 24, 50, 30_000, 0), T0 + 30_000);
+        assertThat(latency.to()).isEqualTo(18);
+        assertThat(latency.reason()).isEqualTo("latency");
+    }
+
+    @Test
+    void shouldShrinkIdleCapacitySlowlyDownToMinimum() {
+        autoscaler.evaluate(signals(500, 32, 50, 800, 0), T0);
+        assertThat(autoscaler.evaluate(signals(0, 2, 50, 800, 0), T0 + 60_000)).isNull();
+
+        assertThat(autoscaler.evaluate(signals(0, 2, 50, 800, 0), T0 + 120_000).to()).isEqualTo(36);
+        // между порогами лага лимит не трогается
+        assertThat(autoscaler.evaluate(signals(50, 2, 50, 800, 0), T0 + 400_000)).isNull();
+        for (int i = 1; i <= 10; i++) {
+            autoscaler.evaluate(signals(0, 0, 0, 0, 0), T0 + 120_000 + i * 120_000L);
+        }
+        assertThat(scheduler.maxInFlight()).isEqualTo(8);
+    }
+
+    @Test
+    void shouldGrowLanesWithShippedConfigUpToAiMaxInFlight() {
+        scheduler.shutdown();
+        processingConfig.setMaxInFlight(64);
+        processingConfig.setLanes(List.of(
+                lane("interactive", 56, 8, 0, 20_000),
+                lane("bulk", 8, 1, 20_000, 0)));
+        processingConfig.getAutoscaling().setMaxInFlight(128);
+        processingConfig.getBackpressure().setAiMaxInFlight(72);
+        scheduler = new PriorityLaneScheduler(processingConfig, meterRegistry);
+        autoscaler = new ListenerAutoscaler(scheduler, mock(KafkaListenerEndpointRegistry.class),
+                meterRegistry, processingConfig, 1);
+        Executor interactive = scheduler.laneFor(new IncomingMessage(TYPE_JAVACANDIDATE, REF_JAVACANDIDATE, "resume"));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 100; i++) {
+                interactive.execute(() -> awaitLatch(release));
+            }
+            await().atMost(2, TimeUnit.SECONDS).until(() -> scheduler.inFlight() == 56);
+
+            // 56 из 64: bulk пуст, но все слоты interactive заняты
+            Decision decision = autoscaler.evaluate(new Signals(500, scheduler.inFlight(), scheduler.usableSlots(),
+                    50, 800, 0), T0);
+            assertThat(decision.to()).isEqualTo(72);
+            // квота interactive выросла пропорционально: 56 * 72 / 64
+            await().atMost(2, TimeUnit.SECONDS).until(() -> scheduler.inFlight() == 63);
+            // выше ai-max-in-flight партиции встали бы на паузу
+            assertThat(autoscaler.evaluate(new Signals(500, scheduler.inFlight(), scheduler.usableSlots(),
+                    50, 800, 0), T0 + 30_000)).isNull();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldNotGrowPastWhatTheConsumersPoll() {
+        processingConfig.setParallelMaxPollRecords(12);
+        autoscaler = new ListenerAutoscaler(scheduler, mock(KafkaListenerEndpointRegistry.class),
+                meterRegistry, processingConfig, 3);
+
+        assertThat(autoscaler.evaluate(signals(500, 32, 50, 800, 0), T0).to()).isEqualTo(36);
+        assertThat(autoscaler.evaluate(signals(500, 36, 50, 800, 0), T0 + 30_000)).isNull();
+        assertThat(autoscaler.state()).containsEntry("pollCap", 36).containsEntry("maxInFlightBound", 36);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldExposeDecisionsNewestFirst() {
+        autoscaler.evaluate(signals(500, 32, 50, 800, 0), T0);
+        autoscaler.evaluate(signals(500, 40, 50, 800, 0.9), T0 + 30_000);
+
+        List<Decision> decisions = (List<Decision>) autoscaler.state().get("decisions");
+        assertThat(decisions).extracting(Decision::reason).containsExactly("error_rate", "lag");
+        assertThat(autoscaler.state()).containsEntry("maxInFlight", 30)
+                .containsEntry("lastSignals", signals(500, 40, 50, 800, 0.9));
+    }
+
+    // полосы не ограничивают: доступны все слоты лимита
+    private static Signals signals(long backlog, int inFlight, long aiCalls, double aiLatencyMs, double errorRate) {
+        return new Signals(backlog, inFlight, Integer.MAX_VALUE, aiCalls, aiLatencyMs, errorRate);
+    }
+
+    private static KafkaProcessingConfig.Lane lane(String name, int concurrency, int weight,
+                                                   int minPayloadChars, int maxPayloadChars) {
+        KafkaProcessingConfig.Lane lane = new KafkaProcessingConfig.Lane();
+        lane.setName(name);
+        lane.setConcurrency(concurrency);
+        lane.setWeight(weight);
+        lane.setMinPayloadChars(minPayloadChars);
+        lane.setMaxPayloadChars(maxPayloadChars);
+        return lane;
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
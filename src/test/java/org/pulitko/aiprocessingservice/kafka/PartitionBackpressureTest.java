@@ -0,0 +1,101 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.pulitko.aiprocessingservice.kafka.KafkaIncomingHandler.SINGLE_LISTENER_ID;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionBackpressureTest {
+    private static final TopicPartition PARTITION = new TopicPartition("in", 1);
+
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+    @Mock
+    private MessageListenerContainer container;
+    @Mock
+    private DownstreamCapacity capacity;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KafkaProcessingConfig processingConfig = new KafkaProcessingConfig();
+    private PartitionBackpressure backpressure;
+
+    @BeforeEach
+    void setUp() {
+        processingConfig.getBackpressure().setCheckInterval(Duration.ofMillis(10));
+        processingConfig.getBackpressure().setMaxWait(Duration.ofMillis(200));
+        lenient().when(registry.getListenerContainer(SINGLE_LISTENER_ID)).thenReturn(container);
+        backpressure = new PartitionBackpressure(registry, capacity, processingConfig, meterRegistry);
+    }
+
+    @Test
+    void shouldPauseOnlyWhenSaturated() {
+        when(capacity.saturated(0.95)).thenReturn(null, DownstreamCapacity.AI_IN_FLIGHT);
+
+        backpressure.admit(SINGLE_LISTENER_ID, "in", 1);
+        verify(container, never()).pausePartition(any());
+
+        backpressure.admit(SINGLE_LISTENER_ID, "in", 1);
+        backpressure.admit(SINGLE_LISTENER_ID, List.of(PARTITION));
+        verify(container, times(1)).pausePartition(PARTITION);
+        assertThat(meterRegistry.get("ai.backpressure.paused.partitions").gauge().value()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("ai.backpressure.pauses").tag("resource", "ai_in_flight").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldResumeOnceBelowResumeThreshold() {
+        when(capacity.saturated(0.95)).thenReturn(DownstreamCapacity.PRODUCER_BUFFER);
+        when(capacity.saturated(0.75)).thenReturn(DownstreamCapacity.PRODUCER_BUFFER, (String) null);
+        backpressure.admit(SINGLE_LISTENER_ID, "in", 1);
+
+        backpressure.resumeIfFree();
+        verify(container, never()).resumePartition(any());
+        assertThat(meterRegistry.get("ai.backpressure.pause.current").gauge().value()).isPositive();
+
+        backpressure.resumeIfFree();
+        verify(container).resumePartition(PARTITION);
+        assertThat(backpressure.pausedPartitions()).isZero();
+        assertThat(meterRegistry.get("ai.backpressure.pause.duration").tag("resource", "producer_buffer")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ai.backpressure.pause.current").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldWaitForCapacityWithPartitionPaused() {
+        when(capacity.saturated(0.75)).thenReturn(DownstreamCapacity.DB_POOL, DownstreamCapacity.DB_POOL,
+                DownstreamCapacity.DB_POOL, null);
+
+        assertThat(backpressure.awaitCapacity(SINGLE_LISTENER_ID, "in", 1, backpressure.waitDeadline())).isTrue();
+        verify(container).pausePartition(PARTITION);
+        verify(container, never()).resumePartition(any());
+    }
+
+    @Test
+    void shouldGiveUpWaitingAfterMaxWait() {
+        when(capacity.saturated(0.75)).thenReturn(DownstreamCapacity.DB_POOL);
+
+        assertThat(backpressure.awaitCapacity(SINGLE_LISTENER_ID, "in", 1, backpressure.waitDeadline())).isFalse();
+        assertThat(backpressure.pausedPartitions()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotWaitWhenNoResourceExplainsRejection() {
+        assertThat(backpressure.awaitCapacity(SINGLE_LISTENER_ID, "in", 1, backpressure.waitDeadline())).isFalse();
+        verify(container, never()).pausePartition(any());
+    }
+}
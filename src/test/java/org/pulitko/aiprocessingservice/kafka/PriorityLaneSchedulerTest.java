@@ -0,0 +1,109 @@
+package org.pulitko.aiprocessingservice.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.KafkaProcessingConfig;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+class PriorityLaneSchedulerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PriorityLaneScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void shouldSelectLaneByTypeRefAndPayloadSize() {
+        scheduler = scheduler(64, lane("bulk", 8, 1, 100), lane("interactive", 8, 3, 0));
+        IncomingMessage large = new IncomingMessage(TYPE_JAVACANDIDATE, REF_JAVACANDIDATE, "x".repeat(200));
+
+        assertThat(scheduler.laneFor(large)).isSameAs(scheduler.laneFor(
+                new IncomingMessage("pdf", REF_JAVACANDIDATE, "y".repeat(150))));
+        assertThat(scheduler.laneFor(INCOMING_MESSAGE)).isNotSameAs(scheduler.laneFor(large));
+        assertThat(scheduler.laneFor(new IncomingMessage("other", REF_JAVACANDIDATE, "small")))
+                .isSameAs(scheduler.laneFor(null));
+    }
+
+    @Test
+    void shouldRespectLaneConcurrency() throws Exception {
+        scheduler = scheduler(64, lane("bulk", 2, 1, 100));
+        Executor bulk = scheduler.laneFor(new IncomingMessage(TYPE_JAVACANDIDATE, REF_JAVACANDIDATE, "x".repeat(200)));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            bulk.execute(() -> {
+                running.incrementAndGet();
+                awaitLatch(release);
+            });
+        }
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> running.get() == 2);
+        assertThat(meterRegistry.get("ai.lane.queue.depth").tag("lane", "bulk").gauge().value()).isEqualTo(3.0);
+        release.countDown();
+        await().atMost(2, TimeUnit.SECONDS).until(() -> running.get() == 5 && scheduler.inFlight() == 0);
+        assertThat(meterRegistry.get("ai.lane.wait").tag("lane", "bulk").timer().count()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldShareSlotsByWeightWhileKeepingHeavyLaneProgressing() throws Exception {
+        scheduler = scheduler(1, lane("bulk", 8, 1, 100), lane("interactive", 8, 3, 0));
+        Executor bulk = scheduler.laneFor(new IncomingMessage(TYPE_JAVACANDIDATE, REF_JAVACANDIDATE, "x".repeat(200)));
+        Executor interactive = scheduler.laneFor(INCOMING_MESSAGE);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        bulk.execute(() -> awaitLatch(gate));
+        for (int i = 0; i < 4; i++) {
+            bulk.execute(() -> order.add("bulk"));
+            interactive.execute(() -> order.add("interactive"));
+        }
+        gate.countDown();
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> order.size() == 8);
+        // 3:1 - из первых четырёх слотов bulk получает ровно один
+        assertThat(order.subList(0, 4)).containsOnlyOnce("bulk");
+    }
+
+    private PriorityLaneScheduler scheduler(int maxInFlight, KafkaProcessingConfig.Lane... lanes) {
+        KafkaProcessingConfig config = new KafkaProcessingConfig();
+        config.setMaxInFlight(maxInFlight);
+        config.setLanes(List.of(lanes));
+        return new PriorityLaneScheduler(config, meterRegistry);
+    }
+
+    private static KafkaProcessingConfig.Lane lane(String name, int concurrency, int weight, int minPayloadChars) {
+        KafkaProcessingConfig.Lane lane = new KafkaProcessingConfig.Lane();
+        lane.setName(name);
+        lane.setConcurrency(concurrency);
+        lane.setWeight(weight);
+        lane.setMinPayloadChars(minPayloadChars);
+        if (minPayloadChars == 0) {
+            lane.setTypes(Set.of(TYPE_JAVACANDIDATE));
+        }
+        return lane;
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
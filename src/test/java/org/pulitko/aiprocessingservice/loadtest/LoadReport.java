@@ -0,0 +1,122 @@
+package org.pulitko.aiprocessingservice.loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Строка дописывается в CSV, чтобы прогоны с разными настройками шли рядом
+class LoadReport {
+    private final Map<String, String> settings = new LinkedHashMap<>();
+    private final List<Long> latenciesMillis = new ArrayList<>();
+    private final List<Long> lagSamples = new ArrayList<>();
+    private long sent;
+    private long published;
+    private long deadLettered;
+    private long firstSentAt = Long.MAX_VALUE;
+    private long lastCompletedAt;
+
+    synchronized LoadReport setting(String name, Object value) {
+        settings.put(name, String.valueOf(value));
+        return this;
+    }
+
+    synchronized void sent(long timestamp) {
+        sent++;
+        firstSentAt = Math.min(firstSentAt, timestamp);
+    }
+
+    synchronized void completed(long sentAt, long completedAt, boolean dlq) {
+        if (dlq) {
+            deadLettered++;
+        } else {
+            published++;
+            latenciesMillis.add(completedAt - sentAt);
+        }
+        lastCompletedAt = Math.max(lastCompletedAt, completedAt);
+    }
+
+    synchronized void lag(long totalLag) {
+        lagSamples.add(totalLag);
+    }
+
+    synchronized long completed() {
+        return published + deadLettered;
+    }
+
+    // сообщений в секунду от первой отправки до последнего результата
+    synchronized double throughput() {
+        long elapsed = lastCompletedAt - firstSentAt;
+        return elapsed <= 0 ? 0 : completed() * 1000.0 / elapsed;
+    }
+
+    synchronized long latencyPercentile(double percentile) {
+        if (latenciesMillis.isEmpty()) {
+            return 0;
+        }
+        long[] sorted = latenciesMillis.stream().mapToLong(Long::longValue).sorted().toArray();
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    synchronized long maxLag() {
+        return lagSamples.stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    synchronized double averageLag() {
+        return lagSamples.stream().mapToLong(Long::longValue).average().orElse(0);
+    }
+
+    synchronized Map<String, String> results() {
+        Map<String, String> results = new LinkedHashMap<>();
+        results.put("sent", String.valueOf(sent));
+        results.put("published", String.valueOf(published));
+        results.put("dlq", String.valueOf(deadLettered));
+        results.put("throughput_per_s", String.format("%.1f", throughput()));
+        results.put("p50_ms", String.valueOf(latencyPercentile(0.50)));
+        results.put("p95_ms", String.valueOf(latencyPercentile(0.95)));
+        results.put("p99_ms", String.valueOf(latencyPercentile(0.99)));
+        results.put("max_ms", String.valueOf(latencyPercentile(1.0)));
+        results.put("lag_avg", String.format("%.1f", averageLag()));
+        results.put("lag_max", String.valueOf(maxLag()));
+        return results;
+    }
+
+    synchronized String table() {
+        Map<String, String> all = new LinkedHashMap<>(settings);
+        all.putAll(results());
+        int width = all.keySet().stream().mapToInt(String::length).max().orElse(0);
+        return all.entrySet().stream()
+                .map(e -> String.format("  %-" + width + "s  %s", e.getKey(), e.getValue()))
+                .collect(Collectors.joining("\n", "Load test report\n", "\n"));
+    }
+
+    // Заголовок пишется только в новый файл
+    synchronized void appendCsv(Path file) {
+        Map<String, String> all = new LinkedHashMap<>(settings);
+        all.putAll(results());
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            List<String> lines = Files.exists(file)
+                    ? List.of(csvLine(all.values()))
+                    : List.of(csvLine(all.keySet()), csvLine(all.values()));
+            Files.write(file, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String csvLine(Collection<String> values) {
+        return values.stream()
+                .map(v -> v.contains(",") ? "\"" + v + "\"" : v)
+                .collect(Collectors.joining(","));
+    }
+}
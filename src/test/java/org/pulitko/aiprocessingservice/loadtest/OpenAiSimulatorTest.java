@@ -0,0 +1,85 @@
+package org.pulitko.aiprocessingservice.loadtest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.client.OpenAiClient;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
+import org.pulitko.aiprocessingservice.ai.ratelimit.OpenAiRateLimiter;
+import org.pulitko.aiprocessingservice.config.AiHttpProperties;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.pulitko.aiprocessingservice.util.OpenAiSimulator;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+
+class OpenAiSimulatorTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JsonSchemaCache schemaCache = new JsonSchemaCache();
+    private final AiResultValidator validator = new AiResultValidator(schemaCache,
+            new PipelineMetrics(meterRegistry, new PipelineMetricsConfig()));
+    private final OpenAiSimulator simulator = new OpenAiSimulator().latency(Duration.ofMillis(5), Duration.ofMillis(20));
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void shouldAnswerWithContentMatchingRequestSchema() throws IOException {
+        String schema = candidateSchema();
+
+        AiCompletion completion = client(false).analyzeAsync("system", "payload", schema, REF_JAVACANDIDATE)
+                .block(Duration.ofSeconds(5));
+
+        validator.validate(completion.content(), schema, REF_JAVACANDIDATE);
+        assertThat(completion.usage().totalTokens()).isPositive();
+        assertThat(simulator.requests()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStreamSchemaConformingContent() throws IOException {
+        String schema = candidateSchema();
+
+        AiCompletion completion = client(true).analyzeAsync("system", "payload", schema, REF_JAVACANDIDATE)
+                .block(Duration.ofSeconds(5));
+
+        validator.validate(completion.content(), schema, REF_JAVACANDIDATE);
+    }
+
+    @Test
+    void shouldThrottleOverRequestLimit() throws IOException {
+        simulator.rateLimits(1, 1_000_000);
+        String schema = candidateSchema();
+        OpenAiClient client = client(false);
+        client.analyzeAsync("system", "payload", schema, REF_JAVACANDIDATE).block(Duration.ofSeconds(5));
+
+        assertThatThrownBy(() -> client.analyzeAsync("system", "payload", schema, REF_JAVACANDIDATE)
+                .block(Duration.ofSeconds(1)))
+                .isInstanceOf(RuntimeException.class);
+        assertThat(simulator.throttled()).isPositive();
+    }
+
+    private OpenAiClient client(boolean streaming) {
+        OpenAiRateLimiter rateLimiter = new OpenAiRateLimiter(meterRegistry, false, 0, 0, Duration.ofSeconds(1), 1000);
+        return new OpenAiClient(WebClient.builder(), simulator.baseUrl(), "test-key", meterRegistry, rateLimiter,
+                new AiRequestFactory("gpt-4.1-nano", 0.1, schemaCache), streaming, new AiHttpProperties());
+    }
+
+    private String candidateSchema() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/benchmark/candidate_java.schema.json")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.pulitko.aiprocessingservice.loadtest;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.pulitko.aiprocessingservice.dto.IncomingMessage;
+import org.pulitko.aiprocessingservice.util.OpenAiSimulator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.kafka.KafkaContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Один прогон - один набор настроек, результат дописывается в target/loadtest/report.csv:
+//   mvn test -Ploadtest -Dloadtest.concurrency=6 -Dloadtest.max-poll-records=50 -Dloadtest.transactions=false
+// Настройки и значения по умолчанию - в system properties loadtest.* ниже
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class PipelineLoadIT {
+    private static final String REF = "candidate_java";
+    private static final String UNKNOWN_REF = "load_unknown_ref";
+    private static final String INCOMING_TOPIC = "ai.processing.raw";
+    private static final String SMALL_PAYLOAD =
+            "Java developer, 4 years of commercial experience, Spring Boot, Kafka, PostgreSQL. Contact: dev@example.com. ";
+
+    @Container
+    static final PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:16");
+
+    @Container
+    static final KafkaContainer kafka =
+            new KafkaContainer(
+                    DockerImageName.parse("apache/kafka:3.7.0"))
+                            .withEnv("KAFKA_TRANSACTION_STATE_LOG_REPLICATION_FACTOR", "1")
+                            .withEnv("KAFKA_TRANSACTION_STATE_LOG_MIN_ISR", "1")
+                            .withEnv("KAFKA_OFFSETS_TOPIC_REPLICATION_FACTOR", "1");
+
+    static final OpenAiSimulator simulator = new OpenAiSimulator()
+            .latency(Duration.ofMillis(longSetting("ai.latency-median-ms", 300)),
+                    Duration.ofMillis(longSetting("ai.latency-p99-ms", 2000)))
+            .errors(doubleSetting("ai.throttle-rate", 0.01), doubleSetting("ai.error-rate", 0.01))
+            .rateLimits(longSetting("ai.rpm", 10_000), longSetting("ai.tpm", 2_000_000));
+
+    static {
+        postgres.start();
+        kafka.start();
+        // партиции создаются заранее: автосоздание дало бы одну и concurrency > 1 простаивала бы
+        try (AdminClient admin = AdminClient.create(Map.of("bootstrap.servers", kafka.getBootstrapServers()))) {
+            admin.createTopics(List.of(new NewTopic(INCOMING_TOPIC, (int) longSetting("partitions", 6), (short) 1)))
+                    .all().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot create incoming topic", e);
+        }
+    }
+
+    @Value("${spring.kafka.topics.outgoing}")
+    private String outgoingTopic;
+
+    @Value("${spring.kafka.topics.processing-dlq}")
+    private String dlqTopic;
+
+    @Value("${spring.kafka.groups-id.consumer}")
+    private String consumerGroup;
+
+    @DynamicPropertySource
+    static void loadProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.kafka.topics.incoming", () -> INCOMING_TOPIC);
+
+        boolean transactions = Boolean.parseBoolean(setting("transactions", "true"));
+        registry.add("spring.kafka.producer.transaction-id-prefix",
+                () -> transactions ? "tx-" + UUID.randomUUID() + "-" : "");
+        registry.add("spring.kafka.producer.properties.transaction.timeout.ms", () -> "30000");
+        registry.add("spring.kafka.consumer.isolation-level",
+                () -> transactions ? "read_committed" : "read_uncommitted");
+        registry.add("spring.kafka.consumer.concurrency", () -> setting("concurrency", "3"));
+        registry.add("spring.kafka.consumer.max-poll-records", () -> setting("max-poll-records", "1"));
+        registry.add("spring.kafka.processing.mode", () -> setting("mode", "single"));
+
+        registry.add("ai.api.base-url", simulator::baseUrl);
+        registry.add("ai.api.key", () -> "load-test");
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        simulator.close();
+    }
+
+    @Test
+    void shouldSustainConfiguredLoad() throws Exception {
+        long messages = longSetting("messages", 2000);
+        long rate = longSetting("rate", 50);
+        Duration timeout = Duration.ofSeconds(longSetting("timeout-s", 600));
+        List<MixEntry> mix = parseMix(setting("mix", "small:90,large:9,unknown-ref:1"));
+
+        LoadReport report = new LoadReport()
+                .setting("mode", setting("mode", "single"))
+                .setting("concurrency", setting("concurrency", "3"))
+                .setting("max_poll_records", setting("max-poll-records", "1"))
+                .setting("transactions", setting("transactions", "true"))
+                .setting("partitions", longSetting("partitions", 6))
+                .setting("messages", messages)
+                .setting("rate", rate)
+                .setting("mix", setting("mix", "small:90,large:9,unknown-ref:1"))
+                .setting("ai_median_ms", longSetting("ai.latency-median-ms", 300))
+                .setting("ai_p99_ms", longSetting("ai.latency-p99-ms", 2000))
+                .setting("ai_throttle_rate", doubleSetting("ai.throttle-rate", 0.01))
+                .setting("ai_error_rate", doubleSetting("ai.error-rate", 0.01));
+
+        Map<String, Long> sentAt = new ConcurrentHashMap<>();
+        ScheduledExecutorService lagSampler = Executors.newSingleThreadScheduledExecutor();
+        try (AdminClient admin = AdminClient.create(Map.of("bootstrap.servers", kafka.getBootstrapServers()));
+             Consumer<String, String> results = resultConsumer();
+             Producer<String, Object> producer = loadProducer()) {
+            lagSampler.scheduleAtFixedRate(() -> report.lag(totalLag(admin)), 1, 1, TimeUnit.SECONDS);
+
+            Thread driver = Thread.ofVirtual().start(() -> send(producer, messages, rate, mix, sentAt, report));
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (report.completed() < messages && System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, String> record : results.poll(Duration.ofMillis(200))) {
+                    Long sent = sentAt.remove(sourceId(record));
+                    if (sent != null) {
+                        report.completed(sent, record.timestamp(), record.topic().equals(dlqTopic));
+                    }
+                }
+            }
+            driver.join();
+        } finally {
+            lagSampler.shutdownNow();
+        }
+
+        report.setting("ai_requests", simulator.requests())
+                .setting("ai_throttled", simulator.throttled())
+                .setting("ai_failed", simulator.failed());
+        System.out.println(report.table());
+        report.appendCsv(Path.of("target", "loadtest", "report.csv"));
+
+        assertThat(report.completed()).as("records that reached outgoing or DLQ").isEqualTo(messages);
+    }
+
+    // Равномерный поток с заданной частотой, вид сообщения выбирается по весам смеси
+    private void send(Producer<String, Object> producer, long messages, long rate, List<MixEntry> mix,
+                      Map<String, Long> sentAt, LoadReport report) {
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long next = System.nanoTime();
+        for (long i = 0; i < messages; i++) {
+            if (intervalNanos > 0) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                next += intervalNanos;
+            }
+            String sourceId = "load-" + i;
+            ProducerRecord<String, Object> record = new ProducerRecord<>(INCOMING_TOPIC, sourceId, message(i, pick(mix)));
+            record.headers().add("x-sourceId", sourceId.getBytes(StandardCharsets.UTF_8));
+            long now = System.currentTimeMillis();
+            sentAt.put(sourceId, now);
+            report.sent(now);
+            producer.send(record);
+        }
+        producer.flush();
+    }
+
+    // Номер в тексте делает payload уникальным, иначе кэш и склейка одинаковых запросов исказят замер
+    private static IncomingMessage message(long index, String kind) {
+        return switch (kind) {
+            case "large" -> new IncomingMessage("txt", REF, "#" + index + " " + SMALL_PAYLOAD.repeat(300));
+            case "unknown-ref" -> new IncomingMessage("txt", UNKNOWN_REF, "#" + index + " " + SMALL_PAYLOAD);
+            default -> new IncomingMessage("txt", REF, "#" + index + " " + SMALL_PAYLOAD.repeat(5));
+        };
+    }
+
+    private static String pick(List<MixEntry> mix) {
+        int total = mix.stream().mapToInt(MixEntry::weight).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (MixEntry entry : mix) {
+            roll -= entry.weight();
+            if (roll < 0) {
+                return entry.kind();
+            }
+        }
+        return mix.get(0).kind();
+    }
+
+    private static List<MixEntry> parseMix(String mix) {
+        List<MixEntry> entries = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] kindAndWeight = part.trim().split(":");
+            entries.add(new MixEntry(kindAndWeight[0], kindAndWeight.length > 1 ? Integer.parseInt(kindAndWeight[1]) : 1));
+        }
+        return entries;
+    }
+
+    // Сумма по партициям входного топика: конец лога минус закоммиченный offset группы
+    private long totalLag(AdminClient admin) {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(consumerGroup)
+                    .partitionsToOffsetAndMetadata().get(5, TimeUnit.SECONDS);
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            for (int p = 0; p < longSetting("partitions", 6); p++) {
+                latest.put(new TopicPartition(INCOMING_TOPIC, p), OffsetSpec.latest());
+            }
+            long lag = 0;
+            for (var end : admin.listOffsets(latest).all().get(5, TimeUnit.SECONDS).entrySet()) {
+                OffsetAndMetadata offset = committed.get(end.getKey());
+                lag += end.getValue().offset() - (offset == null ? 0 : offset.offset());
+            }
+            return lag;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException | TimeoutException e) {
+            return 0;
+        }
+    }
+
+    private Consumer<String, String> resultConsumer() {
+        Map<String, Object> props = KafkaTestUtils.consumerProps(
+                kafka.getBootstrapServers(), "load-test-results", "true");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+                props, new StringDeserializer(), new StringDeserializer()).createConsumer();
+        consumer.subscribe(List.of(outgoingTopic, dlqTopic));
+        return consumer;
+    }
+
+    private static Producer<String, Object> loadProducer() {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        return new KafkaProducer<>(props, new StringSerializer(), new JsonSerializer<>());
+    }
+
+    private static String sourceId(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader("x-sourceId");
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : record.key();
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    private static long longSetting(String name, long defaultValue) {
+        return Long.parseLong(setting(name, String.valueOf(defaultValue)));
+    }
+
+    private static double doubleSetting(String name, double defaultValue) {
+        return Double.parseDouble(setting(name, String.valueOf(defaultValue)));
+    }
+
+    private record MixEntry(String kind, int weight) {
+    }
+}
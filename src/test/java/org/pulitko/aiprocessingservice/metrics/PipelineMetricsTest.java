@@ -0,0 +1,145 @@
+package org.pulitko.aiprocessingservice.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Outcome;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics.Stage;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsProperties;
+import org.springframework.boot.actuate.autoconfigure.metrics.PropertiesMeterFilter;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineMetricsTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldPreRegisterConfiguredRefsForEveryStage() {
+        PipelineMetricsConfig config = new PipelineMetricsConfig();
+        config.setRefs(Set.of("candidate_java"));
+
+        new PipelineMetrics(meterRegistry, config);
+
+        for (Stage stage : Stage.values()) {
+            assertThat(meterRegistry.find("pipeline.stage.duration")
+                    .tags("stage", stage.tag(), "ref", "candidate_java").timer()).isNotNull();
+            assertThat(meterRegistry.find("pipeline.inflight").tag("stage", stage.tag()).gauge()).isNotNull();
+        }
+        assertThat(meterRegistry.find("pipeline.e2e.latency").tags("ref", "candidate_java", "outcome", "dlq").timer())
+                .isNotNull();
+    }
+
+    @Test
+    void shouldSendUnregisteredAndOverflowRefsToOther() {
+        PipelineMetricsConfig config = new PipelineMetricsConfig();
+        config.setMaxRefs(1);
+        PipelineMetrics metrics = new PipelineMetrics(meterRegistry, config);
+
+        metrics.time(Stage.PROMPT_LOOKUP, "unknown", () -> { });
+        metrics.register("first");
+        metrics.register("second");
+        metrics.time(Stage.PROMPT_LOOKUP, "first", () -> { });
+        metrics.time(Stage.PROMPT_LOOKUP, "second", () -> { });
+
+        assertThat(meterRegistry.find("pipeline.stage.duration").tag("ref", "unknown").timer()).isNull();
+        assertThat(meterRegistry.find("pipeline.stage.duration").tag("ref", "second").timer()).isNull();
+        assertThat(metrics.timer(Stage.PROMPT_LOOKUP, "first").count()).isEqualTo(1);
+        assertThat(metrics.timer(Stage.PROMPT_LOOKUP, PipelineMetrics.OTHER_REF).count()).isEqualTo(2);
+        assertThat(meterRegistry.get("pipeline.refs.overflow").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotExceedMaxRefsWhenRefsRegisterConcurrently() {
+        PipelineMetricsConfig config = new PipelineMetricsConfig();
+        config.setMaxRefs(5);
+        PipelineMetrics metrics = new PipelineMetrics(meterRegistry, config);
+
+        IntStream.range(0, 200).parallel().forEach(i -> metrics.register("ref-" + i));
+
+        long refs = meterRegistry.find("pipeline.stage.duration").tag("stage", Stage.AI_CALL.tag()).timers().stream()
+                .filter(timer -> !PipelineMetrics.OTHER_REF.equals(timer.getId().getTag("ref")))
+                .count();
+        assertThat(refs).isEqualTo(5);
+        assertThat(meterRegistry.get("pipeline.refs.overflow").counter().count()).isEqualTo(195);
+    }
+
+    @Test
+    void shouldPublishHistogramOnlyForEndToEndLatency() {
+        PrometheusMeterRegistry prometheus = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        prometheus.config().meterFilter(new PropertiesMeterFilter(histogramProperties()));
+        PipelineMetricsConfig config = new PipelineMetricsConfig();
+        config.setRefs(Set.of("candidate_java"));
+        PipelineMetrics metrics = new PipelineMetrics(prometheus, config);
+
+        metrics.time(Stage.AI_CALL, "candidate_java", () -> { });
+        metrics.endToEnd("candidate_java", Outcome.PUBLISHED, System.currentTimeMillis() - 10);
+
+        String scrape = prometheus.scrape();
+        assertThat(scrape).contains("pipeline_e2e_latency_seconds_bucket{");
+        assertThat(scrape).doesNotContain("pipeline_stage_duration_seconds_bucket");
+    }
+
+    // Гистограммы как в application.yml
+    private static MetricsProperties histogramProperties() {
+        MetricsProperties properties = new MetricsProperties();
+        properties.getDistribution().getPercentilesHistogram().put("ai.request.duration", true);
+        properties.getDistribution().getPercentilesHistogram().put("pipeline.e2e.latency", true);
+        return properties;
+    }
+
+    @Test
+    void shouldRecordMonoOnceAndTrackInFlight() {
+        PipelineMetrics metrics = new PipelineMetrics(meterRegistry, new PipelineMetricsConfig());
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        Mono<String> call = metrics.timeMono(Stage.AI_CALL, "ref", Mono.fromFuture(pending));
+        var subscription = call.subscribe();
+        assertThat(metrics.inFlight(Stage.AI_CALL)).isEqualTo(1);
+        subscription.dispose();
+
+        assertThat(metrics.inFlight(Stage.AI_CALL)).isZero();
+        assertThat(metrics.timer(Stage.AI_CALL, "ref").count()).isEqualTo(1);
+
+        metrics.timeMono(Stage.AI_CALL, "ref", Mono.error(new IllegalStateException("boom")))
+                .onErrorResume(e -> Mono.empty())
+                .block(Duration.ofSeconds(1));
+        assertThat(metrics.timer(Stage.AI_CALL, "ref").count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRecordAsyncStageWhenFutureCompletes() {
+        PipelineMetrics metrics = new PipelineMetrics(meterRegistry, new PipelineMetricsConfig());
+        CompletableFuture<String> send = new CompletableFuture<>();
+
+        CompletableFuture<String> timed = metrics.timeAsync(Stage.PUBLISH, "ref", () -> send);
+        assertThat(metrics.inFlight(Stage.PUBLISH)).isEqualTo(1);
+        send.complete("ok");
+
+        assertThat(timed).isCompletedWithValue("ok");
+        assertThat(metrics.inFlight(Stage.PUBLISH)).isZero();
+        assertThat(metrics.timer(Stage.PUBLISH, "ref").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldMeasureEndToEndFromRecordTimestamp() {
+        PipelineMetricsConfig config = new PipelineMetricsConfig();
+        config.setRefs(Set.of("candidate_java"));
+        PipelineMetrics metrics = new PipelineMetrics(meterRegistry, config);
+
+        metrics.endToEnd("candidate_java", Outcome.PUBLISHED, System.currentTimeMillis() - 1500);
+        metrics.endToEnd("candidate_java", Outcome.PUBLISHED, -1);
+
+        var timer = meterRegistry.get("pipeline.e2e.latency").tags("ref", "candidate_java", "outcome", "published").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(1500);
+    }
+}
@@ -1,6 +1,7 @@
 package org.pulitko.aiprocessingservice.prompt;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,7 +12,9 @@ import org.pulitko.aiprocessingservice.dto.Prompt;
 import org.pulitko.aiprocessingservice.model.PromptEntity;
 import org.pulitko.aiprocessingservice.repository.PromptRepository;
 import org.pulitko.aiprocessingservice.service.PromptServiceDb;
+import org.pulitko.aiprocessingservice.service.PromptSnapshot;
 import org.pulitko.aiprocessingservice.usecases.mapper.PromptMapper;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.Optional;
 
@@ -24,13 +27,16 @@ import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
 class PromptServiceDbTest {
     @Mock
     private PromptRepository promptRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
     private final PromptMapper promptMapper = new PromptMapper();
     private PromptServiceDb promptService;
 
     @BeforeEach
     void setUp() {
 
-        promptService = new PromptServiceDb(promptRepository, promptMapper, new ObjectMapper());
+        PromptSnapshot snapshot = new PromptSnapshot(promptRepository, promptMapper, new SimpleMeterRegistry());
+        promptService = new PromptServiceDb(promptRepository, promptMapper, new ObjectMapper(), eventPublisher, snapshot);
     }
 
     @Test
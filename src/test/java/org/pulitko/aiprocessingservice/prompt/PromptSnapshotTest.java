@@ -0,0 +1,93 @@
+package org.pulitko.aiprocessingservice.prompt;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.model.PromptEntity;
+import org.pulitko.aiprocessingservice.repository.PromptRepository;
+import org.pulitko.aiprocessingservice.service.PromptSnapshot;
+import org.pulitko.aiprocessingservice.usecases.mapper.PromptMapper;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+@ExtendWith(MockitoExtension.class)
+class PromptSnapshotTest {
+    @Mock
+    private PromptRepository promptRepository;
+    private PromptSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = new PromptSnapshot(promptRepository, new PromptMapper(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldServeLookupsFromSnapshotAfterWarmUp() {
+        when(promptRepository.findAllByActiveTrue()).thenReturn(List.of(PROMPT_ENTITY));
+
+        snapshot.afterSingletonsInstantiated();
+
+        assertThat(snapshot.find(REF_JAVACANDIDATE)).contains(PROMPT);
+        assertThat(snapshot.find("unknown-ref")).isEmpty();
+        verify(promptRepository, never()).findByRefAndActiveTrue(any());
+    }
+
+    @Test
+    void shouldFallBackToDatabaseWhenWarmUpFailed() {
+        when(promptRepository.findAllByActiveTrue()).thenThrow(new DataAccessResourceFailureException("db down"));
+        when(promptRepository.findByRefAndActiveTrue(REF_JAVACANDIDATE)).thenReturn(Optional.of(PROMPT_ENTITY));
+
+        snapshot.afterSingletonsInstantiated();
+
+        assertThat(snapshot.isLoaded()).isFalse();
+        assertThat(snapshot.find(REF_JAVACANDIDATE)).contains(PROMPT);
+    }
+
+    @Test
+    void shouldApplyNotifiedDeactivation() {
+        when(promptRepository.findAllByActiveTrue()).thenReturn(List.of(PROMPT_ENTITY));
+        snapshot.reload();
+        when(promptRepository.findByRef(REF_JAVACANDIDATE)).thenReturn(Optional.of(entity("new template", false)));
+
+        snapshot.refresh(REF_JAVACANDIDATE);
+
+        assertThat(snapshot.find(REF_JAVACANDIDATE)).isEmpty();
+    }
+
+    @Test
+    void shouldResyncUpdatedAndDeletedPrompts() {
+        PromptEntity other = PromptEntity.builder()
+                .withRef("other").withPromptTemplate("t").withSchemaJson("{}").withActive(true).build();
+        when(promptRepository.findAllByActiveTrue()).thenReturn(List.of(PROMPT_ENTITY, other));
+        snapshot.reload();
+        when(promptRepository.findByUpdatedAtAfter(any())).thenReturn(List.of(entity("new template", true)));
+        when(promptRepository.findAllRefs()).thenReturn(List.of(REF_JAVACANDIDATE));
+
+        snapshot.resync();
+
+        assertThat(snapshot.find(REF_JAVACANDIDATE)).get()
+                .extracting(prompt -> prompt.template()).isEqualTo("new template");
+        assertThat(snapshot.find("other")).isEmpty();
+    }
+
+    private static PromptEntity entity(String template, boolean active) {
+        return PromptEntity.builder()
+                .withRef(REF_JAVACANDIDATE)
+                .withPromptTemplate(template)
+                .withSchemaJson(SCHEMA_JAVACANDIDATE)
+                .withActive(active)
+                .withUpdatedAt(Instant.now())
+                .build();
+    }
+}
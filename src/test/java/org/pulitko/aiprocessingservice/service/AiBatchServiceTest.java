@@ -0,0 +1,176 @@
+package org.pulitko.aiprocessingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.ai.batch.OpenAiBatchClient;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextWindowPlanner;
+import org.pulitko.aiprocessingservice.ai.tokenizer.TokenCounter;
+import org.pulitko.aiprocessingservice.config.AiBatchConfig;
+import org.pulitko.aiprocessingservice.config.AiContextConfig;
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.dto.OutgoingMessage;
+import org.pulitko.aiprocessingservice.kafka.DlqPublisher;
+import org.pulitko.aiprocessingservice.kafka.KafkaOutgoingPublisher;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.model.AiBatchEntity;
+import org.pulitko.aiprocessingservice.model.AiBatchItemEntity;
+import org.pulitko.aiprocessingservice.repository.AiBatchItemRepository;
+import org.pulitko.aiprocessingservice.repository.AiBatchRepository;
+import org.pulitko.aiprocessingservice.usecases.preprocessing.PayloadPreprocessingPipeline;
+import org.pulitko.aiprocessingservice.usecases.preprocessing.WhitespaceNormalizer;
+import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.IncomingMessageValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.pulitko.aiprocessingservice.usecases.validation.StructuredOutputRepairer;
+import org.pulitko.aiprocessingservice.util.StubBatchServer;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.pulitko.aiprocessingservice.util.TestData.*;
+
+@ExtendWith(MockitoExtension.class)
+class AiBatchServiceTest {
+    private static final long BATCH_ID = 42L;
+    private static final long ITEM_ID = 7L;
+
+    @Mock
+    private AiBatchRepository batchRepository;
+    @Mock
+    private AiBatchItemRepository itemRepository;
+    @Mock
+    private PromptService promptService;
+    @Mock
+    private IncomingMessageValidator incomingMessageValidator;
+    @Mock
+    private KafkaOutgoingPublisher kafkaOutgoingPublisher;
+    @Mock
+    private DlqPublisher dlqPublisher;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AiBatchConfig config = new AiBatchConfig();
+    private final AiBatchItemEntity item = new AiBatchItemEntity(ITEM_ID, BATCH_ID, REF_JAVACANDIDATE,
+            TYPE_JAVACANDIDATE, SOURCE_ID_JAVACANDIDATE, PAYLOAD_JAVACANDIDATE, AiBatchItemEntity.SUBMITTED, 1, Instant.now());
+    private StubBatchServer server;
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void shouldSubmitPendingItemsAndPublishResultsWithOriginalSourceId() {
+        AiBatchService service = service(SUCCESS_AI_RESULT);
+        stubSubmission();
+
+        service.submitReady();
+
+        ArgumentCaptor<String> providerBatchId = ArgumentCaptor.forClass(String.class);
+        verify(batchRepository).markSubmitted(eq(BATCH_ID), providerBatchId.capture(), anyString(), eq(1),
+                eq(PROMPT.schemaJson()), any());
+
+        AiBatchEntity submitted = submittedBatch(providerBatchId.getValue());
+        service.poll(submitted);
+        verify(batchRepository).releaseLease(BATCH_ID);
+        verifyNoInteractions(kafkaOutgoingPublisher);
+
+        when(itemRepository.findInBatch(ITEM_ID, BATCH_ID)).thenReturn(Optional.of(item));
+        service.poll(submitted);
+
+        ArgumentCaptor<OutgoingMessage> outgoing = ArgumentCaptor.forClass(OutgoingMessage.class);
+        verify(kafkaOutgoingPublisher).send(outgoing.capture());
+        assertThat(outgoing.getValue().sourceId()).isEqualTo(SOURCE_ID_JAVACANDIDATE);
+        assertThat(outgoing.getValue().ref()).isEqualTo(REF_JAVACANDIDATE);
+        verify(itemRepository).updateStatus(ITEM_ID, AiBatchItemEntity.DONE);
+        verify(itemRepository).releaseUnfinished(BATCH_ID, config.getMaxAttempts());
+        verify(batchRepository).updateStatus(eq(BATCH_ID), eq(AiBatchEntity.COMPLETED), any());
+        // результат проверен по схеме, сохранённой при отправке
+        verify(promptService, times(1)).getActivePrompt(REF_JAVACANDIDATE);
+    }
+
+    @Test
+    void shouldSendInvalidResultToDlq() {
+        AiBatchService service = service("{\"name\": 1}");
+        stubSubmission();
+        service.submitReady();
+        ArgumentCaptor<String> providerBatchId = ArgumentCaptor.forClass(String.class);
+        verify(batchRepository).markSubmitted(eq(BATCH_ID), providerBatchId.capture(), anyString(), eq(1),
+                eq(PROMPT.schemaJson()), any());
+        when(itemRepository.findInBatch(ITEM_ID, BATCH_ID)).thenReturn(Optional.of(item));
+
+        AiBatchEntity submitted = submittedBatch(providerBatchId.getValue());
+        service.poll(submitted);
+        service.poll(submitted);
+
+        verify(dlqPublisher).publish(any(), eq(SOURCE_ID_JAVACANDIDATE), anyString());
+        verify(itemRepository).updateStatus(ITEM_ID, AiBatchItemEntity.FAILED);
+        verify(kafkaOutgoingPublisher, never()).send(any());
+    }
+
+    @Test
+    void shouldReturnItemsToQueueWhenUploadFails() {
+        AiBatchService service = service(SUCCESS_AI_RESULT);
+        server.close();
+        stubSubmission();
+
+        service.submitReady();
+
+        verify(itemRepository).unclaim(BATCH_ID);
+        verify(batchRepository).deleteById(BATCH_ID);
+        verify(batchRepository, never()).markSubmitted(anyLong(), any(), any(), anyInt(), any(), any());
+    }
+
+    private void stubSubmission() {
+        when(itemRepository.findRefsReadyForBatch(anyInt(), any())).thenReturn(List.of(REF_JAVACANDIDATE));
+        when(batchRepository.save(any())).thenAnswer(inv -> {
+            AiBatchEntity batch = inv.getArgument(0);
+            return new AiBatchEntity(BATCH_ID, batch.ref(), null, null, batch.status(), 0, null, null,
+                    batch.createdAt(), batch.updatedAt());
+        });
+        when(itemRepository.claimPending(REF_JAVACANDIDATE, BATCH_ID, config.getMaxRequestsPerBatch())).thenReturn(1);
+        when(itemRepository.findByBatchId(BATCH_ID)).thenReturn(List.of(item));
+        when(promptService.getActivePrompt(REF_JAVACANDIDATE)).thenReturn(PROMPT);
+    }
+
+    private static AiBatchEntity submittedBatch(String providerBatchId) {
+        return new AiBatchEntity(BATCH_ID, REF_JAVACANDIDATE, providerBatchId, null,
+                AiBatchEntity.SUBMITTED, 1, PROMPT.schemaJson(), null, Instant.now(), Instant.now());
+    }
+
+    private AiBatchService service(String modelOutput) {
+        server = new StubBatchServer(customId -> modelOutput);
+        config.setEnabled(true);
+        config.setRefs(Set.of(REF_JAVACANDIDATE));
+        config.setBaseUrl(server.baseUrl());
+        JsonSchemaCache schemaCache = new JsonSchemaCache();
+        AiRequestFactory requestFactory = new AiRequestFactory("gpt-4.1-nano", 0.1, schemaCache);
+        AiResultValidator validator = new AiResultValidator(schemaCache,
+                new PipelineMetrics(new SimpleMeterRegistry(), new PipelineMetricsConfig()));
+        return new AiBatchService(config, batchRepository, itemRepository,
+                new OpenAiBatchClient(WebClient.builder(), config, "test-key", objectMapper),
+                requestFactory,
+                promptService, incomingMessageValidator, validator,
+                new StructuredOutputRepairer(schemaCache, validator, new SimpleMeterRegistry(), true),
+                new PayloadPreprocessingPipeline(new PayloadPreprocessingConfig(), List.of(new WhitespaceNormalizer()),
+                        new SimpleMeterRegistry()),
+                new ContextWindowPlanner(new AiContextConfig(), new TokenCounter(new AiContextConfig()), requestFactory,
+                        new SimpleMeterRegistry()),
+                objectMapper,
+                kafkaOutgoingPublisher, dlqPublisher, new SimpleMeterRegistry());
+    }
+}
@@ -3,6 +3,7 @@ package org.pulitko.aiprocessingservice.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.validation.ConstraintViolation;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,17 +11,42 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.pulitko.aiprocessingservice.ai.dto.AiCompletion;
 import org.pulitko.aiprocessingservice.ai.AiClient;
+import org.pulitko.aiprocessingservice.ai.cache.AiResultCache;
+import org.pulitko.aiprocessingservice.ai.cache.InFlightRequestCoalescer;
+import org.pulitko.aiprocessingservice.ai.cascade.ModelCascade;
+import org.pulitko.aiprocessingservice.ai.resilience.AiBulkhead;
+import org.pulitko.aiprocessingservice.ai.resilience.AiCircuitBreaker;
+import org.pulitko.aiprocessingservice.ai.resilience.AiHedger;
+import org.pulitko.aiprocessingservice.ai.client.AiRequestFactory;
+import org.pulitko.aiprocessingservice.ai.tokenizer.ContextWindowPlanner;
+import org.pulitko.aiprocessingservice.ai.tokenizer.TokenCounter;
+import org.pulitko.aiprocessingservice.config.AiCascadeConfig;
+import org.pulitko.aiprocessingservice.config.AiContextConfig;
+import org.pulitko.aiprocessingservice.config.AiHedgingConfig;
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
 import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
 import org.pulitko.aiprocessingservice.exception.IncomingMessageValidationException;
 import org.pulitko.aiprocessingservice.exception.PromptNotFoundException;
 import org.pulitko.aiprocessingservice.kafka.KafkaOutgoingPublisher;
 import org.pulitko.aiprocessingservice.dto.IncomingMessage;
 import org.pulitko.aiprocessingservice.dto.Prompt;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+import org.pulitko.aiprocessingservice.repository.AiResultCacheRepository;
+import org.pulitko.aiprocessingservice.usecases.preprocessing.PayloadPreprocessingPipeline;
+import org.pulitko.aiprocessingservice.usecases.preprocessing.WhitespaceNormalizer;
 import org.pulitko.aiprocessingservice.usecases.validation.AiResultValidator;
 import org.pulitko.aiprocessingservice.usecases.validation.IncomingMessageValidator;
+import org.pulitko.aiprocessingservice.usecases.validation.JsonSchemaCache;
+import org.pulitko.aiprocessingservice.usecases.validation.StructuredOutputRepairer;
 import org.pulitko.aiprocessingservice.util.TestData;
 
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -49,14 +75,51 @@ class AiProcessingServiceApplicationTests {
             .findAndAddModules()
             .build();
 
+    @Spy
+    private final AiResultCache resultCache = new AiResultCache(
+            mock(AiResultCacheRepository.class), new SimpleMeterRegistry(), false, 100, Duration.ofHours(1), "gpt-4.1-nano");
+
+    @Spy
+    private final InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(new SimpleMeterRegistry(), true);
+
+    @Spy
+    private final AiCircuitBreaker circuitBreaker = new AiCircuitBreaker(
+            new SimpleMeterRegistry(), event -> {}, true, 20, 10, 50, Duration.ofSeconds(30), 3);
+
+    @Spy
+    private final AiBulkhead bulkhead = new AiBulkhead(new SimpleMeterRegistry(), true, 4, Duration.ofSeconds(1));
+
+    @Spy
+    private final PayloadPreprocessingPipeline preprocessingPipeline = new PayloadPreprocessingPipeline(
+            new PayloadPreprocessingConfig(), List.of(new WhitespaceNormalizer()), new SimpleMeterRegistry());
+
+    @Spy
+    private final ContextWindowPlanner contextPlanner = new ContextWindowPlanner(new AiContextConfig(),
+            new TokenCounter(new AiContextConfig()),
+            new AiRequestFactory("gpt-4.1-nano", 0.1, new JsonSchemaCache()), new SimpleMeterRegistry());
+
+    @Spy
+    private final AiHedger hedger = new AiHedger(new AiHedgingConfig(), new SimpleMeterRegistry());
+
+    @Spy
+    private final StructuredOutputRepairer outputRepairer = new StructuredOutputRepairer(new JsonSchemaCache(),
+            new AiResultValidator(new JsonSchemaCache(), new PipelineMetrics(new SimpleMeterRegistry(), new PipelineMetricsConfig())),
+            new SimpleMeterRegistry(), true);
+
+    @Spy
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry(), new PipelineMetricsConfig());
+
+    @Spy
+    private final ModelCascade cascade = new ModelCascade(new AiCascadeConfig(), new SimpleMeterRegistry());
+
     @Test
     void shouldProcessMessageAndReturnResult() {
         IncomingMessage msg = INCOMING_MESSAGE;
         Prompt prompt = TestData.PROMPT;
 
         when(promptService.getActivePrompt(msg.ref())).thenReturn(prompt);
-        when(aiClient.analyze(any(), any(), anyString(),anyString())).thenReturn(SUCCESS_AI_RESULT);
-        when(aiResultValidator.validate(anyString(),anyString(),anyString())).thenReturn(SUCCESS_AI_RESULT);
+        when(aiClient.analyzeAsync(any(), any(), anyString(),anyString())).thenReturn(Mono.just(new AiCompletion(SUCCESS_AI_RESULT, null)));
+        when(aiResultValidator.validateTree(any(JsonNode.class), anyString(), anyString())).thenAnswer(inv -> inv.getArgument(0));
 
         JsonNode actualResult = service.process(msg);
 
@@ -66,14 +129,42 @@ class AiProcessingServiceApplicationTests {
 
     }
 
+    @Test
+    void shouldProcessMessageAsynchronously() {
+        IncomingMessage msg = INCOMING_MESSAGE;
+        Prompt prompt = TestData.PROMPT;
+
+        when(promptService.getActivePrompt(msg.ref())).thenReturn(prompt);
+        when(aiClient.analyzeAsync(any(), any(), anyString(),anyString())).thenReturn(Mono.just(new AiCompletion(SUCCESS_AI_RESULT, null)));
+        when(aiResultValidator.validateTree(any(JsonNode.class), anyString(), anyString())).thenAnswer(inv -> inv.getArgument(0));
+
+        Mono<JsonNode> pending = service.processAsync(msg);
+        verify(aiClient, never()).analyzeAsync(any(), any(), anyString(),anyString());
+
+        JsonNode actualResult = pending.toFuture().join();
+        assertThat(actualResult.get("full_name").asText()).isEqualTo("Иван Иванов");
+    }
+
+    @Test
+    void shouldFailWhenAiReturnsNothing() {
+        IncomingMessage msg = INCOMING_MESSAGE;
+        Prompt prompt = TestData.PROMPT;
+
+        when(promptService.getActivePrompt(msg.ref())).thenReturn(prompt);
+        when(aiClient.analyzeAsync(any(), any(), anyString(),anyString())).thenReturn(Mono.empty());
+
+        assertThrows(AiResultValidationException.class, () -> service.process(msg));
+        verify(aiResultValidator, never()).validateTree(any(), any(), any());
+    }
+
     @Test
     void shouldThrowExceptionWhenValidationFails() {
         IncomingMessage msg = INCOMING_MESSAGE;
         Prompt prompt = TestData.PROMPT;
         when(promptService.getActivePrompt(msg.ref())).thenReturn(prompt);
-        when(aiClient.analyze(any(), any(), anyString(),anyString())).thenReturn(SUCCESS_AI_RESULT);
+        when(aiClient.analyzeAsync(any(), any(), anyString(),anyString())).thenReturn(Mono.just(new AiCompletion(SUCCESS_AI_RESULT, null)));
         doThrow(new AiResultValidationException(REF_JAVACANDIDATE, "Confidence out of range"))
-                .when(aiResultValidator).validate(anyString(), anyString(), anyString());
+                .when(aiResultValidator).validateTree(any(JsonNode.class), anyString(), anyString());
 
         assertThrows(AiResultValidationException.class, () -> {
             service.process(msg);
@@ -95,8 +186,8 @@ class AiProcessingServiceApplicationTests {
             service.process(msg);
         });
         verify(promptService, never()).getActivePrompt(any());
-        verify(aiClient, never()).analyze(any(), any(), anyString(),anyString());
-        verify(aiResultValidator, never()).validate(any(),any(),any());
+        verify(aiClient, never()).analyzeAsync(any(), any(), anyString(),anyString());
+        verify(aiResultValidator, never()).validateTree(any(), any(), any());
         verify(kafkaOutgoingPublisher, never()).send(any());
     }
 
@@ -112,8 +203,8 @@ class AiProcessingServiceApplicationTests {
         assertThrows(PromptNotFoundException.class, () -> {
             service.process(msg);
         });
-        verify(aiClient, never()).analyze(any(), any(), anyString(),anyString());
-        verify(aiResultValidator, never()).validate(any(),any(),any());
+        verify(aiClient, never()).analyzeAsync(any(), any(), anyString(),anyString());
+        verify(aiResultValidator, never()).validateTree(any(), any(), any());
         verify(kafkaOutgoingPublisher, never()).send(any());
     }
 
@@ -0,0 +1,56 @@
+package org.pulitko.aiprocessingservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class PromptNotificationListenerTest {
+    private final DataSource dataSource = mock(DataSource.class);
+    private final PromptSnapshot snapshot = mock(PromptSnapshot.class);
+    private final PromptNotificationListener listener =
+            new PromptNotificationListener(dataSource, snapshot, true, Duration.ofMillis(10));
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    void shouldKeepListeningAfterRuntimeExceptionInResync() throws Exception {
+        Connection connection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        // как настоящий getNotifications(timeout): ждёт, а не крутит цикл
+        when(pgConnection.getNotifications(anyInt())).thenAnswer(inv -> {
+            Thread.sleep(50);
+            return null;
+        });
+        // resync синхронизирован, verify с timeout на нём конкурирует с потоком слушателя
+        CountDownLatch resynced = new CountDownLatch(1);
+        doThrow(new IllegalStateException("broken prompt row"))
+                .doAnswer(inv -> {
+                    resynced.countDown();
+                    return null;
+                })
+                .when(snapshot).resync();
+
+        listener.start();
+
+        assertThat(resynced.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(pgConnection, timeout(5000).atLeastOnce()).getNotifications(anyInt());
+        assertThat(listener.isRunning()).isTrue();
+    }
+}
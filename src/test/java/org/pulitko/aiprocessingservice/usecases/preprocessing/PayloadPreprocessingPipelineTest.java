@@ -0,0 +1,102 @@
+package org.pulitko.aiprocessingservice.usecases.preprocessing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.PayloadPreprocessingConfig;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+
+class PayloadPreprocessingPipelineTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PayloadPreprocessingConfig config = new PayloadPreprocessingConfig();
+
+    @Test
+    void shouldStripMarkupNormalizeAndDedupe() {
+        PayloadPreprocessingPipeline pipeline = pipeline(profile(0, "strip-markup", "normalize", "dedupe"));
+        String payload = """
+                <html><head><style>p { color: red }</style></head><body>
+                <p>Java&nbsp;developer,   5 years</p>\r
+                <div>Skills:\tSpring,  Kafka &amp; Postgres</div>
+                <p>Sent from my iPhone</p>
+
+
+                <p>Sent from my iPhone</p>
+                </body></html>
+                """;
+
+        String result = pipeline.process(REF_JAVACANDIDATE, payload);
+
+        assertThat(result).isEqualTo("Java developer, 5 years\n\nSkills: Spring, Kafka & Postgres\n\nSent from my iPhone");
+        assertThat(meterRegistry.counter("ai.preprocessing.chars.saved", "ref", REF_JAVACANDIDATE).count())
+                .isEqualTo(payload.length() - result.length());
+        assertThat(meterRegistry.counter("ai.preprocessing.tokens.saved", "ref", REF_JAVACANDIDATE).count())
+                .isEqualTo((payload.length() - result.length()) / 4.0);
+    }
+
+    @Test
+    void shouldTruncateToTokenBudgetKeepingHeadAndTail() {
+        PayloadPreprocessingPipeline pipeline = pipeline(profile(50, "truncate"));
+        StringBuilder payload = new StringBuilder("Name: Ivan Ivanov\n");
+        for (int i = 0; i < 100; i++) {
+            payload.append("Project ").append(i).append(": built services\n");
+        }
+        payload.append("Contacts: test@mail.ru");
+
+        String result = pipeline.process(REF_JAVACANDIDATE, payload.toString());
+
+        assertThat(result.length()).isLessThanOrEqualTo(50 * 4);
+        assertThat(result).startsWith("Name: Ivan Ivanov").endsWith("Contacts: test@mail.ru")
+                .contains(TokenBudgetTruncator.MARKER);
+    }
+
+    @Test
+    void shouldUseDefaultsForRefsWithoutProfileAndKeepOriginalWhenNothingLeft() {
+        assertThat(new PayloadPreprocessingPipeline(config, steps(), meterRegistry).process("other", "  text  "))
+                .isEqualTo("  text  ");
+        config.setDefaults(profile(0, "normalize"));
+        PayloadPreprocessingPipeline pipeline = pipeline(profile(0, "strip-markup"));
+
+        assertThat(pipeline.process("other", "  text  ")).isEqualTo("text");
+        assertThat(pipeline.process(REF_JAVACANDIDATE, "<br/>")).isEqualTo("<br/>");
+    }
+
+    @Test
+    void shouldFailFastOnUnknownStep() {
+        config.setRefs(Map.of(REF_JAVACANDIDATE, profile(0, "summarize")));
+
+        assertThatThrownBy(() -> new PayloadPreprocessingPipeline(config, steps(), meterRegistry))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("summarize");
+    }
+
+    @Test
+    void shouldFailFastOnBudgetThatCannotHoldTruncationMarker() {
+        config.setRefs(Map.of(REF_JAVACANDIDATE, profile(1, "truncate")));
+
+        assertThatThrownBy(() -> new PayloadPreprocessingPipeline(config, steps(), meterRegistry))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("max-tokens 1");
+    }
+
+    private PayloadPreprocessingPipeline pipeline(PayloadPreprocessingConfig.Profile profile) {
+        config.setRefs(Map.of(REF_JAVACANDIDATE, profile));
+        return new PayloadPreprocessingPipeline(config, steps(), meterRegistry);
+    }
+
+    private List<PayloadPreprocessor> steps() {
+        return List.of(new WhitespaceNormalizer(), new MarkupStripper(), new LineDeduplicator(),
+                new TokenBudgetTruncator(config));
+    }
+
+    private static PayloadPreprocessingConfig.Profile profile(int maxTokens, String... steps) {
+        PayloadPreprocessingConfig.Profile profile = new PayloadPreprocessingConfig.Profile();
+        profile.setSteps(List.of(steps));
+        profile.setMaxTokens(maxTokens);
+        return profile;
+    }
+}
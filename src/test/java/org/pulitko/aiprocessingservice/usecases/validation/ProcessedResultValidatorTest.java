@@ -1,12 +1,18 @@
 package org.pulitko.aiprocessingservice.usecases.validation;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
 import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class ProcessedResultValidatorTest {
-    private final AiResultValidator validator = new AiResultValidator();
+    private final AiResultValidator validator = new AiResultValidator(new JsonSchemaCache(),
+            new PipelineMetrics(new SimpleMeterRegistry(), new PipelineMetricsConfig()));
 
     private final String schemaJson = """
         {
@@ -55,6 +61,17 @@ class ProcessedResultValidatorTest {
     }
 
 
+    @Test
+    void shouldValidateParsedTreeAgainstChangedSchema() throws Exception {
+        JsonNode result = new ObjectMapper().readTree("{\"name\": \"Ivan\", \"confidence\": 0.85}");
+        String changedSchema = schemaJson.replace("\"required\": [\"name\", \"confidence\"]",
+                "\"required\": [\"name\", \"confidence\", \"reason\"]");
+
+        assertSame(result, validator.validateTree(result, schemaJson, "test-key"));
+        assertThrows(AiResultValidationException.class,
+                () -> validator.validateTree(result, changedSchema, "test-key"));
+    }
+
     @Test
     void shouldThrowExceptionOnMalformedJson() {
         String malformedJson = "{ \"name\": \"Ivan\", ";
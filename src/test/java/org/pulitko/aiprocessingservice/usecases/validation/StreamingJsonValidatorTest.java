@@ -0,0 +1,101 @@
+package org.pulitko.aiprocessingservice.usecases.validation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.pulitko.aiprocessingservice.util.TestData.REF_JAVACANDIDATE;
+import static org.pulitko.aiprocessingservice.util.TestData.SUCCESS_AI_RESULT;
+
+class StreamingJsonValidatorTest {
+    private static final String SCHEMA = """
+            {
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["matches", "confidence", "reason", "full_name", "contacts"],
+              "properties": {
+                "matches": { "type": "boolean" },
+                "confidence": { "type": "number" },
+                "reason": { "type": "string" },
+                "full_name": { "type": "string" },
+                "level": { "enum": ["junior", "middle", "senior"] },
+                "skills": { "type": "array", "items": { "type": "string" } },
+                "contacts": {
+                  "type": "object",
+                  "additionalProperties": false,
+                  "properties": {
+                    "email": { "type": ["string", "null"] },
+                    "phone": { "type": ["string", "null"] },
+                    "linkedin": { "type": ["string", "null"] },
+                    "telegram": { "type": ["string", "null"] }
+                  }
+                }
+              }
+            }
+            """;
+
+    private final JsonNode schema = readSchema();
+
+    @Test
+    void shouldAcceptValidOutputFedInSmallChunks() {
+        StreamingJsonValidator validator = validator();
+
+        assertThatCode(() -> {
+            for (int i = 0; i < SUCCESS_AI_RESULT.length(); i += 3) {
+                validator.feed(SUCCESS_AI_RESULT.substring(i, Math.min(SUCCESS_AI_RESULT.length(), i + 3)));
+            }
+            validator.finish();
+        }).doesNotThrowAnyException();
+    }
+
+    @Test
+    void shouldFailOnUnknownPropertyAsSoonAsItsNameArrives() {
+        StreamingJsonValidator validator = validator();
+        validator.feed("{\"matches\": true, \"contacts\": {\"email\": null, ");
+
+        assertThatThrownBy(() -> validator.feed("\"skype\": "))
+                .isInstanceOf(AiResultValidationException.class)
+                .hasMessageContaining("$.contacts.skype")
+                .hasMessageContaining("unknown property");
+    }
+
+    @Test
+    void shouldFailOnWrongTypeAndEnumValue() {
+        assertThatThrownBy(() -> validator().feed("{\"confidence\": \"high\""))
+                .isInstanceOf(AiResultValidationException.class)
+                .hasMessageContaining("$.confidence");
+        assertThatThrownBy(() -> validator().feed("{\"skills\": [\"java\", 42,"))
+                .isInstanceOf(AiResultValidationException.class)
+                .hasMessageContaining("$.skills[1]");
+        assertThatThrownBy(() -> validator().feed("{\"level\": \"lead\","))
+                .isInstanceOf(AiResultValidationException.class)
+                .hasMessageContaining("enum");
+    }
+
+    @Test
+    void shouldFailOnMissingRequiredPropertyAndTruncatedOutput() {
+        assertThatThrownBy(() -> validator().feed("{\"matches\": true}"))
+                .isInstanceOf(AiResultValidationException.class)
+                .hasMessageContaining("missing required property 'confidence'");
+
+        StreamingJsonValidator truncated = validator();
+        truncated.feed("{\"matches\": true, \"reason\": \"Кандидат");
+        assertThatThrownBy(truncated::finish)
+                .isInstanceOf(AiResultValidationException.class);
+    }
+
+    private StreamingJsonValidator validator() {
+        return new StreamingJsonValidator(schema, REF_JAVACANDIDATE);
+    }
+
+    private static JsonNode readSchema() {
+        try {
+            return new ObjectMapper().readTree(SCHEMA);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
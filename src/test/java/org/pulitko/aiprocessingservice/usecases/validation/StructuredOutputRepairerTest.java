@@ -0,0 +1,88 @@
+package org.pulitko.aiprocessingservice.usecases.validation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.pulitko.aiprocessingservice.config.PipelineMetricsConfig;
+import org.pulitko.aiprocessingservice.exception.AiResultValidationException;
+import org.pulitko.aiprocessingservice.metrics.PipelineMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StructuredOutputRepairerTest {
+    private static final String REF = "candidate_java";
+    private static final String SCHEMA = """
+            {
+              "$schema": "https://json-schema.org/draft/2020-12/schema",
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["full_name", "confidence", "matches"],
+              "properties": {
+                "full_name": { "type": "string" },
+                "confidence": { "type": "number" },
+                "matches": { "type": "boolean" },
+                "skills": { "type": "array", "items": { "type": "string" } }
+              }
+            }
+            """;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JsonSchemaCache schemaCache = new JsonSchemaCache();
+    private final StructuredOutputRepairer repairer = new StructuredOutputRepairer(
+            schemaCache, new AiResultValidator(schemaCache, new PipelineMetrics(meterRegistry, new PipelineMetricsConfig())),
+            meterRegistry, true);
+
+    @Test
+    void shouldStripFencesAndTrailingText() {
+        JsonNode result = repair("""
+                Here is the result:
+                ```json
+                {"full_name": "Ivan {Jr}", "confidence": 0.9, "matches": true}
+                ```
+                Let me know if you need anything else.""");
+
+        assertThat(result.get("full_name").asText()).isEqualTo("Ivan {Jr}");
+        assertThat(repairedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCloseTruncatedObject() {
+        JsonNode result = repair("{\"full_name\": \"Ivan\", \"confidence\": 0.9, \"matches\": true, \"skills\": [\"java\", \"sql");
+
+        assertThat(result.get("skills")).hasSize(2);
+        assertThat(result.get("skills").get(1).asText()).isEqualTo("sql");
+    }
+
+    @Test
+    void shouldCoerceScalarsAndDropUnknownProperties() {
+        JsonNode result = repair("{\"full_name\": \"Ivan\", \"confidence\": \"0.85\", \"matches\": \"true\", "
+                + "\"skills\": [\"java\", 17], \"comment\": \"extra\"}");
+
+        assertThat(result.get("confidence").isNumber()).isTrue();
+        assertThat(result.get("confidence").asDouble()).isEqualTo(0.85);
+        assertThat(result.get("matches").booleanValue()).isTrue();
+        assertThat(result.get("skills").get(1).asText()).isEqualTo("17");
+        assertThat(result.has("comment")).isFalse();
+    }
+
+    @Test
+    void shouldRethrowOriginalErrorWhenNothingCanBeRepaired() {
+        AiResultValidationException original = new AiResultValidationException(REF, "Malformed JSON from AI");
+
+        assertThatThrownBy(() -> repairer.repair("I cannot answer that.", null, SCHEMA, REF, original))
+                .isSameAs(original);
+        assertThatThrownBy(() -> repair("{\"full_name\": \"Ivan\"}"))
+                .isInstanceOf(AiResultValidationException.class);
+        assertThat(meterRegistry.get("ai.result.repair").tag("outcome", "rejected").counter().count()).isEqualTo(2);
+        assertThat(repairedCount()).isZero();
+    }
+
+    private JsonNode repair(String raw) {
+        return repairer.repair(raw, null, SCHEMA, REF, new AiResultValidationException(REF, "Malformed JSON from AI"));
+    }
+
+    private double repairedCount() {
+        return meterRegistry.counter("ai.result.repair", "ref", REF, "outcome", "repaired").count();
+    }
+}
@@ -9,6 +9,7 @@ import org.pulitko.aiprocessingservice.repository.DeserializationErrorRepository
 import org.pulitko.aiprocessingservice.repository.PromptRepository;
 import org.pulitko.aiprocessingservice.service.AiProcessingService;
 import org.pulitko.aiprocessingservice.service.PromptServiceDb;
+import org.pulitko.aiprocessingservice.service.PromptSnapshot;
 import org.pulitko.aiprocessingservice.usecases.mapper.PromptMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -49,6 +50,7 @@ public abstract class AbstractDbIT {
     @MockBean protected OpenAiClient aiClient;
     @MockBean protected CacheManager cacheManager;
     @MockBean protected PromptMapper promptMapper;
+    @MockBean protected PromptSnapshot promptSnapshot;
 
     @Container
     static final PostgreSQLContainer<?> postgres =
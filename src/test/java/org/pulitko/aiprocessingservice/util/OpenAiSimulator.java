@@ -0,0 +1,304 @@
+package org.pulitko.aiprocessingservice.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+// Задержка - логнормальная по медиане и p99; ответ собирается из json_schema запроса, чтобы пройти валидацию
+public class OpenAiSimulator implements AutoCloseable {
+    // z-оценка 99-го перцентиля стандартного нормального
+    private static final double Z_99 = 2.326;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final Map<String, String> contentBySchema = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile Duration latencyMedian = Duration.ofMillis(300);
+    private volatile Duration latencyP99 = Duration.ofSeconds(2);
+    private volatile double throttleRate;
+    private volatile double serverErrorRate;
+    private volatile long requestsPerMinute = 10_000;
+    private volatile long tokensPerMinute = 2_000_000;
+
+    private long windowStartedAt = System.nanoTime();
+    private long windowRequests;
+    private long windowTokens;
+
+    public OpenAiSimulator() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public OpenAiSimulator latency(Duration median, Duration p99) {
+        this.latencyMedian = median;
+        this.latencyP99 = p99.compareTo(median) < 0 ? median : p99;
+        return this;
+    }
+
+    public OpenAiSimulator errors(double throttleRate, double serverErrorRate) {
+        this.throttleRate = throttleRate;
+        this.serverErrorRate = serverErrorRate;
+        return this;
+    }
+
+    public OpenAiSimulator rateLimits(long requestsPerMinute, long tokensPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        return this;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        JsonNode request = readRequest(exchange);
+        long promptTokens = Math.max(1, request.toString().length() / 4);
+        String content = contentFor(request.path("response_format").path("json_schema").path("schema"));
+        long completionTokens = Math.max(1, content.length() / 4);
+
+        Window window = reserve(promptTokens + completionTokens);
+        window.headers().forEach(exchange.getResponseHeaders()::add);
+        if (window.exceeded()) {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().add("retry-after", String.valueOf(Math.max(1, window.resetMillis() / 1000)));
+            respond(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"requests\"}}");
+            return;
+        }
+
+        sleep(sampleLatency());
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < throttleRate) {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().add("retry-after", "1");
+            respond(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"tokens\"}}");
+        } else if (roll < throttleRate + serverErrorRate) {
+            failed.incrementAndGet();
+            int status = ThreadLocalRandom.current().nextBoolean() ? 500 : 503;
+            respond(exchange, status, "{\"error\":{\"message\":\"The server had an error\",\"type\":\"server_error\"}}");
+        } else if (request.path("stream").asBoolean(false)) {
+            stream(exchange, content, promptTokens, completionTokens);
+        } else {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("object", "chat.completion");
+            body.put("model", request.path("model").asText("simulator"));
+            ObjectNode message = body.putArray("choices").addObject().putObject("message");
+            message.put("role", "assistant");
+            message.put("content", content);
+            body.set("usage", usage(promptTokens, completionTokens));
+            respond(exchange, 200, body.toString());
+        }
+    }
+
+    // Контент идёт несколькими дельтами, usage - в последнем чанке, как у OpenAI с include_usage
+    private void stream(HttpExchange exchange, String content, long promptTokens, long completionTokens) {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+            int step = Math.max(1, content.length() / 8);
+            for (int i = 0; i < content.length(); i += step) {
+                ObjectNode chunk = objectMapper.createObjectNode();
+                chunk.putArray("choices").addObject().putObject("delta")
+                        .put("content", content.substring(i, Math.min(content.length(), i + step)));
+                writeEvent(out, chunk.toString());
+            }
+            ObjectNode last = objectMapper.createObjectNode();
+            last.putArray("choices");
+            last.set("usage", usage(promptTokens, completionTokens));
+            writeEvent(out, last.toString());
+            writeEvent(out, "[DONE]");
+        } catch (IOException e) {
+            // клиент оборвал поток
+        }
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private ObjectNode usage(long promptTokens, long completionTokens) {
+        ObjectNode usage = objectMapper.createObjectNode();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return usage;
+    }
+
+    private JsonNode readRequest(HttpExchange exchange) throws IOException {
+        InputStream body = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            body = new GZIPInputStream(body);
+        }
+        byte[] bytes = body.readAllBytes();
+        return bytes.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(bytes);
+    }
+
+    private String contentFor(JsonNode schema) {
+        if (schema.isMissingNode()) {
+            return "{}";
+        }
+        return contentBySchema.computeIfAbsent(schema.toString(), key -> sample(schema).toString());
+    }
+
+    // Минимальное значение, проходящее по схеме: все объявленные поля, границы чисел и длины строк
+    static JsonNode sample(JsonNode schema) {
+        JsonNodeFactory nodes = JsonNodeFactory.instance;
+        if (schema.has("const")) {
+            return schema.get("const");
+        }
+        if (schema.has("enum") && !schema.get("enum").isEmpty()) {
+            return schema.get("enum").get(0);
+        }
+        switch (typeOf(schema)) {
+            case "object" -> {
+                ObjectNode object = nodes.objectNode();
+                Iterator<Map.Entry<String, JsonNode>> properties = schema.path("properties").fields();
+                while (properties.hasNext()) {
+                    Map.Entry<String, JsonNode> property = properties.next();
+                    object.set(property.getKey(), sample(property.getValue()));
+                }
+                return object;
+            }
+            case "array" -> {
+                ArrayNode array = nodes.arrayNode();
+                int size = Math.max(1, schema.path("minItems").asInt(0));
+                for (int i = 0; i < size && schema.has("items"); i++) {
+                    array.add(sample(schema.get("items")));
+                }
+                return array;
+            }
+            case "boolean" -> {
+                return nodes.booleanNode(true);
+            }
+            case "integer" -> {
+                return nodes.numberNode(schema.path("maximum").asLong(schema.path("minimum").asLong(1)));
+            }
+            case "number" -> {
+                return nodes.numberNode(schema.path("maximum").asDouble(schema.path("minimum").asDouble(1)));
+            }
+            case "null" -> {
+                return nodes.nullNode();
+            }
+            default -> {
+                String text = "simulated value";
+                int minLength = schema.path("minLength").asInt(0);
+                return nodes.textNode(text.length() >= minLength ? text : text + "x".repeat(minLength - text.length()));
+            }
+        }
+    }
+
+    // Для ["string","null"] берётся первый не-null тип
+    private static String typeOf(JsonNode schema) {
+        JsonNode type = schema.get("type");
+        if (type == null) {
+            return schema.has("properties") ? "object" : "string";
+        }
+        if (type.isArray()) {
+            for (JsonNode t : type) {
+                if (!"null".equals(t.asText())) {
+                    return t.asText();
+                }
+            }
+            return "null";
+        }
+        return type.asText();
+    }
+
+    private Duration sampleLatency() {
+        double median = latencyMedian.toNanos();
+        double sigma = median <= 0 ? 0 : Math.log((double) latencyP99.toNanos() / median) / Z_99;
+        return Duration.ofNanos((long) (median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+    }
+
+    private synchronized Window reserve(long tokens) {
+        long now = System.nanoTime();
+        long minute = Duration.ofMinutes(1).toNanos();
+        if (now - windowStartedAt >= minute) {
+            windowStartedAt = now;
+            windowRequests = 0;
+            windowTokens = 0;
+        }
+        boolean exceeded = windowRequests + 1 > requestsPerMinute || windowTokens + tokens > tokensPerMinute;
+        if (!exceeded) {
+            windowRequests++;
+            windowTokens += tokens;
+        }
+        long resetMillis = Duration.ofNanos(minute - (now - windowStartedAt)).toMillis();
+        return new Window(exceeded, resetMillis, Map.of(
+                "x-ratelimit-limit-requests", String.valueOf(requestsPerMinute),
+                "x-ratelimit-limit-tokens", String.valueOf(tokensPerMinute),
+                "x-ratelimit-remaining-requests", String.valueOf(Math.max(0, requestsPerMinute - windowRequests)),
+                "x-ratelimit-remaining-tokens", String.valueOf(Math.max(0, tokensPerMinute - windowTokens)),
+                "x-ratelimit-reset-requests", resetMillis + "ms",
+                "x-ratelimit-reset-tokens", resetMillis + "ms"));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            // клиент отменил запрос
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Window(boolean exceeded, long resetMillis, Map<String, String> headers) {
+    }
+}
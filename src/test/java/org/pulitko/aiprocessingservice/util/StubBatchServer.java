@@ -0,0 +1,150 @@
+package org.pulitko.aiprocessingservice.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Батч отвечает "in_progress" на первый запрос статуса и "completed" на следующие
+public class StubBatchServer implements AutoCloseable {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final Map<String, String> files = new ConcurrentHashMap<>();
+    private final Map<String, String> batchInputs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> statusRequests = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Function<String, String> responder;
+
+    public StubBatchServer(Function<String, String> responder) {
+        this.responder = responder;
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/files", this::handleFiles);
+        server.createContext("/batches", this::handleBatches);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String uploadedFile(String fileId) {
+        return files.get(fileId);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handleFiles(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if ("POST".equals(exchange.getRequestMethod())) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String fileId = "file-" + ids.incrementAndGet();
+            files.put(fileId, extractJsonl(body));
+            respond(exchange, 200, objectMapper.createObjectNode().put("id", fileId).put("purpose", "batch"));
+        } else if (path.endsWith("/content")) {
+            String fileId = path.substring("/files/".length(), path.length() - "/content".length());
+            String content = files.get(fileId);
+            if (content == null) {
+                respond(exchange, 404, objectMapper.createObjectNode().put("error", "not found"));
+                return;
+            }
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        }
+    }
+
+    private void handleBatches(HttpExchange exchange) throws IOException {
+        if ("POST".equals(exchange.getRequestMethod())) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String batchId = "batch-" + ids.incrementAndGet();
+            batchInputs.put(batchId, request.get("input_file_id").asText());
+            statusRequests.put(batchId, new AtomicInteger());
+            respond(exchange, 200, batch(batchId, "validating", null));
+            return;
+        }
+        String batchId = exchange.getRequestURI().getPath().substring("/batches/".length());
+        if (!batchInputs.containsKey(batchId)) {
+            respond(exchange, 404, objectMapper.createObjectNode().put("error", "not found"));
+            return;
+        }
+        if (statusRequests.get(batchId).getAndIncrement() == 0) {
+            respond(exchange, 200, batch(batchId, "in_progress", null));
+            return;
+        }
+        String outputFileId = batchId + "-output";
+        files.computeIfAbsent(outputFileId, k -> buildOutput(files.get(batchInputs.get(batchId))));
+        respond(exchange, 200, batch(batchId, "completed", outputFileId));
+    }
+
+    private String buildOutput(String input) {
+        StringBuilder output = new StringBuilder();
+        for (String line : input.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                String customId = objectMapper.readTree(line).get("custom_id").asText();
+                ObjectNode result = objectMapper.createObjectNode().put("custom_id", customId);
+                ObjectNode response = result.putObject("response").put("status_code", 200);
+                ObjectNode body = response.putObject("body");
+                body.putArray("choices").addObject().putObject("message")
+                        .put("role", "assistant")
+                        .put("content", responder.apply(customId));
+                body.putObject("usage").put("prompt_tokens", 10).put("completion_tokens", 5).put("total_tokens", 15);
+                output.append(objectMapper.writeValueAsString(result)).append('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return output.toString();
+    }
+
+    // Из multipart тела достаточно строк JSONL с custom_id
+    private static String extractJsonl(String multipartBody) {
+        StringBuilder jsonl = new StringBuilder();
+        List.of(multipartBody.split("\r?\n")).stream()
+                .filter(line -> line.startsWith("{") && line.contains("\"custom_id\""))
+                .forEach(line -> jsonl.append(line).append('\n'));
+        return jsonl.toString();
+    }
+
+    private ObjectNode batch(String batchId, String status, String outputFileId) {
+        ObjectNode node = objectMapper.createObjectNode()
+                .put("id", batchId)
+                .put("object", "batch")
+                .put("status", status)
+                .put("input_file_id", batchInputs.get(batchId));
+        if (outputFileId != null) {
+            node.put("output_file_id", outputFileId);
+        }
+        return node;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}